@@ -0,0 +1,214 @@
+/**********************************************************************
+ *
+ * Copyright (c) 2004 Olaf Willuhn
+ * All rights reserved.
+ * 
+ * This software is copyrighted work licensed under the terms of the
+ * GNU LESSER GENERAL PUBLIC LICENSE 2.1.
+ * Please consult the file "LICENSE" for details. 
+ *
+ **********************************************************************/
+package de.willuhn.logging;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+import de.willuhn.logging.targets.LogrotateTarget;
+import de.willuhn.logging.targets.OutputStreamTarget;
+import de.willuhn.logging.targets.SyslogTarget;
+import de.willuhn.logging.targets.Target;
+
+/**
+ * JMH-Benchmark fuer <code>Logger.write</code> - vom Aufruf bis zum Target.
+ * Gemessen wird je Target mit 1, 4 und 8 loggenden Threads:
+ * <ul>
+ *   <li>Durchsatz in Meldungen pro Sekunde. Da der Logger mit {@link Logger.OverflowPolicy#BLOCK}
+ *       laeuft, ist das nach dem Fuellen der Warteschlange der dauerhaft erreichbare Durchsatz.</li>
+ *   <li>Latenz des Aufrufs als Verteilung (Perzentile via Mode.SampleTime).</li>
+ *   <li>Allokationsrate via GC-Profiler (in build.gradle aktiviert).</li>
+ * </ul>
+ * Targets:
+ * <ul>
+ *   <li>"stream": OutputStreamTarget in einen Null-Stream.</li>
+ *   <li>"logrotate": LogrotateTarget nach /dev/shm (falls vorhanden, sonst java.io.tmpdir).</li>
+ *   <li>"syslog": SyslogTarget an einen lokalen UDP-Empfaenger.</li>
+ * </ul>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput,Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LoggerBenchmark
+{
+  /**
+   * Das zu messende Target.
+   */
+  @Param({"stream","logrotate","syslog"})
+  public String target;
+
+  private Target t          = null;
+  private File dir          = null;
+  private DatagramSocket sink = null;
+  private Thread receiver   = null;
+
+  /**
+   * Registriert das Target.
+   * @throws Exception
+   */
+  @Setup(Level.Trial)
+  public void setup() throws Exception
+  {
+    Logger.setLevel(de.willuhn.logging.Level.INFO);
+    Logger.setOverflowPolicy(Logger.OverflowPolicy.BLOCK);
+
+    if ("stream".equals(target))
+    {
+      this.t = new OutputStreamTarget(new NullOutputStream());
+    }
+    else if ("logrotate".equals(target))
+    {
+      File shm = new File("/dev/shm");
+      File base = shm.isDirectory() && shm.canWrite() ? shm : new File(System.getProperty("java.io.tmpdir"));
+      this.dir = new File(base,"logger-benchmark-" + System.nanoTime());
+      if (!this.dir.mkdirs())
+        throw new IOException("unable to create " + this.dir.getAbsolutePath());
+      LogrotateTarget lt = new LogrotateTarget(new File(this.dir,"benchmark.log"),false);
+      lt.setMaxLength(64L * 1024L * 1024L);
+      lt.setZip(false);
+      lt.setMaxArchives(2);
+      this.t = lt;
+    }
+    else if ("syslog".equals(target))
+    {
+      this.sink = new DatagramSocket(0,InetAddress.getLoopbackAddress());
+      this.receiver = new Thread("Syslog Sink") {
+        public void run()
+        {
+          DatagramPacket p = new DatagramPacket(new byte[64 * 1024],64 * 1024);
+          try
+          {
+            while (!isInterrupted())
+              sink.receive(p);
+          }
+          catch (IOException e)
+          {
+            // Socket geschlossen
+          }
+        }
+      };
+      this.receiver.setDaemon(true);
+      this.receiver.start();
+      this.t = new SyslogTarget(InetAddress.getLoopbackAddress().getHostAddress(),this.sink.getLocalPort());
+    }
+    else
+    {
+      throw new IllegalArgumentException("unknown target " + target);
+    }
+    Logger.addTarget(this.t);
+  }
+
+  /**
+   * Wartet, bis alle Meldungen der Iteration geschrieben wurden.
+   * @throws Exception
+   */
+  @TearDown(Level.Iteration)
+  public void flush() throws Exception
+  {
+    Logger.flush();
+  }
+
+  /**
+   * Entfernt das Target wieder und raeumt auf.
+   * @throws Exception
+   */
+  @TearDown(Level.Trial)
+  public void tearDown() throws Exception
+  {
+    Logger.flush();
+    Logger.removeTarget(this.t);
+    this.t.close();
+
+    if (this.sink != null)
+    {
+      this.receiver.interrupt();
+      this.sink.close();
+    }
+
+    if (this.dir != null)
+    {
+      File[] files = this.dir.listFiles();
+      if (files != null)
+      {
+        for (File f:files)
+          f.delete();
+      }
+      this.dir.delete();
+    }
+  }
+
+  /**
+   * Ein loggender Thread.
+   */
+  @Benchmark
+  @Threads(1)
+  public void write1()
+  {
+    Logger.info("benchmark message with some payload to be formatted and written");
+  }
+
+  /**
+   * Vier loggende Threads.
+   */
+  @Benchmark
+  @Threads(4)
+  public void write4()
+  {
+    Logger.info("benchmark message with some payload to be formatted and written");
+  }
+
+  /**
+   * Acht loggende Threads.
+   */
+  @Benchmark
+  @Threads(8)
+  public void write8()
+  {
+    Logger.info("benchmark message with some payload to be formatted and written");
+  }
+
+  /**
+   * OutputStream, der alles verwirft.
+   */
+  private static class NullOutputStream extends OutputStream
+  {
+    /**
+     * @see java.io.OutputStream#write(int)
+     */
+    public void write(int b)
+    {
+    }
+
+    /**
+     * @see java.io.OutputStream#write(byte[], int, int)
+     */
+    public void write(byte[] b, int off, int len)
+    {
+    }
+  }
+}
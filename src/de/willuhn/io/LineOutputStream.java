@@ -12,6 +12,12 @@ package de.willuhn.io;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
 
 /**
  * Ein OutputStream, der alle Daten, die erhaelt buffert und zeilenweise
@@ -19,17 +25,25 @@ import java.io.OutputStream;
  * man Daten zeilenweise verarbeiten, darf aber nur einen OutputStream
  * angeben, dann kann man von dieser Klasse ableiten, die Funktion <code>writeLine</code>
  * implementieren und kann bequem zeilenweise lesen.
- * Hinweis: Ist die Zeile laenger als der angegebene Buffer, wird bei Erreichen
- * der Buffer-Groesse auch schon vor dem Zeilenende geschrieben.  
+ * Die Bytes werden mit dem angegebenen Zeichensatz (Default: der der Plattform)
+ * in Zeichen gewandelt, Multi-Byte-Zeichen (z.Bsp. UTF-8) bleiben also erhalten.
+ * Puffer und Decoder werden wiederverwendet. Der Puffer waechst bei Bedarf bis zur
+ * maximalen Zeilenlaenge.
+ * Hinweis: Ist die Zeile laenger als die maximale Zeilenlaenge, wird bei Erreichen
+ * dieser Groesse auch schon vor dem Zeilenende geschrieben.
  */
 public abstract class LineOutputStream extends OutputStream {
 
-	private int bufferSize = 1024;
+  /**
+   * Default fuer die maximale Zeilenlaenge in Bytes.
+   */
+  public final static int MAX_LINE_LENGTH = 64 * 1024;
 
-  private char[] buffer;
+  private final int maxLineLength;
+  private final CharsetDecoder decoder;
 
-	private StringBuffer line = new StringBuffer();
-	private int bufferCount = 0;
+  private ByteBuffer buffer;
+  private CharBuffer chars;
 
   /**
    * Erzeugt einen LineOutputStream mit 1024 Byte Buffer.
@@ -41,13 +55,28 @@ public abstract class LineOutputStream extends OutputStream {
 
   /**
    * Erzeugt einen LineOutputStream mit der angebenen Buffer-Groesse.
-   * @param bufferSize Buffer-Groesse in Bytes.
+   * @param bufferSize initiale Buffer-Groesse in Bytes.
    */
   public LineOutputStream(int bufferSize)
+  {
+    this(bufferSize,MAX_LINE_LENGTH,Charset.defaultCharset());
+  }
+
+  /**
+   * Erzeugt einen LineOutputStream.
+   * @param bufferSize initiale Buffer-Groesse in Bytes.
+   * @param maxLineLength maximale Zeilenlaenge in Bytes. Laengere Zeilen werden aufgeteilt.
+   * @param charset Zeichensatz der geschriebenen Bytes.
+   */
+  public LineOutputStream(int bufferSize, int maxLineLength, Charset charset)
   {
     super();
-    this.bufferSize = bufferSize;
-    buffer = new char[bufferSize];
+    this.maxLineLength = Math.max(16,maxLineLength);
+    this.buffer  = ByteBuffer.allocate(Math.max(16,Math.min(bufferSize,this.maxLineLength)));
+    this.chars   = CharBuffer.allocate(this.buffer.capacity());
+    this.decoder = charset.newDecoder()
+                          .onMalformedInput(CodingErrorAction.REPLACE)
+                          .onUnmappableCharacter(CodingErrorAction.REPLACE);
   }
 
   /**
@@ -58,25 +87,122 @@ public abstract class LineOutputStream extends OutputStream {
 		// Wenn ein Linebreak kommt, schreiben wir raus
 		if (b == '\n')
 		{
-			line.append(buffer);
-			writeLine(line.toString().replaceAll("\\r|\\n",""));
-			line = new StringBuffer();
-			bufferCount = 0;
-			buffer = new char[bufferSize];
+      flushLine(true);
 			return;
 		}
 
-		// Meistens schreiben wir in den Char-Buffer
-  	if (bufferCount < bufferSize)
-  	{
-  		buffer[bufferCount++] = (char) b;
-  		return;
-  	}
-
-		// Charbuffer ist voll, wir haengens an die Zeile
-		line.append(buffer);
-		bufferCount = 0;
-		buffer = new char[bufferSize];
+		// Meistens schreiben wir in den Buffer
+    if (!buffer.hasRemaining())
+      grow();
+    buffer.put((byte) b);
+  }
+
+  /**
+   * @see java.io.OutputStream#write(byte[], int, int)
+   */
+  public final void write(byte[] b, int off, int len) throws IOException
+  {
+    if (off < 0 || len < 0 || off + len > b.length)
+      throw new IndexOutOfBoundsException();
+
+    int end = off + len;
+    while (off < end)
+    {
+      // Bis zum naechsten Zeilenumbruch suchen
+      int pos = off;
+      while (pos < end && b[pos] != '\n')
+        pos++;
+
+      // Alles davor in den Buffer
+      while (off < pos)
+      {
+        if (!buffer.hasRemaining())
+          grow();
+        int n = Math.min(pos - off,buffer.remaining());
+        buffer.put(b,off,n);
+        off += n;
+      }
+
+      if (pos < end)
+      {
+        flushLine(true);
+        off = pos + 1;
+      }
+    }
+  }
+
+  /**
+   * Vergroessert den Buffer. Ist die maximale Zeilenlaenge bereits erreicht,
+   * wird die bisherige Zeile stattdessen geschrieben.
+   * @throws IOException
+   */
+  private void grow() throws IOException
+  {
+    if (buffer.capacity() >= maxLineLength)
+    {
+      flushLine(false);
+      if (buffer.hasRemaining())
+        return;
+    }
+
+    ByteBuffer bigger = ByteBuffer.allocate(Math.min(maxLineLength,buffer.capacity() * 2));
+    buffer.flip();
+    bigger.put(buffer);
+    buffer = bigger;
+  }
+
+  /**
+   * Wandelt den Inhalt des Buffers in Text und uebergibt ihn an <code>writeLine</code>.
+   * @param complete true, wenn die Zeile vollstaendig ist. Andernfalls bleiben
+   * unvollstaendige Multi-Byte-Zeichen am Ende im Buffer.
+   * @throws IOException
+   */
+  private void flushLine(boolean complete) throws IOException
+  {
+    buffer.flip();
+    chars.clear();
+    decoder.reset();
+    while (true)
+    {
+      CoderResult cr = decoder.decode(buffer,chars,complete);
+      if (cr.isOverflow())
+      {
+        growChars();
+        continue;
+      }
+      if (complete)
+      {
+        cr = decoder.flush(chars);
+        if (cr.isOverflow())
+        {
+          growChars();
+          continue;
+        }
+      }
+      break;
+    }
+    buffer.compact();
+
+    // Ggf. vorhandene Zeilenumbrueche (\r) entfernen
+    char[] c = chars.array();
+    int len = 0;
+    for (int i=0;i<chars.position();++i)
+    {
+      if (c[i] != '\r')
+        c[len++] = c[i];
+    }
+    writeLine(new String(c,0,len));
+  }
+
+  /**
+   * Vergroessert den Zeichen-Puffer.
+   */
+  private void growChars()
+  {
+    CharBuffer bigger = CharBuffer.allocate(chars.capacity() * 2);
+    chars.flip();
+    bigger.put(chars);
+    chars = bigger;
   }
 
   /**
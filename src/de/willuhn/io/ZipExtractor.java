@@ -55,7 +55,7 @@ public class ZipExtractor extends AbstractZipSupport
     monitor.setStatus(ProgressMonitor.STATUS_RUNNING);
     monitor.setStatusText("extracting zip file " + zip.getName() + " to " + targetDirectory.getAbsolutePath());
     monitor.log("extracting zip file " + zip.getName() + " to " + targetDirectory.getAbsolutePath());
-    Logger.info("extracting zip file " + zip.getName() + " to " + targetDirectory.getAbsolutePath());
+    Logger.info("extracting zip file {} to {}",zip.getName(),targetDirectory.getAbsolutePath());
 
     if (!targetDirectory.exists())
     {
@@ -161,7 +161,7 @@ public class ZipExtractor extends AbstractZipSupport
         InputStream is  = zip.getInputStream(entry);
         if (is == null)
         {
-          Logger.warn("  entry " + entry.getName() + " not found in archive, skipping");
+          Logger.warn("  entry {} not found in archive, skipping",entry.getName());
           continue;
         }
         OutputStream os = new BufferedOutputStream(new FileOutputStream(currentFile));
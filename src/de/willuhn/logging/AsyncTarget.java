@@ -0,0 +1,342 @@
+/**********************************************************************
+ *
+ * Copyright (c) 2004 Olaf Willuhn
+ * All rights reserved.
+ * 
+ * This software is copyrighted work licensed under the terms of the
+ * GNU LESSER GENERAL PUBLIC LICENSE 2.1.
+ * Please consult the file "LICENSE" for details. 
+ *
+ **********************************************************************/
+package de.willuhn.logging;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import de.willuhn.logging.Logger.OverflowPolicy;
+import de.willuhn.logging.targets.BatchTarget;
+import de.willuhn.logging.targets.CallerAware;
+import de.willuhn.logging.targets.Target;
+
+/**
+ * Target, welches die Meldungen in einem eigenen Thread an ein anderes Target uebergibt.
+ * Damit kann ein langsames Target (z.Bsp. ein {@link de.willuhn.logging.targets.SyslogTarget}
+ * bei haengender Namensaufloesung oder ein {@link de.willuhn.logging.targets.LogrotateTarget}
+ * waehrend der Rotation) die anderen Targets nicht mehr aufhalten.
+ * Jedes AsyncTarget besitzt eine eigene begrenzte Warteschlange mit eigener
+ * {@link OverflowPolicy}.
+ * Verwendung:
+ * <pre>
+ * Logger.addTarget(new AsyncTarget(new SyslogTarget("loghost"),1024,OverflowPolicy.DROP_OLDEST));
+ * </pre>
+ */
+public class AsyncTarget implements BatchTarget, CallerAware
+{
+  // Maximale Wartezeit des Threads, wenn nichts zu tun ist.
+  private final static long PARK_NANOS = TimeUnit.SECONDS.toNanos(1L);
+
+  // Default-Groesse der Warteschlange
+  private final static int QUEUE_SIZE = 4096;
+
+  // Maximale Wartezeit beim Schliessen
+  private final static long CLOSE_TIMEOUT = 10 * 1000L;
+
+  private final Target target;
+  private final OverflowPolicy policy;
+  private final RingBuffer messages;
+  private final AtomicLong[] overflows = new AtomicLong[OverflowPolicy.values().length];
+  private final Thread worker;
+
+  private final AtomicBoolean targetClosed = new AtomicBoolean(false);
+
+  private volatile boolean parked    = false;
+  private volatile long lag          = 0L;
+
+  // Wird gesetzt, wenn close() nicht auf den Thread warten konnte. Der Thread
+  // schliesst das Target dann selbst, sobald er mit dem laufenden Block fertig ist.
+  private volatile boolean abandoned = false;
+  private volatile boolean finished  = false;
+
+  /**
+   * ct.
+   * Die Warteschlange fasst 4096 Meldungen. Ist sie voll, wird die aelteste Meldung verworfen.
+   * @param target das eigentliche Target.
+   */
+  public AsyncTarget(Target target)
+  {
+    this(target,QUEUE_SIZE,OverflowPolicy.DROP_OLDEST);
+  }
+
+  /**
+   * ct.
+   * @param target das eigentliche Target.
+   * @param capacity Groesse der Warteschlange.
+   * @param policy Verhalten bei voller Warteschlange. Bei {@link OverflowPolicy#BLOCK}
+   * wartet der Logger-Thread - und damit auch alle anderen Targets.
+   */
+  public AsyncTarget(Target target, int capacity, OverflowPolicy policy)
+  {
+    this(target,capacity,policy,null);
+  }
+
+  /**
+   * ct.
+   * @param target das eigentliche Target.
+   * @param capacity Groesse der Warteschlange.
+   * @param policy Verhalten bei voller Warteschlange. Bei {@link OverflowPolicy#BLOCK}
+   * wartet der Logger-Thread - und damit auch alle anderen Targets.
+   * @param factory optionale Angabe der Factory, mit der der Thread erzeugt wird.
+   * Hierueber koennen z.Bsp. auch virtuelle Threads verwendet werden. Ohne Angabe
+   * wird ein Daemon-Thread erzeugt.
+   */
+  public AsyncTarget(Target target, int capacity, OverflowPolicy policy, ThreadFactory factory)
+  {
+    if (target == null)
+      throw new NullPointerException("no target given");
+
+    this.target   = target;
+    this.policy   = policy != null ? policy : OverflowPolicy.DROP_OLDEST;
+    this.messages = new RingBuffer(capacity);
+    for (int i=0;i<overflows.length;++i)
+      overflows[i] = new AtomicLong(0L);
+
+    Runnable r = new Runnable() {
+      public void run()
+      {
+        work();
+      }
+    };
+
+    if (factory != null)
+    {
+      this.worker = factory.newThread(r);
+    }
+    else
+    {
+      this.worker = new Thread(r,"Logger-Thread [" + target.getClass().getSimpleName() + "]");
+      this.worker.setDaemon(true);
+    }
+    Logger.getStats().add(target);
+    this.worker.start();
+  }
+
+  /**
+   * Liefert das eigentliche Target.
+   * @return das eigentliche Target.
+   */
+  public Target getTarget()
+  {
+    return this.target;
+  }
+
+  /**
+   * Liefert die Anzahl der Meldungen, die noch nicht an das Target uebergeben wurden.
+   * @return Anzahl der wartenden Meldungen.
+   */
+  public int getPending()
+  {
+    return this.messages.size();
+  }
+
+  /**
+   * Liefert den Rueckstand des Targets in Millisekunden.
+   * Das ist die Zeit zwischen dem Erzeugen und dem Schreiben der zuletzt
+   * geschriebenen Meldung.
+   * @return Rueckstand in Millisekunden.
+   */
+  public long getLag()
+  {
+    return this.lag;
+  }
+
+  /**
+   * Liefert die Anzahl der Meldungen, die auf eine volle Warteschlange gestossen sind.
+   * Siehe {@link Logger#getOverflowCount(OverflowPolicy)}.
+   * @param policy die Policy.
+   * @return Anzahl der betroffenen Meldungen.
+   */
+  public long getOverflowCount(OverflowPolicy policy)
+  {
+    if (policy == null)
+      return 0L;
+    return this.overflows[policy.ordinal()].get();
+  }
+
+  /**
+   * @see de.willuhn.logging.targets.Target#write(de.willuhn.logging.Message)
+   */
+  public void write(Message message) throws Exception
+  {
+    enqueue(message);
+    if (this.parked)
+      LockSupport.unpark(this.worker);
+  }
+
+  /**
+   * @see de.willuhn.logging.targets.BatchTarget#write(de.willuhn.logging.Message[], int)
+   */
+  public void write(Message[] batch, int count) throws Exception
+  {
+    for (int i=0;i<count;++i)
+      enqueue(batch[i]);
+
+    if (this.parked)
+      LockSupport.unpark(this.worker);
+  }
+
+  /**
+   * Stellt die Meldung in die Warteschlange.
+   * @param message die Meldung.
+   */
+  private void enqueue(Message message)
+  {
+    if (message == null || this.messages.isClosed())
+      return;
+
+    OverflowPolicy applied = this.messages.offer(message,this.policy,this.worker,this.overflows);
+    if (applied == OverflowPolicy.STDOUT)
+    {
+      Logger.println("***** [WARN] queue of " + this.worker.getName() + " full, writing to STDOUT *****");
+      Logger.println(message.toString());
+    }
+  }
+
+  /**
+   * @see de.willuhn.logging.targets.CallerAware#needsCaller()
+   */
+  public boolean needsCaller()
+  {
+    return !(this.target instanceof CallerAware) || ((CallerAware) this.target).needsCaller();
+  }
+
+  /**
+   * Wartet, bis alle bis zum Aufruf eingestellten Meldungen an das Target uebergeben wurden.
+   * @param timeout maximale Wartezeit in Millisekunden. 0 wartet ohne Limit.
+   * @return Anzahl der Meldungen, die bei Rueckkehr noch nicht uebergeben waren.
+   * @throws InterruptedException
+   */
+  public int flush(long timeout) throws InterruptedException
+  {
+    return this.messages.await(timeout,this.worker);
+  }
+
+  /**
+   * Schreibt die noch wartenden Meldungen und schliesst anschliessend das eigentliche Target.
+   * Es wird maximal 10 Sekunden gewartet.
+   * @see de.willuhn.logging.targets.Target#close()
+   */
+  public void close() throws Exception
+  {
+    close(CLOSE_TIMEOUT);
+  }
+
+  /**
+   * Schreibt die noch wartenden Meldungen und schliesst anschliessend das eigentliche Target.
+   * Laeuft die Wartezeit ab, bevor der Thread fertig ist, wird das Target nicht hier
+   * geschlossen, da der Thread eventuell noch darauf schreibt. Stattdessen schliesst es
+   * der Thread, nachdem er den laufenden Block uebergeben hat. Die restlichen Meldungen
+   * werden verworfen.
+   * @param timeout maximale Wartezeit in Millisekunden. 0 wartet ohne Limit.
+   * @return Anzahl der Meldungen, die nicht mehr an das Target uebergeben wurden.
+   * @throws Exception
+   */
+  public int close(long timeout) throws Exception
+  {
+    this.messages.close();
+    int pending = this.messages.await(timeout,this.worker);
+    if (pending == 0)
+    {
+      closeTarget();
+      return 0;
+    }
+
+    Logger.println("***** [WARN] " + this.worker.getName() + " did not finish in time, " + pending + " messages not written *****");
+    this.abandoned = true;
+    if (this.finished)
+      closeTarget(); // Der Thread ist inzwischen doch fertig geworden
+    else
+      LockSupport.unpark(this.worker);
+    return pending;
+  }
+
+  /**
+   * Schliesst das eigentliche Target genau einmal.
+   * Wird entweder von close() oder vom Thread aufgerufen - je nachdem, wer zuletzt fertig ist.
+   */
+  private void closeTarget()
+  {
+    if (!this.targetClosed.compareAndSet(false,true))
+      return;
+
+    try
+    {
+      this.target.close();
+    }
+    catch (Exception e)
+    {
+      Logger.println("***** [WARN] unable to close target " + this.target.getClass().getSimpleName() + ": " + e.getMessage() + " *****");
+    }
+    finally
+    {
+      Logger.getStats().remove(this.target);
+    }
+  }
+
+  /**
+   * Wird vom Thread aufgerufen, wenn er beendet wird.
+   */
+  private void finish()
+  {
+    // Reihenfolge wichtig: close() setzt erst "abandoned" und prueft dann "finished",
+    // wir machen es umgekehrt. Damit sieht mindestens einer von beiden den anderen.
+    this.finished = true;
+    if (this.abandoned)
+      closeTarget();
+  }
+
+  /**
+   * Die Schleife des Threads.
+   */
+  private void work()
+  {
+    Message[] batch = new Message[256];
+    while (true)
+    {
+      int count = this.messages.drain(batch,batch.length);
+      if (count == 0)
+      {
+        this.messages.completed();
+        if (this.messages.isClosed())
+        {
+          finish();
+          return;
+        }
+
+        this.parked = true;
+        if (this.messages.isEmpty() && !this.messages.isClosed())
+          LockSupport.parkNanos(this,PARK_NANOS);
+        this.parked = false;
+        continue;
+      }
+
+      Logger.deliver(this.target,batch,count);
+
+      Message last = batch[count-1];
+      if (last.getDate() != null)
+        this.lag = Math.max(0L,System.currentTimeMillis() - last.getDate().getTime());
+
+      Arrays.fill(batch,0,count,null);
+      this.messages.completed();
+
+      if (this.abandoned)
+      {
+        finish();
+        return;
+      }
+    }
+  }
+}
@@ -0,0 +1,246 @@
+/**********************************************************************
+ *
+ * Copyright (c) 2004 Olaf Willuhn
+ * All rights reserved.
+ * 
+ * This software is copyrighted work licensed under the terms of the
+ * GNU LESSER GENERAL PUBLIC LICENSE 2.1.
+ * Please consult the file "LICENSE" for details. 
+ *
+ **********************************************************************/
+package de.willuhn.logging;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import de.willuhn.io.IOUtil;
+import de.willuhn.logging.targets.BinaryTarget;
+
+/**
+ * Liest die von {@link BinaryTarget} geschriebenen Dateien.
+ * Kann auch direkt aufgerufen werden und gibt die Meldungen dann im
+ * Text-Format von <code>Message#toString()</code> auf STDOUT aus:
+ * <pre>
+ * java de.willuhn.logging.BinaryLogReader datei1 [datei2 ...]
+ * </pre>
+ */
+public class BinaryLogReader implements Closeable
+{
+  private InputStream is = null;
+  private List<String> dict = new ArrayList<String>();
+  private long lastTime = 0L;
+  private byte[] buf = new byte[1024];
+
+  /**
+   * ct.
+   * @param is der Stream mit den Binaer-Daten.
+   * @throws IOException wenn der Stream nicht mit dem erwarteten Header beginnt.
+   */
+  public BinaryLogReader(InputStream is) throws IOException
+  {
+    this.is = is;
+    for (int i=0;i<BinaryTarget.MAGIC.length();++i)
+    {
+      if (readByte() != BinaryTarget.MAGIC.charAt(i))
+        throw new IOException("not a binary log file");
+    }
+    int version = readByte();
+    if (version != BinaryTarget.VERSION)
+      throw new IOException("unsupported version " + version);
+  }
+
+  /**
+   * Liest die naechste Meldung.
+   * @return die Meldung oder <code>null</code>, wenn das Ende erreicht ist.
+   * @throws IOException
+   */
+  public Message read() throws IOException
+  {
+    while (true)
+    {
+      int type = this.is.read();
+      if (type == -1)
+        return null;
+
+      switch (type)
+      {
+        case BinaryTarget.DICT:
+          int id = (int) readVarLong();
+          String s = readText();
+          while (this.dict.size() < id)
+            this.dict.add(null);
+          this.dict.set(id - 1,s);
+          break;
+
+        case BinaryTarget.RESET:
+          this.dict.clear();
+          this.lastTime = 0L;
+          break;
+
+        case BinaryTarget.MESSAGE:
+          this.lastTime += unzigzag(readVarLong());
+          int levelValue   = (int) unzigzag(readVarLong());
+          String levelName = lookup(readVarLong());
+          String host      = lookup(readVarLong());
+          String thread    = lookup(readVarLong());
+          String clazz     = lookup(readVarLong());
+          String method    = lookup(readVarLong());
+          String text      = readText();
+          return new Message(new Date(this.lastTime),level(levelName,levelValue),host,clazz,method,text,thread);
+
+        default:
+          throw new IOException("invalid record type " + type);
+      }
+    }
+  }
+
+  /**
+   * Liefert das Log-Level zu Name und Wert.
+   * @param name Name des Levels.
+   * @param value Wertigkeit.
+   * @return das Log-Level. Unbekannte Levels werden nicht global registriert,
+   * damit das Lesen einer fremden Datei keine Auswirkungen auf den Prozess hat.
+   */
+  private static Level level(String name, int value)
+  {
+    if (name == null)
+      return null;
+    Level l = Level.findByName(name);
+    return l != null ? l : new Level(name,value,false);
+  }
+
+  /**
+   * Liefert den Text zur Id im Dictionary.
+   * @param id die Id.
+   * @return der Text oder <code>null</code> bei Id 0.
+   * @throws IOException bei unbekannter Id.
+   */
+  private String lookup(long id) throws IOException
+  {
+    if (id == 0L)
+      return null;
+    if (id > this.dict.size())
+      throw new IOException("unknown dictionary id " + id);
+    return this.dict.get((int) id - 1);
+  }
+
+  /**
+   * Liest einen Text.
+   * @return der Text oder <code>null</code>.
+   * @throws IOException
+   */
+  private String readText() throws IOException
+  {
+    int len = (int) readVarLong();
+    if (len == 0)
+      return null;
+    len--;
+    if (len > this.buf.length)
+      this.buf = new byte[Math.max(len,this.buf.length * 2)];
+    int pos = 0;
+    while (pos < len)
+    {
+      int n = this.is.read(this.buf,pos,len - pos);
+      if (n == -1)
+        throw new EOFException();
+      pos += n;
+    }
+    return new String(this.buf,0,len,StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Liest eine Zahl im Varint-Format.
+   * @return die Zahl.
+   * @throws IOException
+   */
+  private long readVarLong() throws IOException
+  {
+    long value = 0L;
+    for (int shift=0;shift<64;shift+=7)
+    {
+      int b = readByte();
+      value |= (long) (b & 0x7f) << shift;
+      if ((b & 0x80) == 0)
+        return value;
+    }
+    throw new IOException("invalid varint");
+  }
+
+  /**
+   * Kehrt die ZigZag-Kodierung von {@link BinaryTarget} um.
+   * @param value die Zahl.
+   * @return die urspruengliche Zahl.
+   */
+  private static long unzigzag(long value)
+  {
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  /**
+   * Liest ein einzelnes Byte.
+   * @return das Byte.
+   * @throws IOException
+   * @throws EOFException wenn das Ende des Streams erreicht ist.
+   */
+  private int readByte() throws IOException
+  {
+    int b = this.is.read();
+    if (b == -1)
+      throw new EOFException();
+    return b;
+  }
+
+  /**
+   * @see java.io.Closeable#close()
+   */
+  public void close() throws IOException
+  {
+    this.is.close();
+  }
+
+  /**
+   * Gibt die Meldungen der angegebenen Dateien auf STDOUT aus.
+   * @param args Liste der Dateien.
+   * @throws Exception
+   */
+  public static void main(String[] args) throws Exception
+  {
+    if (args == null || args.length == 0)
+    {
+      System.err.println("usage: java " + BinaryLogReader.class.getName() + " file1 [file2 ...]");
+      System.exit(1);
+    }
+
+    PrintStream out = System.out;
+    for (String arg:args)
+    {
+      BinaryLogReader reader = null;
+      try
+      {
+        reader = new BinaryLogReader(new BufferedInputStream(new FileInputStream(new File(arg))));
+        Message m = null;
+        while ((m = reader.read()) != null)
+          out.println(m.toString());
+      }
+      catch (EOFException e)
+      {
+        // Datei wurde mitten in einer Meldung abgeschnitten - z.Bsp. weil sie noch geschrieben wird
+      }
+      finally
+      {
+        IOUtil.close(reader);
+      }
+    }
+    out.flush();
+  }
+}
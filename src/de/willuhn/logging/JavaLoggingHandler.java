@@ -11,11 +11,7 @@
 
 package de.willuhn.logging;
 
-import java.io.ByteArrayOutputStream;
-import java.io.PrintStream;
 import java.util.Date;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.logging.Handler;
 import java.util.logging.LogManager;
 import java.util.logging.LogRecord;
@@ -28,24 +24,17 @@ import java.util.logging.LogRecord;
  * <code>Class.forName("de.willuhn.logging.JavaLoggingHandler");</code>
  * an passender Stelle. Der Handler registriert sich dann automatisch
  * an allen gefundenen Loggern.
+ * <code>publish</code> ist nicht synchronisiert. Es wird zuerst das Log-Level
+ * geprueft, der Stacktrace einer Exception erst im Logger-Thread erzeugt.
  */
 public class JavaLoggingHandler extends Handler
 {
   private final static Handler singleton = new JavaLoggingHandler();
   
-  private static Map logMapping = new HashMap();
   static
   {
     try
     {
-      logMapping.put(java.util.logging.Level.CONFIG,Level.INFO);
-      logMapping.put(java.util.logging.Level.FINE,Level.DEBUG);
-      logMapping.put(java.util.logging.Level.FINER,Level.DEBUG);
-      logMapping.put(java.util.logging.Level.FINEST,Level.TRACE);
-      logMapping.put(java.util.logging.Level.INFO,Level.INFO);
-      logMapping.put(java.util.logging.Level.SEVERE,Level.ERROR);
-      logMapping.put(java.util.logging.Level.WARNING,Level.WARN);
-
       // Wir deaktivieren alle Logger von Java
       java.util.logging.Logger logger = java.util.logging.Logger.getLogger("");
       Handler[] handlers = logger.getHandlers();
@@ -73,36 +62,47 @@ public class JavaLoggingHandler extends Handler
    * Ueberschrieben, um die Ausgaben in unseren Logger umzuleiten.
    * @see java.util.logging.Handler#publish(java.util.logging.LogRecord)
    */
-  public synchronized void publish(LogRecord record)
+  public void publish(LogRecord record)
   {
-    if (record == null)
+    if (record == null || record.getLevel() == null)
       return;
     
-    Level level = (Level) logMapping.get(record.getLevel());
-    if (level == null)
-      level = Level.DEFAULT;
-        
-    String message = record.getMessage();
-    Throwable t    = record.getThrown();
-    
-    if (t != null)
+    // Bevor wir irgendwas anderes machen, pruefen wir das Log-Level. Wird es nirgends
+    // geloggt, sparen wir uns auch die Ermittlung der Klasse, die Java ggf. erst
+    // aus dem Stacktrace holt.
+    Level level = map(record.getLevel());
+    if (level == null || !Logger.isLogging(level))
+      return;
+
+    String clazz = record.getSourceClassName();
+    if (!Logger.isLogging(level,clazz))
+      return;
+
+    // Der Stacktrace einer ggf. vorhandenen Exception wird erst im Logger-Thread erzeugt
+    Message msg = new Message(new Date(record.getMillis()),level,null,clazz,record.getSourceMethodName(),null,record.getMessage(),record.getThrown(),Thread.currentThread().getName());
+    Logger.writeLimited(msg);
+  }
+
+  /**
+   * Liefert das zum Java-Level passende Log-Level.
+   * @param level das Java-Level.
+   * @return unser Log-Level, {@link Level#DEFAULT} fuer eigene Java-Levels und
+   * null fuer {@link java.util.logging.Level#OFF}.
+   */
+  static Level map(java.util.logging.Level level)
+  {
+    switch (level.intValue())
     {
-      ByteArrayOutputStream bos = null;
-      try {
-        bos = new ByteArrayOutputStream();
-        t.printStackTrace(new PrintStream(bos));
-        message += "\n" + bos.toString();
-      }
-      finally {
-        try {
-          bos.close();
-        }
-        catch (Exception npe) {}
-      }
+      case Integer.MAX_VALUE: return null;        // OFF
+      case 1000:              return Level.ERROR; // SEVERE
+      case 900:               return Level.WARN;  // WARNING
+      case 800:                                   // INFO
+      case 700:               return Level.INFO;  // CONFIG
+      case 500:                                   // FINE
+      case 400:               return Level.DEBUG; // FINER
+      case 300:               return Level.TRACE; // FINEST
+      default:                return Level.DEFAULT;
     }
-    
-    Message msg = new Message(new Date(record.getMillis()),level,null,record.getSourceClassName(),record.getSourceMethodName(),message,Thread.currentThread().getName());
-    Logger.write(msg);
   }
 
   /**
@@ -62,11 +62,25 @@ public class Level
    * eine hohe Wertigkeit, informative und Debug-Levels eine niedrige. 
    */
   public Level(String name, int value)
+  {
+    this(name,value,true);
+  }
+
+  /**
+   * ct.
+   * @param name Name des Levels.
+   * @param value Wertigkeit des Levels.
+   * @param register true, wenn der Level global registriert werden soll.
+   * Mit false wird er von {@link #findByName(String)} nicht gefunden. Das ist
+   * fuer Levels gedacht, die z.Bsp. nur aus einer fremden Log-Datei gelesen wurden.
+   */
+  Level(String name, int value, boolean register)
   {
   	this.name  = (name == null ? "" : name);
   	this.value = value;
 
-		registry.put(name,this);
+    if (register)
+		  registry.put(name,this);
   }
 
 	/**
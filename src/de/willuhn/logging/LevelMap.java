@@ -0,0 +1,151 @@
+/**********************************************************************
+ *
+ * Copyright (c) 2004 Olaf Willuhn
+ * All rights reserved.
+ * 
+ * This software is copyrighted work licensed under the terms of the
+ * GNU LESSER GENERAL PUBLIC LICENSE 2.1.
+ * Please consult the file "LICENSE" for details. 
+ *
+ **********************************************************************/
+
+package de.willuhn.logging;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Unveraenderliche Zuordnung von Log-Levels zu Packages und Klassen.
+ * Bei Aenderungen wird eine neue Instanz erzeugt, damit ist auch der
+ * Cache automatisch verworfen. Gesucht wird hierarchisch: Fuer die Klasse
+ * "de.willuhn.sql.Foo$Bar" werden der Reihe nach "de.willuhn.sql.Foo$Bar",
+ * "de.willuhn.sql.Foo", "de.willuhn.sql" und "de.willuhn" geprueft. Gibt es
+ * keinen Treffer, gilt das globale Log-Level.
+ */
+final class LevelMap
+{
+  // Maximale Anzahl der gecachten Klassen. Danach wird der Cache geleert.
+  private final static int CACHE_SIZE = 4096;
+
+  private final Level root;
+  private final Map<String,Level> overrides;
+  private final Map<String,Level> cache = new ConcurrentHashMap<String,Level>();
+
+  // Kleinster und groesster Wert ueber alle Levels. Darunter wird nie,
+  // ab dem groessten immer geloggt - egal von welcher Klasse.
+  final int min;
+  final int max;
+
+  /**
+   * ct.
+   * @param root das globale Log-Level.
+   * @param overrides die Log-Levels je Package bzw. Klasse.
+   */
+  LevelMap(Level root, Map<String,Level> overrides)
+  {
+    this.root      = root;
+    this.overrides = Collections.unmodifiableMap(new HashMap<String,Level>(overrides));
+
+    int min = root.getValue();
+    int max = root.getValue();
+    for (Level l:this.overrides.values())
+    {
+      min = Math.min(min,l.getValue());
+      max = Math.max(max,l.getValue());
+    }
+    this.min = min;
+    this.max = max;
+  }
+
+  /**
+   * Liefert das globale Log-Level.
+   * @return das globale Log-Level.
+   */
+  Level getRoot()
+  {
+    return this.root;
+  }
+
+  /**
+   * Liefert die Log-Levels je Package bzw. Klasse.
+   * @return unveraenderliche Map.
+   */
+  Map<String,Level> getOverrides()
+  {
+    return this.overrides;
+  }
+
+  /**
+   * Liefert eine Kopie mit geaendertem globalen Log-Level.
+   * @param level das neue globale Log-Level.
+   * @return die Kopie.
+   */
+  LevelMap root(Level level)
+  {
+    return new LevelMap(level,this.overrides);
+  }
+
+  /**
+   * Liefert eine Kopie mit geaendertem Log-Level fuer ein Package bzw. eine Klasse.
+   * @param name Name des Packages bzw. der Klasse.
+   * @param level das Log-Level. <code>null</code> entfernt den Eintrag.
+   * @return die Kopie.
+   */
+  LevelMap with(String name, Level level)
+  {
+    Map<String,Level> map = new HashMap<String,Level>(this.overrides);
+    if (level == null)
+      map.remove(name);
+    else
+      map.put(name,level);
+    return new LevelMap(this.root,map);
+  }
+
+  /**
+   * Liefert das fuer die Klasse geltende Log-Level.
+   * @param clazz Name der Klasse. Kann <code>null</code> sein.
+   * @return das Log-Level.
+   */
+  Level get(String clazz)
+  {
+    if (clazz == null || this.overrides.isEmpty())
+      return this.root;
+
+    Level l = this.cache.get(clazz);
+    if (l != null)
+      return l;
+
+    String name = clazz;
+    while (l == null && name.length() > 0)
+    {
+      l = this.overrides.get(name);
+      int pos = Math.max(name.lastIndexOf('.'),name.lastIndexOf('$'));
+      name = pos > 0 ? name.substring(0,pos) : "";
+    }
+    if (l == null)
+      l = this.root;
+
+    if (this.cache.size() >= CACHE_SIZE)
+      this.cache.clear();
+    this.cache.put(clazz,l);
+    return l;
+  }
+
+  /**
+   * Prueft, ob Meldungen mit dem Log-Level von der angegebenen Klasse geloggt werden.
+   * @param level das Log-Level.
+   * @param clazz Name der Klasse. Kann <code>null</code> sein.
+   * @return true, wenn die Meldung geloggt wird.
+   */
+  boolean isLogging(Level level, String clazz)
+  {
+    int v = level.getValue();
+    if (v < this.min)
+      return false;
+    if (v >= this.max)
+      return true;
+    return v >= get(clazz).getValue();
+  }
+}
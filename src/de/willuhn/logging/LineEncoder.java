@@ -0,0 +1,273 @@
+/**********************************************************************
+ *
+ * Copyright (c) 2004 Olaf Willuhn
+ * All rights reserved.
+ * 
+ * This software is copyrighted work licensed under the terms of the
+ * GNU LESSER GENERAL PUBLIC LICENSE 2.1.
+ * Please consult the file "LICENSE" for details. 
+ *
+ **********************************************************************/
+package de.willuhn.logging;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+import de.willuhn.logging.layout.Layout;
+
+/**
+ * Wandelt Log-Meldungen in Bytes um - im selben Format wie <code>Message#toString()</code>
+ * gefolgt vom Zeilenumbruch. Alternativ kann per {@link #setLayout(Layout)} ein anderes
+ * Format gewaehlt werden. Das Layout schreibt dann ueber {@link #put(int)} direkt in den Puffer.
+ * Zeichen- und Byte-Puffer sowie der CharsetEncoder werden wiederverwendet.
+ * Die Puffer wachsen bei Bedarf mit, werden danach aber nicht wieder verkleinert.
+ * Damit entsteht im Normalbetrieb (abgesehen vom einmal pro Sekunde neu erzeugten
+ * Zeitstempel) kein Muell mehr.
+ * Die Klasse ist nicht thread-safe. Jedes Target sollte seine eigene Instanz besitzen.
+ */
+public final class LineEncoder
+{
+  private final static String lineSep = System.getProperty("line.separator");
+
+  private final TimestampCache timestamps = new TimestampCache();
+  private final CharsetEncoder encoder;
+  private final String separator;
+  private final byte[] separatorBytes;
+
+  private volatile Layout layout = null;
+
+  private StringBuilder line = new StringBuilder(256);
+  private char[] chars       = new char[256];
+  private CharBuffer cb      = CharBuffer.wrap(chars);
+  private ByteBuffer bb      = null;
+
+  /**
+   * ct.
+   * Verwendet das Default-Charset und den Zeilenumbruch der Plattform.
+   */
+  public LineEncoder()
+  {
+    this(Charset.defaultCharset(),lineSep);
+  }
+
+  /**
+   * ct.
+   * @param charset der zu verwendende Zeichensatz.
+   * @param separator der anzuhaengende Zeilenumbruch.
+   */
+  public LineEncoder(Charset charset, String separator)
+  {
+    this(charset,separator,8 * 1024,false);
+  }
+
+  /**
+   * ct.
+   * @param charset der zu verwendende Zeichensatz.
+   * @param separator der anzuhaengende Zeilenumbruch.
+   * @param capacity initiale Groesse des Byte-Puffers.
+   * @param direct true, wenn ein Direct-ByteBuffer verwendet werden soll.
+   * Das lohnt sich, wenn der Puffer via {@link #writeTo(WritableByteChannel)}
+   * geschrieben wird, da der Channel die Daten dann nicht erst umkopieren muss.
+   */
+  public LineEncoder(Charset charset, String separator, int capacity, boolean direct)
+  {
+    this.encoder = charset.newEncoder()
+                          .onMalformedInput(CodingErrorAction.REPLACE)
+                          .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    this.separator = separator == null ? "" : separator;
+    this.separatorBytes = this.separator.getBytes(charset);
+    capacity = Math.max(capacity,256);
+    this.bb = direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+  }
+
+  /**
+   * Legt das Layout fest.
+   * @param layout das Layout. <code>null</code> steht fuer das Format von <code>Message#toString()</code>.
+   */
+  public void setLayout(Layout layout)
+  {
+    this.layout = layout;
+  }
+
+  /**
+   * Liefert das Layout.
+   * @return das Layout oder <code>null</code>, wenn das Format von <code>Message#toString()</code> verwendet wird.
+   */
+  public Layout getLayout()
+  {
+    return this.layout;
+  }
+
+  /**
+   * Prueft, ob das Format Klasse und Methode des Aufrufers enthaelt.
+   * @return true, wenn Klasse und Methode benoetigt werden.
+   */
+  public boolean needsCaller()
+  {
+    Layout l = this.layout;
+    return l == null || l.needsCaller();
+  }
+
+  /**
+   * Haengt die Meldung an den Puffer an.
+   * @param message die Meldung.
+   */
+  public void append(Message message)
+  {
+    if (message == null)
+      return;
+
+    if (this.layout != null)
+    {
+      this.layout.format(message,this);
+      for (byte b:this.separatorBytes)
+        put(b);
+      return;
+    }
+
+    this.line.setLength(0);
+    message.appendTo(this.line,message.getDate() != null ? timestamps.format(message.getDate().getTime()) : null);
+    this.line.append(this.separator);
+
+    int len = this.line.length();
+    if (len > this.chars.length)
+    {
+      this.chars = new char[Math.max(len,this.chars.length * 2)];
+      this.cb    = CharBuffer.wrap(this.chars);
+    }
+    this.line.getChars(0,len,this.chars,0);
+    this.cb.clear();
+    this.cb.limit(len);
+
+    this.encoder.reset();
+    while (true)
+    {
+      CoderResult cr = this.encoder.encode(this.cb,this.bb,true);
+      if (cr.isOverflow())
+      {
+        grow();
+        continue;
+      }
+      cr = this.encoder.flush(this.bb);
+      if (cr.isOverflow())
+      {
+        grow();
+        continue;
+      }
+      break;
+    }
+  }
+
+  /**
+   * Haengt ein einzelnes Byte an den Puffer an.
+   * Fuer die Verwendung in einem {@link Layout}.
+   * @param b das Byte.
+   */
+  public void put(int b)
+  {
+    if (!this.bb.hasRemaining())
+      grow();
+    this.bb.put((byte) b);
+  }
+
+  /**
+   * Vergroessert den Byte-Puffer auf die doppelte Groesse.
+   */
+  private void grow()
+  {
+    int size = this.bb.capacity() * 2;
+    ByteBuffer bigger = this.bb.isDirect() ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+    this.bb.flip();
+    bigger.put(this.bb);
+    this.bb = bigger;
+  }
+
+  /**
+   * Liefert die Anzahl der derzeit im Puffer befindlichen Bytes.
+   * @return Anzahl der Bytes.
+   */
+  public int size()
+  {
+    return this.bb.position();
+  }
+
+  /**
+   * Schreibt den Inhalt des Puffers in den Stream und leert den Puffer anschliessend.
+   * @param os der Stream.
+   * @throws IOException
+   */
+  public void writeTo(OutputStream os) throws IOException
+  {
+    if (!this.bb.hasArray())
+    {
+      writeTo(Channels.newChannel(os));
+      return;
+    }
+
+    try
+    {
+      os.write(this.bb.array(),this.bb.arrayOffset(),this.bb.position());
+    }
+    finally
+    {
+      reset();
+    }
+  }
+
+  /**
+   * Schreibt den Inhalt des Puffers in den Channel und leert den Puffer anschliessend.
+   * @param channel der Channel.
+   * @throws IOException
+   */
+  public void writeTo(WritableByteChannel channel) throws IOException
+  {
+    try
+    {
+      this.bb.flip();
+      while (this.bb.hasRemaining())
+        channel.write(this.bb);
+    }
+    finally
+    {
+      reset();
+    }
+  }
+
+  /**
+   * Kopiert den Inhalt des Puffers in den ByteBuffer und leert den Puffer anschliessend.
+   * Passt nicht alles hinein, wird nur der vordere Teil kopiert.
+   * @param target der ByteBuffer.
+   * @return Anzahl der kopierten Bytes.
+   */
+  public int writeTo(ByteBuffer target)
+  {
+    try
+    {
+      this.bb.flip();
+      int n = Math.min(this.bb.remaining(),target.remaining());
+      this.bb.limit(n);
+      target.put(this.bb);
+      return n;
+    }
+    finally
+    {
+      reset();
+    }
+  }
+
+  /**
+   * Leert den Puffer.
+   */
+  public void reset()
+  {
+    this.bb.clear();
+  }
+}
@@ -11,15 +11,21 @@
 
 package de.willuhn.logging;
 
-import java.io.ByteArrayOutputStream;
-import java.io.PrintStream;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
 
+import de.willuhn.logging.targets.BatchTarget;
+import de.willuhn.logging.targets.CallerAware;
 import de.willuhn.logging.targets.Target;
 import de.willuhn.util.History;
-import de.willuhn.util.Queue;
-import de.willuhn.util.Queue.QueueFullException;
 
 /**
  * Kleiner System-Logger.
@@ -31,14 +37,89 @@ public class Logger
   // maximale Groesse des Log-Puffers (Zeilen-Anzahl)
   private final static int BUFFER_SIZE = 200;
 
-	// Die Liste der Log-Targets
-	private static ArrayList targets = new ArrayList();
+  // Anzahl der Slots in der Warteschlange zum Logger-Thread
+  private final static int QUEUE_SIZE = 4096;
+
+  // Maximale Anzahl der Meldungen, die der Logger-Thread am Stueck an die Targets uebergibt
+  private final static int BATCH_SIZE = 256;
+
+  /**
+   * Legt fest, wie mit neuen Log-Meldungen verfahren wird, wenn die
+   * Warteschlange zum Logger-Thread voll ist.
+   */
+  public static enum OverflowPolicy
+  {
+    /**
+     * Der loggende Thread wartet, bis wieder Platz in der Warteschlange ist.
+     * Meldungen, die vom Logger-Thread selbst (also aus einem Target heraus)
+     * kommen, werden stattdessen nach STDOUT geschrieben, da er sonst auf sich
+     * selbst warten wuerde.
+     */
+    BLOCK,
+
+    /**
+     * Die aelteste noch nicht geschriebene Meldung wird verworfen.
+     */
+    DROP_OLDEST,
+
+    /**
+     * Die neue Meldung wird verworfen.
+     */
+    DROP_NEWEST,
+
+    /**
+     * Die neue Meldung wird direkt nach STDOUT geschrieben (Default).
+     */
+    STDOUT,
+  }
+
+  /**
+   * Legt fest, ob und wann Klasse und Methode des Aufrufers ermittelt werden,
+   * wenn sie beim Loggen nicht explizit angegeben wurden.
+   */
+  public static enum CallerLookup
+  {
+    /**
+     * Der Aufrufer wird nicht ermittelt.
+     */
+    OFF,
+
+    /**
+     * Es wird nur die Aufrufstelle festgehalten. Der Stacktrace wird erst
+     * im Logger-Thread ausgewertet, wenn ein Target Klasse und Methode tatsaechlich
+     * benoetigt (Default).
+     * Festgehalten wird die Aufrufstelle nur dann nicht, wenn alle Targets per
+     * {@link CallerAware} mitteilen, dass sie den Aufrufer nicht benoetigen.
+     */
+    LAZY,
+
+    /**
+     * Der Aufrufer wird sofort im loggenden Thread ermittelt.
+     */
+    EAGER,
+  }
+
+	// Die Liste der Log-Targets. Geschrieben wird selten, gelesen bei jeder Meldung.
+  // Daher Copy-On-Write - der Logger-Thread kann ohne Lock darueber iterieren.
+	private static List<Target> targets = new CopyOnWriteArrayList<Target>();
 
   // Eine History mit den letzten Log-Eintraegen. Kann ganz nuetzlich sein,
   // wenn man irgendwo in der Anwendung mal die letzten Zeilen des Logs ansehen will.
-  private static History lastLines = new History(BUFFER_SIZE);
+  private static History<Message> lastLines = new History<Message>(BUFFER_SIZE);
+
+  // Globales Log-Level und ggf. abweichende Log-Levels je Package bzw. Klasse
+  private static volatile LevelMap levels = new LevelMap(Level.DEFAULT,new HashMap<String,Level>());
 
-	private static Level level = Level.DEFAULT;
+  private static volatile OverflowPolicy overflowPolicy = OverflowPolicy.STDOUT;
+
+  private static volatile CallerLookup callerLookup = CallerLookup.LAZY;
+
+  private static volatile ThrowableRenderer renderer = ThrowableRenderer.PLAIN;
+
+  private static volatile RateLimiter limiter = null;
+
+  // true, wenn mindestens ein Target Klasse und Methode des Aufrufers benoetigt
+  private static volatile boolean callerNeeded = false;
 
 	private static LoggerThread lt = null;
 	
@@ -58,7 +139,9 @@ public class Logger
 			return;
 		synchronized (targets)
 		{
+      lt.stats.add(target);
 			targets.add(target);
+      updateCallerNeeded();
 		}
 	}
 
@@ -73,7 +156,65 @@ public class Logger
     synchronized(targets)
     {
       targets.remove(target);
+      updateCallerNeeded();
     }
+    lt.stats.remove(target);
+  }
+
+  /**
+   * Teilt dem Logger mit, dass sich die Konfiguration eines Targets geaendert hat -
+   * z.Bsp. dessen Layout. Der Logger prueft dann erneut, ob Klasse und Methode
+   * des Aufrufers benoetigt werden.
+   */
+  public static void targetChanged()
+  {
+    synchronized(targets)
+    {
+      updateCallerNeeded();
+    }
+  }
+
+  /**
+   * Prueft, ob mindestens eines der Targets Klasse und Methode des Aufrufers benoetigt.
+   * Ohne Targets wird nach STDOUT geschrieben. Dort entfallen Klasse und Methode dann,
+   * sofern sie nicht explizit angegeben wurden.
+   * Muss innerhalb von synchronized(targets) aufgerufen werden.
+   */
+  private static void updateCallerNeeded()
+  {
+    boolean needed = false;
+    for (Target target:targets)
+    {
+      if (needed)
+        break;
+      needed = !(target instanceof CallerAware) || ((CallerAware) target).needsCaller();
+    }
+    callerNeeded = needed;
+  }
+
+  /**
+   * Legt fest, ob und wann Klasse und Methode des Aufrufers ermittelt werden.
+   * Auch bei {@link CallerLookup#LAZY} wird im loggenden Thread fuer jede Meldung
+   * ein Throwable erzeugt, sobald auch nur ein Target den Aufrufer benoetigt.
+   * Targets, die {@link CallerAware} nicht implementieren, zaehlen hierbei als
+   * Targets, die den Aufrufer benoetigen. Die Einsparung greift also nur, wenn alle
+   * Targets darauf verzichten oder {@link CallerLookup#OFF} gewaehlt wird.
+   * @param lookup das Verhalten.
+   */
+  public static void setCallerLookup(CallerLookup lookup)
+  {
+    if (lookup == null)
+      return;
+    Logger.callerLookup = lookup;
+  }
+
+  /**
+   * Liefert das aktuelle Verhalten beim Ermitteln des Aufrufers.
+   * @return das Verhalten.
+   */
+  public static CallerLookup getCallerLookup()
+  {
+    return callerLookup;
   }
 
 	/**
@@ -84,26 +225,184 @@ public class Logger
 	{
 		if (level == null)
 			return;
-		Logger.level = level;
+    synchronized (Logger.class)
+    {
+      levels = levels.root(level);
+    }
 	}
 
+  /**
+   * Setzt ein abweichendes Log-Level fuer ein Package oder eine Klasse.
+   * Es gilt auch fuer alle Unter-Packages bzw. inneren Klassen, sofern fuer
+   * diese nicht ebenfalls ein Log-Level festgelegt ist. Beispiel:
+   * <pre>
+   * Logger.setLevel("de.willuhn.sql",Level.DEBUG);
+   * </pre>
+   * Ist fuer die loggende Klasse ein abweichendes Log-Level gesetzt, wird
+   * der Aufrufer ggf. sofort ermittelt (siehe {@link #setCallerLookup(CallerLookup)}).
+   * Das kostet bei jeder Meldung ohne Angabe der Klasse, deren Level zwischen dem
+   * kleinsten und dem groessten gesetzten Log-Level liegt, einen Stacktrace - auch
+   * wenn die Meldung danach verworfen wird. Er wird je Meldung nur einmal erzeugt.
+   * Mit {@link CallerLookup#OFF} gilt fuer Meldungen ohne Angabe der Klasse
+   * immer das globale Log-Level.
+   * @param name Name des Packages bzw. der Klasse.
+   * @param level das Log-Level. <code>null</code> entfernt das abweichende Log-Level wieder.
+   */
+  public static void setLevel(String name, Level level)
+  {
+    if (name == null || name.length() == 0)
+      return;
+    synchronized (Logger.class)
+    {
+      levels = levels.with(name,level);
+    }
+  }
+
+  /**
+   * Liefert das fuer ein Package oder eine Klasse geltende Log-Level.
+   * @param name Name des Packages bzw. der Klasse.
+   * @return das geltende Log-Level.
+   */
+  public static Level getLevel(String name)
+  {
+    return levels.get(name);
+  }
+
+  /**
+   * Liefert die abweichenden Log-Levels je Package bzw. Klasse.
+   * @return Kopie der abweichenden Log-Levels.
+   */
+  public static Map<String,Level> getLevels()
+  {
+    return new HashMap<String,Level>(levels.getOverrides());
+  }
+
+  /**
+   * Legt fest, wie mit Log-Meldungen verfahren wird, wenn die Warteschlange
+   * zum Logger-Thread voll ist.
+   * @param policy das Verhalten bei voller Warteschlange.
+   */
+  public static void setOverflowPolicy(OverflowPolicy policy)
+  {
+    if (policy == null)
+      return;
+    Logger.overflowPolicy = policy;
+  }
+
+  /**
+   * Liefert das aktuelle Verhalten bei voller Warteschlange.
+   * @return Verhalten bei voller Warteschlange.
+   */
+  public static OverflowPolicy getOverflowPolicy()
+  {
+    return overflowPolicy;
+  }
+
+  /**
+   * Liefert die Anzahl der Log-Meldungen, die bisher auf eine volle
+   * Warteschlange gestossen sind und gemaess der angegebenen Policy
+   * behandelt wurden. Bei {@link OverflowPolicy#DROP_OLDEST} ist es die
+   * Anzahl der dafuer verworfenen aelteren Meldungen.
+   * @param policy die Policy.
+   * @return Anzahl der betroffenen Meldungen.
+   */
+  public static long getOverflowCount(OverflowPolicy policy)
+  {
+    if (policy == null)
+      return 0L;
+    return lt.overflows[policy.ordinal()].get();
+  }
+
+  /**
+   * Liefert die Statistik des Loggers mit Zaehlern fuer die Warteschlange
+   * und Schreibdauer sowie Fehler je Target.
+   * @return die Statistik.
+   */
+  public static LoggerStats getStats()
+  {
+    return lt.stats;
+  }
+
+  /**
+   * Begrenzt die Anzahl gleichartiger Log-Meldungen, bevor sie in die Warteschlange
+   * zum Logger-Thread gelangen. Gleichartig sind Meldungen mit derselben Vorlage (bei
+   * Meldungen mit Platzhaltern "{}" das Pattern, sonst der Text) und - sofern beim
+   * Loggen explizit angegeben - derselben Klasse und Methode. Ueberzaehlige Meldungen
+   * werden verworfen. Alle 10 Sekunden wird je Art eine Zusammenfassung
+   * "suppressed N similar messages: ..." geloggt.
+   * Default: deaktiviert.
+   * @param perSecond Anzahl der Meldungen pro Sekunde und Art. 0 deaktiviert die Funktion.
+   * @param burst Anzahl der Meldungen, die kurzzeitig auch schneller durchgelassen werden.
+   */
+  public static void setRateLimit(double perSecond, int burst)
+  {
+    setRateLimit(perSecond,burst,10 * 1000L);
+  }
+
+  /**
+   * Begrenzt die Anzahl gleichartiger Log-Meldungen.
+   * Siehe {@link #setRateLimit(double, int)}.
+   * @param perSecond Anzahl der Meldungen pro Sekunde und Art. 0 deaktiviert die Funktion.
+   * @param burst Anzahl der Meldungen, die kurzzeitig auch schneller durchgelassen werden.
+   * @param interval Abstand der Zusammenfassungen in Millisekunden.
+   */
+  public static void setRateLimit(double perSecond, int burst, long interval)
+  {
+    Logger.limiter = perSecond > 0d ? new RateLimiter(perSecond,burst,interval) : null;
+  }
+
+  /**
+   * Liefert die Anzahl der bisher wegen {@link #setRateLimit(double, int)} verworfenen Meldungen.
+   * @return Anzahl der verworfenen Meldungen.
+   */
+  public static long getSuppressedCount()
+  {
+    RateLimiter rl = limiter;
+    return rl != null ? rl.getSuppressed() : 0L;
+  }
+
+  /**
+   * Legt fest, wieviele Stacktraces sich der Logger merkt, um wiederholt auftretende
+   * identische Stacktraces nicht erneut komplett zu schreiben. Stattdessen wird
+   * dann nur noch auf das erste Auftreten verwiesen ("same as #N").
+   * Default: 0 (deaktiviert).
+   * @param size Anzahl der zu merkenden Stacktraces. 0 deaktiviert die Funktion.
+   */
+  public static void setStackTraceCache(int size)
+  {
+    Logger.renderer = size > 0 ? new ThrowableRenderer(size) : ThrowableRenderer.PLAIN;
+  }
+
 	/**
 	 * Liefert den aktuellen Log-Level.
    * @return Log-Level.
    */
   public static Level getLevel()
 	{
-		return level;
+		return levels.getRoot();
 	}
   
   /**
    * Prueft, ob Meldungen mit dem angegeben Log-Level derzeit geloggt werden.
+   * Sind abweichende Log-Levels je Package bzw. Klasse gesetzt, genuegt es,
+   * wenn sie in mindestens einem davon geloggt werden.
    * @param l das zu testende Log-Level.
    * @return true, wenn Meldungen mit dem angegeben Log-Level derzeit geloggt werden.
    */
   public static boolean isLogging(Level l)
   {
-    return l != null && l.getValue() >= Logger.level.getValue();
+    return l != null && l.getValue() >= levels.min;
+  }
+
+  /**
+   * Prueft, ob Meldungen mit dem angegeben Log-Level von der angegebenen Klasse derzeit geloggt werden.
+   * @param l das zu testende Log-Level.
+   * @param clazz Name der loggenden Klasse.
+   * @return true, wenn Meldungen mit dem angegeben Log-Level derzeit geloggt werden.
+   */
+  public static boolean isLogging(Level l, String clazz)
+  {
+    return l != null && levels.isLogging(l,clazz);
   }
 
   /**
@@ -161,65 +460,237 @@ public class Logger
 		write(Level.ERROR,message,t);
 	}
 
+  /**
+   * Schreibt eine Message vom Typ "trace" ins Log.
+   * Die Nachricht wird erst erzeugt, wenn das Log-Level tatsaechlich geloggt wird.
+   * @param pattern Nachricht mit Platzhaltern "{}".
+   * @param args Parameter fuer die Platzhalter.
+   * Ist der letzte Parameter eine Exception und nicht fuer einen Platzhalter
+   * vorgesehen, wird sie wie bei {@link #error(String, Throwable)} geloggt.
+   */
+  public static void trace(String pattern, Object... args)
+  {
+    log(Level.TRACE,pattern,args);
+  }
+
+  /**
+   * Schreibt eine Message vom Typ "trace" ins Log.
+   * Die Nachricht wird erst erzeugt, wenn das Log-Level tatsaechlich geloggt wird.
+   * @param message liefert die zu loggende Nachricht.
+   */
+  public static void traceLazy(Supplier<String> message)
+  {
+    log(Level.TRACE,message);
+  }
+
+  /**
+   * Schreibt eine Message vom Typ "debug" ins Log.
+   * Die Nachricht wird erst erzeugt, wenn das Log-Level tatsaechlich geloggt wird.
+   * @param pattern Nachricht mit Platzhaltern "{}".
+   * @param args Parameter fuer die Platzhalter.
+   * Ist der letzte Parameter eine Exception und nicht fuer einen Platzhalter
+   * vorgesehen, wird sie wie bei {@link #error(String, Throwable)} geloggt.
+   */
+  public static void debug(String pattern, Object... args)
+  {
+    log(Level.DEBUG,pattern,args);
+  }
+
+  /**
+   * Schreibt eine Message vom Typ "debug" ins Log.
+   * Die Nachricht wird erst erzeugt, wenn das Log-Level tatsaechlich geloggt wird.
+   * @param message liefert die zu loggende Nachricht.
+   */
+  public static void debugLazy(Supplier<String> message)
+  {
+    log(Level.DEBUG,message);
+  }
+
+  /**
+   * Schreibt eine Message vom Typ "info" ins Log.
+   * Die Nachricht wird erst erzeugt, wenn das Log-Level tatsaechlich geloggt wird.
+   * @param pattern Nachricht mit Platzhaltern "{}".
+   * @param args Parameter fuer die Platzhalter.
+   * Ist der letzte Parameter eine Exception und nicht fuer einen Platzhalter
+   * vorgesehen, wird sie wie bei {@link #error(String, Throwable)} geloggt.
+   */
+  public static void info(String pattern, Object... args)
+  {
+    log(Level.INFO,pattern,args);
+  }
+
+  /**
+   * Schreibt eine Message vom Typ "info" ins Log.
+   * Die Nachricht wird erst erzeugt, wenn das Log-Level tatsaechlich geloggt wird.
+   * @param message liefert die zu loggende Nachricht.
+   */
+  public static void infoLazy(Supplier<String> message)
+  {
+    log(Level.INFO,message);
+  }
+
+  /**
+   * Schreibt eine Message vom Typ "warn" ins Log.
+   * Die Nachricht wird erst erzeugt, wenn das Log-Level tatsaechlich geloggt wird.
+   * @param pattern Nachricht mit Platzhaltern "{}".
+   * @param args Parameter fuer die Platzhalter.
+   * Ist der letzte Parameter eine Exception und nicht fuer einen Platzhalter
+   * vorgesehen, wird sie wie bei {@link #error(String, Throwable)} geloggt.
+   */
+  public static void warn(String pattern, Object... args)
+  {
+    log(Level.WARN,pattern,args);
+  }
+
+  /**
+   * Schreibt eine Message vom Typ "warn" ins Log.
+   * Die Nachricht wird erst erzeugt, wenn das Log-Level tatsaechlich geloggt wird.
+   * @param message liefert die zu loggende Nachricht.
+   */
+  public static void warnLazy(Supplier<String> message)
+  {
+    log(Level.WARN,message);
+  }
+
+  /**
+   * Schreibt eine Message vom Typ "error" ins Log.
+   * Die Nachricht wird erst erzeugt, wenn das Log-Level tatsaechlich geloggt wird.
+   * @param pattern Nachricht mit Platzhaltern "{}".
+   * @param args Parameter fuer die Platzhalter.
+   * Ist der letzte Parameter eine Exception und nicht fuer einen Platzhalter
+   * vorgesehen, wird sie wie bei {@link #error(String, Throwable)} geloggt.
+   */
+  public static void error(String pattern, Object... args)
+  {
+    log(Level.ERROR,pattern,args);
+  }
+
+  /**
+   * Schreibt eine Message vom Typ "error" ins Log.
+   * Die Nachricht wird erst erzeugt, wenn das Log-Level tatsaechlich geloggt wird.
+   * @param message liefert die zu loggende Nachricht.
+   */
+  public static void errorLazy(Supplier<String> message)
+  {
+    log(Level.ERROR,message);
+  }
+
   /**
    * Flusht die noch nicht geschriebenen Log-Meldungen.
-   * Eigentlich macht die Funktion nichts anderes, als solange
-   * zu warten, bis die Queue leer ist ;).
+   * Kehrt zurueck, sobald alle bis zum Aufruf geloggten Meldungen
+   * von allen Targets geschrieben wurden.
    * @throws InterruptedException
    */
   public static void flush() throws InterruptedException
   {
-    while(lt.messages.size() > 0)
+    flush(0L);
+  }
+
+  /**
+   * Flusht die noch nicht geschriebenen Log-Meldungen.
+   * Kehrt zurueck, sobald alle bis zum Aufruf geloggten Meldungen von allen
+   * Targets (einschliesslich der Warteschlangen von {@link AsyncTarget}s)
+   * geschrieben wurden oder die Wartezeit abgelaufen ist.
+   * Aus einem Target heraus aufgerufen, wird nicht gewartet.
+   * @param timeout maximale Wartezeit in Millisekunden. 0 wartet ohne Limit.
+   * @return Anzahl der Meldungen, die bei Rueckkehr noch nicht geschrieben waren.
+   * @throws InterruptedException
+   */
+  public static int flush(long timeout) throws InterruptedException
+  {
+    long deadline = timeout > 0 ? System.currentTimeMillis() + timeout : 0L;
+    int pending = lt.messages.await(timeout,lt);
+    for (Target target:targets)
     {
-      Thread.sleep(100l);
+      if (!(target instanceof AsyncTarget))
+        continue;
+
+      AsyncTarget at = (AsyncTarget) target;
+      long remaining = remaining(deadline);
+      pending += remaining < 0L ? at.getPending() : at.flush(remaining);
     }
+    return pending;
   }
 
   /**
    * Schliesst den Logger und die damit verbundene Log-Datei.
+   * Wartet, bis alle bis dahin geloggten Meldungen geschrieben wurden.
    */
   public static void close()
+  {
+    close(0L);
+  }
+
+  /**
+   * Schliesst den Logger und die damit verbundene Log-Datei.
+   * @param timeout maximale Wartezeit in Millisekunden, bis alle bis dahin
+   * geloggten Meldungen geschrieben wurden. 0 wartet ohne Limit.
+   * @return Anzahl der Meldungen, die nicht mehr geschrieben wurden.
+   */
+  public static int close(long timeout)
 	{
+    long deadline = timeout > 0 ? System.currentTimeMillis() + timeout : 0L;
+    int pending = 0;
+
 		lt.shutdown();
 
-		// Wir muessen noch etwas warten, bis der Thread alle Eintraege
-		// aus der Queue geschrieben hat.
+		// Wir warten, bis der Thread alle Eintraege aus der Queue geschrieben hat.
 		try {
-			while (!lt.finished())
-			{
-				Thread.sleep(50);
-			}
+      pending = lt.messages.await(timeout,lt);
 		}
-		catch (Exception e)
+		catch (InterruptedException e)
 		{
-			e.printStackTrace();
-			lt.interrupt();
+      pending = lt.messages.size();
+      Thread.currentThread().interrupt();
 		}
 
 		synchronized (targets)
 		{
-			Target target = null;
-			for (int i=0;i<targets.size();++i)
+			for (Target target:targets)
 			{
-				target = (Target) targets.get(i);
 				try {
-					target.close();
+          if (target instanceof AsyncTarget)
+          {
+            long remaining = remaining(deadline);
+            pending += ((AsyncTarget) target).close(remaining < 0L ? 1L : remaining);
+          }
+          else
+          {
+            target.close();
+          }
 				}
 				catch (Exception io)
 				{
 				}
+				lt.stats.remove(target);
 			}
-			targets = new ArrayList();
+			targets.clear();
+      updateCallerNeeded();
 		}
+    return pending;
 	}
 
+  /**
+   * Liefert die bis zur Deadline verbleibende Zeit.
+   * @param deadline die Deadline. 0 steht fuer kein Limit.
+   * @return verbleibende Zeit in Millisekunden, 0 fuer kein Limit oder
+   * -1, wenn die Deadline bereits ueberschritten ist.
+   */
+  private static long remaining(long deadline)
+  {
+    if (deadline == 0L)
+      return 0L;
+    long remaining = deadline - System.currentTimeMillis();
+    return remaining > 0L ? remaining : -1L;
+  }
+
   /**
    * Liefert die letzten Zeilen des Logs.
    * @return Array mit den letzten Log-Eintraegen (einer pro Index).
    */
   public static Message[] getLastLines()
   {
-    return (Message[]) lastLines.toArray(new Message[lastLines.size()]);
+    return lastLines.toArray(new Message[0]);
   }
 
   /**
@@ -243,6 +714,110 @@ public class Logger
 		write(level,null,null,null,message,t);
   }
   
+  /**
+   * Schreibt eine Log-Meldung, deren Text erst erzeugt wird, wenn das Log-Level
+   * tatsaechlich geloggt wird.
+   * @param level Log-Levels.
+   * @param message liefert die zu loggende Nachricht.
+   */
+  private static void log(Level level, Supplier<String> message)
+  {
+    if (message == null)
+      return;
+
+    LevelMap lm = levels;
+    int value = level.getValue();
+    if (value < lm.min)
+      return;
+
+    // Haengt das Log-Level von der Klasse ab, pruefen wir das, bevor der Text erzeugt wird
+    String clazz  = null;
+    String method = null;
+    if (value < lm.max && callerLookup != CallerLookup.OFF)
+    {
+      StackTraceElement e = Message.caller(new Throwable());
+      if (e != null)
+      {
+        clazz  = e.getClassName();
+        method = e.getMethodName();
+      }
+    }
+    if (value < lm.max && !lm.isLogging(level,clazz))
+      return;
+
+    write(level,null,clazz,method,message.get(),null);
+  }
+
+  /**
+   * Schreibt eine Log-Meldung, deren Text erst erzeugt wird, wenn das Log-Level
+   * tatsaechlich geloggt wird.
+   * @param level Log-Levels.
+   * @param pattern Nachricht mit Platzhaltern "{}".
+   * @param args Parameter fuer die Platzhalter.
+   * Ist der letzte Parameter eine Exception und nicht fuer einen Platzhalter
+   * vorgesehen, wird sie wie bei {@link #write(Level, String, Throwable)} geloggt.
+   */
+  private static void log(Level level, String pattern, Object[] args)
+  {
+    if (!isLogging(level))
+      return;
+
+    int count = args != null ? args.length : 0;
+    Throwable t = null;
+    if (count > 0 && (args[count-1] instanceof Throwable) && placeholders(pattern) < count)
+      t = (Throwable) args[--count];
+
+    write(level,null,null,null,pattern,args,count,t,true);
+  }
+
+  /**
+   * Zaehlt die Platzhalter "{}" im Pattern.
+   * @param pattern das Pattern.
+   * @return Anzahl der Platzhalter.
+   */
+  private static int placeholders(String pattern)
+  {
+    if (pattern == null)
+      return 0;
+
+    int count = 0;
+    int pos = pattern.indexOf("{}");
+    while (pos != -1)
+    {
+      count++;
+      pos = pattern.indexOf("{}",pos + 2);
+    }
+    return count;
+  }
+
+  /**
+   * Ersetzt die Platzhalter "{}" im Pattern der Reihe nach durch die Parameter.
+   * Ueberzaehlige Platzhalter bleiben stehen, ueberzaehlige Parameter werden ignoriert.
+   * @param pattern das Pattern.
+   * @param args die Parameter.
+   * @param count Anzahl der zu verwendenden Parameter.
+   * @return der fertige Text.
+   */
+  private static String format(String pattern, Object[] args, int count)
+  {
+    if (pattern == null || count == 0)
+      return pattern;
+
+    StringBuilder sb = new StringBuilder(pattern.length() + 16 * count);
+    int pos = 0;
+    for (int i=0;i<count;++i)
+    {
+      int idx = pattern.indexOf("{}",pos);
+      if (idx == -1)
+        break;
+      sb.append(pattern,pos,idx);
+      sb.append(args[i]);
+      pos = idx + 2;
+    }
+    sb.append(pattern,pos,pattern.length());
+    return sb.toString();
+  }
+
   /**
    * Schreibt eine Log-Meldung mit direkter Angabe des Log-Levels.
    * @param level Log-Levels.
@@ -253,46 +828,96 @@ public class Logger
    * @param t optionale Angabe einer Exception.
    */
   public static void write(Level level, String host, String clazz, String method, String message, Throwable t)
+  {
+    write(level,host,clazz,method,message,t,true);
+  }
+
+  /**
+   * Loggt die Zusammenfassung der verworfenen Meldungen.
+   * Sie selbst unterliegt nicht der Begrenzung.
+   * @param level Log-Levels.
+   * @param clazz Name der loggenden Klasse.
+   * @param method Name der loggenden Funktion.
+   * @param message zu loggende Nachricht.
+   */
+  static void summary(Level level, String clazz, String method, String message)
+  {
+    write(level,null,clazz,method,message,null,false);
+  }
+
+  /**
+   * Schreibt eine Log-Meldung mit direkter Angabe des Log-Levels.
+   * @param level Log-Levels.
+   * @param host optionale Angabe des Hostnamens.
+   * @param clazz Name der loggenden Klasse.
+   * @param method Name der loggenden Funktion.
+   * @param message zu loggende Nachricht.
+   * @param t optionale Angabe einer Exception.
+   * @param limit true, wenn die Meldung noch gegen die Begrenzung gleichartiger Meldungen geprueft werden muss.
+   */
+  private static void write(Level level, String host, String clazz, String method, String message, Throwable t, boolean limit)
+  {
+    write(level,host,clazz,method,message,null,0,t,limit);
+  }
+
+  /**
+   * Schreibt eine Log-Meldung mit direkter Angabe des Log-Levels.
+   * @param level Log-Levels.
+   * @param host optionale Angabe des Hostnamens.
+   * @param clazz Name der loggenden Klasse.
+   * @param method Name der loggenden Funktion.
+   * @param message zu loggende Nachricht bzw. Pattern mit Platzhaltern "{}".
+   * @param args optionale Parameter fuer die Platzhalter. Das Pattern wird erst formatiert,
+   * wenn die Meldung alle Filter passiert hat. Die Begrenzung gleichartiger Meldungen
+   * arbeitet mit dem Pattern.
+   * @param count Anzahl der zu verwendenden Parameter.
+   * @param t optionale Angabe einer Exception.
+   * @param limit true, wenn die Meldung noch gegen die Begrenzung gleichartiger Meldungen geprueft werden muss.
+   */
+  private static void write(Level level, String host, String clazz, String method, String message, Object[] args, int count, Throwable t, boolean limit)
   {
     // Wir checken, ob der uebergebene Level mindestens genauso wertig ist,
-    // wie unser aktueller
-    if (level.getValue() < Logger.level.getValue())
+    // wie unser aktueller. Haengt das von der Klasse ab, pruefen wir genauer.
+    LevelMap lm = levels;
+    int value = level.getValue();
+    if (value < lm.min)
       return;
 
-    if (t != null)
-    {
-      ByteArrayOutputStream bos = null;
-      try {
-        bos = new ByteArrayOutputStream();
-        t.printStackTrace(new PrintStream(bos));
-        message += "\n" + bos.toString();
-      }
-      finally {
-        try {
-          bos.close();
-        }
-        catch (Exception npe) {}
-      }
-    }
-
-    if (clazz == null || method == null)
+    // Haengt das Log-Level von der Klasse ab, brauchen wir den Aufrufer sofort.
+    // Er wird genau einmal ermittelt und direkt in die Message uebernommen.
+    CallerLookup lookup = callerLookup;
+    boolean byClass = value < lm.max;
+    if (byClass && clazz == null && lookup != CallerLookup.OFF)
     {
-      // Wir suchen den Verursacher, in dem wir den Stacktrace hochwandern,
-      // bis wir nicht mehr selbst drin stehen
-      StackTraceElement[] stack = new Throwable().getStackTrace();
-      if (stack != null)
+      StackTraceElement e = Message.caller(new Throwable());
+      if (e != null)
       {
-        for (int i=0;i<stack.length;++i)
-        {
-          clazz = stack[i].getClassName();
-          method = stack[i].getMethodName();
-          if (!Logger.class.getName().equals(clazz))
-            break;
-        }
+        clazz = e.getClassName();
+        if (method == null)
+          method = e.getMethodName();
       }
     }
+    if (byClass && !lm.isLogging(level,clazz))
+      return;
 
-    write(new Message(new Date(),level,host,clazz,method,message,Thread.currentThread().getName()));
+    RateLimiter rl = limiter;
+    if (limit && rl != null && !rl.acquire(level,clazz,method,message))
+      return;
+
+    if (args != null)
+      message = format(message,args,count);
+
+    // Ansonsten merken wir uns ggf. nur die Aufrufstelle. Der Stacktrace wird
+    // erst dann ausgewertet, wenn Klasse und Methode tatsaechlich gebraucht werden.
+    Throwable caller = null;
+    if ((clazz == null || method == null) && lookup != CallerLookup.OFF && callerNeeded)
+      caller = new Throwable();
+
+    // Der Stacktrace der Exception wird erst im Logger-Thread erzeugt
+    Message msg = new Message(new Date(),level,host,clazz,method,caller,message,t,Thread.currentThread().getName());
+    if (caller != null && lookup == CallerLookup.EAGER)
+      msg.resolveCaller();
+    write(msg);
   }
 
   /**
@@ -305,93 +930,151 @@ public class Logger
     lt.write(message);
   }
 
+  /**
+   * Schreibt eine fertige Message ins Log, sofern sie nicht der Begrenzung
+   * gleichartiger Meldungen zum Opfer faellt.
+   * @param message zu loggende Nachricht.
+   */
+  static void writeLimited(Message message)
+  {
+    RateLimiter rl = limiter;
+    if (rl != null && !rl.acquire(message.getLevel(),message.getLoggingClass(),message.getLoggingMethod(),message.getText()))
+      return;
+    write(message);
+  }
+
+  /**
+   * Uebergibt Meldungen an ein einzelnes Target.
+   * Unterstuetzt das Target keine Bloecke, erhaelt es die Meldungen einzeln.
+   * Fehler beim Schreiben werden auf STDOUT gemeldet.
+   * @param target das Target.
+   * @param batch die Meldungen.
+   * @param count Anzahl der Meldungen.
+   */
+  static void deliver(Target target, Message[] batch, int count)
+  {
+    LoggerStats.TargetStats stats = lt.stats.target(target);
+    long start = System.nanoTime();
+
+    if (target instanceof BatchTarget)
+    {
+      try
+      {
+        ((BatchTarget) target).write(batch,count);
+        stats.written(count,System.nanoTime() - start);
+      }
+      catch (Exception e)
+      {
+        stats.failed(count);
+        for (int i=0;i<count;++i)
+          println("alert: error while logging the following message: " + batch[i].toString());
+      }
+      return;
+    }
+
+    // In Anzahl und Latenz gehen nur die erfolgreich geschriebenen Meldungen ein
+    int written = 0;
+    long nanos  = 0L;
+    for (int i=0;i<count;++i)
+    {
+      try
+      {
+        target.write(batch[i]);
+        written++;
+        long now = System.nanoTime();
+        nanos += now - start;
+        start = now;
+      }
+      catch (Exception e)
+      {
+        stats.failed(1);
+        println("alert: error while logging the following message: " + batch[i].toString());
+        start = System.nanoTime();
+      }
+    }
+    if (written > 0)
+      stats.written(written,nanos);
+  }
+
+  /**
+   * Gibt den Text auf STDOUT aus.
+   * @param text auszugebender Text.
+   */
+  static void println(String text)
+  {
+    try
+    {
+      System.out.println(text);
+    }
+    catch (Exception e)
+    {
+      // ignore - wenn STDOUT kaputt ist, koennen wir uns eh nicht mehr artikulieren ;)
+    }
+  }
+
   /**
    * Das eigentliche Schreiben erfolgt in einem extra Thread damit's hoffentlich schneller geht.
    */
   private static class LoggerThread extends Thread
   {
-  	
-  	private Queue messages = new Queue(Queue.CAPACITY_MAX / 2);
-  	
-  	private boolean quit = false;
-  	private boolean finished = false;
+    // Maximale Wartezeit des Logger-Threads, wenn nichts zu tun ist. Eigentlich
+    // wird er beim Eintreffen neuer Meldungen aufgeweckt. Das ist nur die Rueckfallebene.
+    private final static long PARK_NANOS  = TimeUnit.SECONDS.toNanos(1L);
 
-  	/**
+    private RingBuffer messages = new RingBuffer(QUEUE_SIZE);
+    private AtomicLong[] overflows = new AtomicLong[OverflowPolicy.values().length];
+    private LoggerStats stats = new LoggerStats(messages,overflows);
+
+    private volatile boolean parked   = false;
+
+    /**
      * ct.
      * @param name Name des Loggers.
      * Wird fuer die Bezeichnung des Logger-Threads verwendet.
      */
     public LoggerThread(String name)
-  	{
-  		super(name);
+    {
+      super(name);
       setDaemon(true);
-  	}
+      for (int i=0;i<overflows.length;++i)
+        overflows[i] = new AtomicLong(0L);
+    }
 
     /**
-		 * Loggt eine Zeile in's Logfile.
+     * Loggt eine Zeile in's Logfile.
      * @param msg die zu loggende Nachricht.
      */
     private void write(Message msg)
-		{
-			if (quit)
-				return; // wir nehmen keine Log-Meldungen mehr entgegen.
-
-			// Das machen wir in einer Schleife solange, bis Hinzufuegen
-			// zur Queue erfolgreich war. OK, wir haben eine Maximal-Zahl von Versuchen ;)
-			int retryCount = 1000;
-			int count = 0;
-			while (true)
-			{
-				if (count++ >= retryCount)
-				{
-					println("***** [WARN] Logger queue full, writing to STDOUT *****");
-					println(msg.toString());
-					return;
-				}
+    {
+      if (messages.isClosed())
+      {
+        stats.rejected();
+        return; // wir nehmen keine Log-Meldungen mehr entgegen.
+      }
 
-				try
-				{
-					messages.push(msg);
-					return;
-				}
-				catch (QueueFullException e)
-				{
-					// try again ;)
-				}
-			}
-		}
+      OverflowPolicy applied = messages.offer(msg,overflowPolicy,this,overflows);
+      if (applied == null)
+        stats.enqueued();
+      else if (applied == OverflowPolicy.BLOCK)
+        stats.rejected(); // Logger wurde waehrend des Wartens geschlossen
+      else if (applied == OverflowPolicy.STDOUT)
+      {
+        println("***** [WARN] Logger queue full, writing to STDOUT *****");
+        println(msg.toString());
+      }
 
-		/**
-     * Beendet den Logger-Thread.
-     */
-    private void shutdown()
-		{
-			this.quit = true;
-		}
+      // Logger-Thread aufwecken, falls er gerade schlaeft
+      if (parked)
+        LockSupport.unpark(this);
+    }
 
-		/**
-		 * Liefert true, wenn der Thread die letzten Meldungen rausgeschrieben hat.
-     * @return true, wenn alles rausgeschrieben ist.
-     */
-    private boolean finished()
-		{
-			return finished;
-		}
-    
     /**
-     * Gibt den Text auf STDOUT aus.
-     * @param text auszugebender Text.
+     * Beendet den Logger-Thread.
      */
-    private void println(String text)
+    private void shutdown()
     {
-      try
-      {
-        System.out.println(text);
-      }
-      catch (Exception e)
-      {
-        // ignore - wenn STDOUT kaputt ist, koennen wir uns eh nicht mehr artikulieren ;)
-      }
+      messages.close();
+      LockSupport.unpark(this);
     }
 
     /**
@@ -399,53 +1082,55 @@ public class Logger
      */
     public void run()
     {
-    	Message msg = null;
-			while(true)
-			{
-				if (messages.size() == 0 && quit)
-				{
-					finished = true;
-					return;
-				}
+      Message[] batch = new Message[BATCH_SIZE];
+      while(true)
+      {
+        int depth = messages.size();
+        int count = messages.drain(batch,batch.length);
+        if (count > 0)
+          stats.dequeued(depth,count);
+        if (count == 0)
+        {
+          // Wartende in flush() bzw. close() benachrichtigen
+          messages.completed();
+          if (messages.isClosed())
+            return;
 
-				if (messages.size() == 0)
-				{
-					// nichts zum Schreiben da, dann warten wir etwas
-					try
-					{
-						sleep(100);
-					}
-					catch (InterruptedException e)
-					{
-					}
-					continue;
-				}
+          // Zusammenfassung der verworfenen Meldungen, auch wenn gerade niemand loggt
+          RateLimiter rl = limiter;
+          if (rl != null)
+            rl.sweep(System.nanoTime());
 
-				msg = (Message) messages.pop();
+          // nichts zum Schreiben da, dann legen wir uns schlafen, bis
+          // uns ein Produzent wieder aufweckt.
+          parked = true;
+          if (messages.isEmpty() && !messages.isClosed())
+            LockSupport.parkNanos(this,PARK_NANOS);
+          parked = false;
+          continue;
+        }
 
-				Target target = null;
-				synchronized (targets)
-				{
-					if (targets.size() == 0)
-					{
-						println(msg.toString());
-						continue;
-					}
-
-					for (int i=0;i<targets.size();++i)
-					{
-						target = (Target) targets.get(i);
-						try
-						{
-							target.write(msg);
-						}
-						catch (Exception e)
-						{
-							println("alert: error while logging the following message: " + msg.toString());
-						}
-					}
-				}
-			}
+        // Stacktraces erzeugen wir erst hier und nicht schon im loggenden Thread
+        ThrowableRenderer r = renderer;
+        for (int i=0;i<count;++i)
+          batch[i].render(r);
+
+        if (targets.isEmpty())
+        {
+          for (int i=0;i<count;++i)
+            println(batch[i].toString());
+        }
+        else
+        {
+          // Copy-On-Write - wir iterieren ueber einen Snapshot, ohne Lock
+          for (Target target:targets)
+            deliver(target,batch,count);
+        }
+
+        // Referenzen freigeben, damit die Meldungen nicht laenger als noetig im Speicher bleiben
+        Arrays.fill(batch,0,count,null);
+        messages.completed();
+      }
     }
   }
 
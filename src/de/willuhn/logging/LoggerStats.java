@@ -0,0 +1,397 @@
+/**********************************************************************
+ *
+ * Copyright (c) 2004 Olaf Willuhn
+ * All rights reserved.
+ * 
+ * This software is copyrighted work licensed under the terms of the
+ * GNU LESSER GENERAL PUBLIC LICENSE 2.1.
+ * Please consult the file "LICENSE" for details. 
+ *
+ **********************************************************************/
+
+package de.willuhn.logging;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import de.willuhn.logging.Logger.OverflowPolicy;
+import de.willuhn.logging.targets.Target;
+
+/**
+ * Statistik des Loggers selbst.
+ * Damit laesst sich erkennen, ob das Logging zum Flaschenhals wird, lange bevor
+ * die Warteschlange ueberlaeuft. Die Zaehler werden ohne Locks gefuehrt.
+ * Erreichbar ueber {@link Logger#getStats()}, optional auch per JMX.
+ */
+public final class LoggerStats implements LoggerStatsMBean
+{
+  /**
+   * Name, unter dem die Statistik per JMX registriert wird.
+   */
+  public final static String OBJECT_NAME = "de.willuhn.logging:type=Logger";
+
+  private final RingBuffer queue;
+  private final AtomicLong[] overflows;
+
+  private final LongAdder enqueued = new LongAdder();
+  private final LongAdder dequeued = new LongAdder();
+  private final LongAdder closed   = new LongAdder();
+
+  // Wird nur vom Logger-Thread geschrieben
+  private volatile int highWater = 0;
+
+  private final Map<Target,TargetStats> targets = new ConcurrentHashMap<Target,TargetStats>();
+
+  // Nimmt die Zaehler von Targets auf, die nicht (mehr) angemeldet sind
+  private final static TargetStats DETACHED = new TargetStats("detached");
+
+  /**
+   * ct.
+   * @param queue die Warteschlange des Logger-Threads.
+   * @param overflows Zaehler je Overflow-Policy.
+   */
+  LoggerStats(RingBuffer queue, AtomicLong[] overflows)
+  {
+    this.queue     = queue;
+    this.overflows = overflows;
+  }
+
+  /**
+   * Zaehlt eine eingestellte Meldung.
+   */
+  void enqueued()
+  {
+    this.enqueued.increment();
+  }
+
+  /**
+   * Zaehlt eine Meldung, die nach dem Schliessen des Loggers verworfen wurde.
+   */
+  void rejected()
+  {
+    this.closed.increment();
+  }
+
+  /**
+   * Zaehlt die vom Logger-Thread entnommenen Meldungen.
+   * @param depth Fuellstand der Warteschlange vor dem Entnehmen.
+   * @param count Anzahl der entnommenen Meldungen.
+   */
+  void dequeued(int depth, int count)
+  {
+    this.dequeued.add(count);
+    if (depth > this.highWater)
+      this.highWater = depth;
+  }
+
+  /**
+   * Legt die Statistik fuer ein Target an.
+   * @param target das Target.
+   */
+  void add(Target target)
+  {
+    this.targets.putIfAbsent(target,new TargetStats(target.getClass().getSimpleName()));
+  }
+
+  /**
+   * Liefert die Statistik zu einem Target.
+   * Sie wird hier bewusst nicht angelegt: Ein Block, der noch waehrend des Entfernens
+   * ausgeliefert wird, wuerde die Statistik sonst wieder erzeugen.
+   * @param target das Target.
+   * @return die Statistik. Fuer nicht angemeldete Targets eine, die nirgends auftaucht.
+   */
+  TargetStats target(Target target)
+  {
+    TargetStats s = this.targets.get(target);
+    return s != null ? s : DETACHED;
+  }
+
+  /**
+   * Vergisst die Statistik eines Targets.
+   * @param target das Target.
+   */
+  void remove(Target target)
+  {
+    this.targets.remove(target);
+  }
+
+  /**
+   * @see de.willuhn.logging.LoggerStatsMBean#getEnqueued()
+   */
+  public long getEnqueued()
+  {
+    return this.enqueued.sum();
+  }
+
+  /**
+   * @see de.willuhn.logging.LoggerStatsMBean#getDequeued()
+   */
+  public long getDequeued()
+  {
+    return this.dequeued.sum();
+  }
+
+  /**
+   * Liefert die Anzahl der verworfenen Meldungen. Das sind die gemaess
+   * {@link OverflowPolicy#DROP_OLDEST} und {@link OverflowPolicy#DROP_NEWEST}
+   * verworfenen sowie die nach dem Schliessen des Loggers eingetroffenen.
+   * @see de.willuhn.logging.LoggerStatsMBean#getDropped()
+   */
+  public long getDropped()
+  {
+    return this.overflows[OverflowPolicy.DROP_OLDEST.ordinal()].get() +
+           this.overflows[OverflowPolicy.DROP_NEWEST.ordinal()].get() +
+           this.closed.sum();
+  }
+
+  /**
+   * @see de.willuhn.logging.LoggerStatsMBean#getWrittenToStdout()
+   */
+  public long getWrittenToStdout()
+  {
+    return this.overflows[OverflowPolicy.STDOUT.ordinal()].get();
+  }
+
+  /**
+   * @see de.willuhn.logging.LoggerStatsMBean#getQueueDepth()
+   */
+  public int getQueueDepth()
+  {
+    return this.queue.size();
+  }
+
+  /**
+   * Der Fuellstand wird vom Logger-Thread jeweils vor dem Entnehmen
+   * der Meldungen erfasst.
+   * @see de.willuhn.logging.LoggerStatsMBean#getQueueHighWater()
+   */
+  public int getQueueHighWater()
+  {
+    return this.highWater;
+  }
+
+  /**
+   * @see de.willuhn.logging.LoggerStatsMBean#getQueueCapacity()
+   */
+  public int getQueueCapacity()
+  {
+    return this.queue.capacity();
+  }
+
+  /**
+   * @see de.willuhn.logging.LoggerStatsMBean#getErrors()
+   */
+  public long getErrors()
+  {
+    long sum = 0L;
+    for (TargetStats s:this.targets.values())
+      sum += s.getErrors();
+    return sum;
+  }
+
+  /**
+   * Liefert die Statistik eines Targets.
+   * @param target das Target.
+   * @return die Statistik oder <code>null</code>, wenn in das Target noch nicht geschrieben wurde.
+   */
+  public TargetStats getTargetStats(Target target)
+  {
+    return target != null ? this.targets.get(target) : null;
+  }
+
+  /**
+   * @see de.willuhn.logging.LoggerStatsMBean#getTargetSummary()
+   */
+  public String[] getTargetSummary()
+  {
+    List<String> list = new ArrayList<String>();
+    for (TargetStats s:this.targets.values())
+      list.add(s.toString());
+    return list.toArray(new String[list.size()]);
+  }
+
+  /**
+   * @see de.willuhn.logging.LoggerStatsMBean#resetHighWater()
+   */
+  public void resetHighWater()
+  {
+    this.highWater = this.queue.size();
+  }
+
+  /**
+   * Registriert die Statistik beim Platform-MBeanServer unter {@link #OBJECT_NAME}.
+   * Ist sie bereits registriert, passiert nichts.
+   * @throws Exception
+   */
+  public void register() throws Exception
+  {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    ObjectName name = new ObjectName(OBJECT_NAME);
+    if (!server.isRegistered(name))
+      server.registerMBean(this,name);
+  }
+
+  /**
+   * Entfernt die Statistik wieder aus dem Platform-MBeanServer.
+   * @throws Exception
+   */
+  public void unregister() throws Exception
+  {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    ObjectName name = new ObjectName(OBJECT_NAME);
+    if (server.isRegistered(name))
+      server.unregisterMBean(name);
+  }
+
+  /**
+   * @see java.lang.Object#toString()
+   */
+  public String toString()
+  {
+    return "enqueued: " + getEnqueued() + ", dequeued: " + getDequeued() + ", dropped: " + getDropped() +
+           ", stdout: " + getWrittenToStdout() + ", queue: " + getQueueDepth() + "/" + getQueueCapacity() +
+           " (max " + getQueueHighWater() + ")";
+  }
+
+  /**
+   * Statistik eines einzelnen Targets.
+   * Die Dauer der Schreibvorgaenge wird in einem Histogramm mit Zweier-Potenzen
+   * (in Nanosekunden) als Klassengrenzen erfasst. Gemessen wird jeweils ein Aufruf
+   * des Targets - bei einem {@link de.willuhn.logging.targets.BatchTarget} also
+   * ein ganzer Block von Meldungen.
+   */
+  public final static class TargetStats
+  {
+    private final static int BUCKETS = 64;
+
+    private final String name;
+    private final LongAdder messages = new LongAdder();
+    private final LongAdder errors   = new LongAdder();
+    private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+
+    /**
+     * ct.
+     * @param name Name des Targets.
+     */
+    private TargetStats(String name)
+    {
+      this.name = name;
+    }
+
+    /**
+     * Erfasst einen Schreibvorgang.
+     * @param count Anzahl der geschriebenen Meldungen.
+     * @param nanos Dauer in Nanosekunden.
+     */
+    void written(int count, long nanos)
+    {
+      this.messages.add(count);
+      this.histogram.incrementAndGet(BUCKETS - Long.numberOfLeadingZeros(Math.max(0L,nanos)));
+    }
+
+    /**
+     * Zaehlt fehlgeschlagene Meldungen.
+     * @param count Anzahl der Meldungen.
+     */
+    void failed(int count)
+    {
+      this.errors.add(count);
+    }
+
+    /**
+     * Liefert den Namen des Targets.
+     * @return Name des Targets.
+     */
+    public String getName()
+    {
+      return this.name;
+    }
+
+    /**
+     * Liefert die Anzahl der an das Target uebergebenen Meldungen.
+     * @return Anzahl der Meldungen.
+     */
+    public long getMessages()
+    {
+      return this.messages.sum();
+    }
+
+    /**
+     * Liefert die Anzahl der Meldungen, bei denen das Target einen Fehler geworfen hat.
+     * @return Anzahl der Fehler.
+     */
+    public long getErrors()
+    {
+      return this.errors.sum();
+    }
+
+    /**
+     * Liefert die Anzahl der Aufrufe des Targets.
+     * @return Anzahl der Aufrufe.
+     */
+    public long getWrites()
+    {
+      long sum = 0L;
+      for (int i=0;i<BUCKETS;++i)
+        sum += this.histogram.get(i);
+      return sum;
+    }
+
+    /**
+     * Liefert eine Kopie des Histogramms. Index <code>i</code> enthaelt die Anzahl
+     * der Aufrufe, die weniger als <code>2^i</code> Nanosekunden gedauert haben
+     * (und mindestens <code>2^(i-1)</code>).
+     * @return das Histogramm.
+     */
+    public long[] getHistogram()
+    {
+      long[] result = new long[BUCKETS];
+      for (int i=0;i<BUCKETS;++i)
+        result[i] = this.histogram.get(i);
+      return result;
+    }
+
+    /**
+     * Liefert eine Obergrenze fuer das angegebene Perzentil der Schreibdauer.
+     * @param percentile das Perzentil (zwischen 0 und 100).
+     * @return Obergrenze in Nanosekunden oder 0, wenn noch nichts geschrieben wurde.
+     */
+    public long getPercentile(double percentile)
+    {
+      long[] h = getHistogram();
+      long total = 0L;
+      for (long l:h)
+        total += l;
+      if (total == 0L)
+        return 0L;
+
+      long limit = (long) Math.ceil(total * Math.min(100d,Math.max(0d,percentile)) / 100d);
+      long sum = 0L;
+      for (int i=0;i<BUCKETS;++i)
+      {
+        sum += h[i];
+        if (sum >= limit && sum > 0)
+          return i == BUCKETS - 1 ? Long.MAX_VALUE : (1L << i);
+      }
+      return Long.MAX_VALUE;
+    }
+
+    /**
+     * @see java.lang.Object#toString()
+     */
+    public String toString()
+    {
+      return this.name + ": messages: " + getMessages() + ", errors: " + getErrors() + ", writes: " + getWrites() +
+             ", p50 < " + getPercentile(50d) + "ns, p99 < " + getPercentile(99d) + "ns, p99.9 < " + getPercentile(99.9d) + "ns";
+    }
+  }
+}
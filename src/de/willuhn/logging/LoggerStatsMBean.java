@@ -0,0 +1,79 @@
+/**********************************************************************
+ *
+ * Copyright (c) 2004 Olaf Willuhn
+ * All rights reserved.
+ * 
+ * This software is copyrighted work licensed under the terms of the
+ * GNU LESSER GENERAL PUBLIC LICENSE 2.1.
+ * Please consult the file "LICENSE" for details. 
+ *
+ **********************************************************************/
+
+package de.willuhn.logging;
+
+/**
+ * JMX-Interface der Logger-Statistik.
+ * @see LoggerStats#register()
+ */
+public interface LoggerStatsMBean
+{
+  /**
+   * Liefert die Anzahl der in die Warteschlange eingestellten Meldungen.
+   * @return Anzahl der eingestellten Meldungen.
+   */
+  public long getEnqueued();
+
+  /**
+   * Liefert die Anzahl der vom Logger-Thread entnommenen Meldungen.
+   * @return Anzahl der entnommenen Meldungen.
+   */
+  public long getDequeued();
+
+  /**
+   * Liefert die Anzahl der verworfenen Meldungen.
+   * @return Anzahl der verworfenen Meldungen.
+   */
+  public long getDropped();
+
+  /**
+   * Liefert die Anzahl der Meldungen, die wegen voller Warteschlange
+   * direkt nach STDOUT geschrieben wurden.
+   * @return Anzahl der Meldungen.
+   */
+  public long getWrittenToStdout();
+
+  /**
+   * Liefert die aktuelle Anzahl der Meldungen in der Warteschlange.
+   * @return aktuelle Anzahl.
+   */
+  public int getQueueDepth();
+
+  /**
+   * Liefert die hoechste bisher beobachtete Anzahl der Meldungen in der Warteschlange.
+   * @return hoechste Anzahl.
+   */
+  public int getQueueHighWater();
+
+  /**
+   * Liefert die Kapazitaet der Warteschlange.
+   * @return Kapazitaet.
+   */
+  public int getQueueCapacity();
+
+  /**
+   * Liefert die Anzahl der Fehler beim Schreiben ueber alle Targets.
+   * @return Anzahl der Fehler.
+   */
+  public long getErrors();
+
+  /**
+   * Liefert eine Zusammenfassung je Target (eine Zeile pro Target).
+   * @return Zusammenfassung je Target.
+   */
+  public String[] getTargetSummary();
+
+  /**
+   * Setzt die hoechste beobachtete Anzahl auf den aktuellen Stand zurueck.
+   */
+  public void resetHighWater();
+}
@@ -17,6 +17,8 @@ import java.util.Date;
  */
 public class Message
 {
+  private final static TimestampCache TIMESTAMPS = new TimestampCache();
+
 	private Date date 	  = null;
 	private Level level   = null;
   private String host   = null;
@@ -25,6 +27,13 @@ public class Message
 	private String method = null;
 	private String thread = null;
 
+  // Aufrufstelle, aus der Klasse und Methode bei Bedarf nachtraeglich ermittelt werden
+  private volatile Throwable caller = null;
+
+  // Die geloggte Exception und der Text inclusive Stacktrace, sobald er erzeugt wurde
+  private Throwable throwable       = null;
+  private volatile String fullText  = null;
+
 	/**
 	 * ct.
    * @param d
@@ -45,6 +54,71 @@ public class Message
 		this.text = text;
 		this.thread = thread;
 	}
+
+  /**
+   * ct.
+   * Der Stacktrace der Exception wird erst bei Bedarf erzeugt - normalerweise im Logger-Thread.
+   * @param d
+   * @param l
+   * @param host
+   * @param clazz
+   * @param method
+   * @param caller optionale Aufrufstelle, falls Klasse und Methode nicht angegeben sind.
+   * @param text
+   * @param t die geloggte Exception.
+   * @param thread
+   */
+  Message(Date d, Level l, String host, String clazz, String method, Throwable caller, String text, Throwable t, String thread)
+  {
+    this(d,l,host,clazz,method,text,thread);
+    this.caller = caller;
+    this.throwable = t;
+  }
+
+  /**
+   * Erzeugt den Text des Stacktraces, falls das noch nicht geschehen ist.
+   * @param renderer der zu verwendende Renderer.
+   */
+  synchronized void render(ThrowableRenderer renderer)
+  {
+    if (this.throwable == null || this.fullText != null)
+      return;
+    this.fullText = text + "\n" + renderer.render(this.throwable);
+  }
+
+  /**
+   * Ermittelt Klasse und Methode aus der Aufrufstelle, falls das noch nicht geschehen ist.
+   * Wir wandern hierzu den Stacktrace hoch, bis wir nicht mehr im Logger stehen.
+   */
+  void resolveCaller()
+  {
+    Throwable t = this.caller;
+    if (t == null)
+      return;
+
+    StackTraceElement e = caller(t);
+    this.clazz  = e != null ? e.getClassName() : null;
+    this.method = e != null ? e.getMethodName() : null;
+    this.caller = null; // erst jetzt, damit andere Threads Klasse und Methode sicher sehen
+  }
+
+  /**
+   * Liefert das erste Element des Stacktraces, das nicht mehr im Logger steht.
+   * @param t die Aufrufstelle.
+   * @return das Element oder <code>null</code>, wenn keines existiert.
+   */
+  static StackTraceElement caller(Throwable t)
+  {
+    StackTraceElement[] stack = t.getStackTrace();
+    if (stack == null || stack.length == 0)
+      return null;
+    for (int i=0;i<stack.length;++i)
+    {
+      if (!Logger.class.getName().equals(stack[i].getClassName()))
+        return stack[i];
+    }
+    return stack[stack.length - 1];
+  }
 	
 	/**
 	 * Datum, an dem die Nachricht ausgeloest wurde.
@@ -79,8 +153,27 @@ public class Message
    */
   public String getText()
 	{
-		return text;
+    if (this.throwable == null)
+      return text;
+
+    String s = this.fullText;
+    if (s != null)
+      return s;
+
+    // Der Logger-Thread hat den Stacktrace noch nicht erzeugt. Wir merken uns das
+    // Ergebnis nicht, damit er ihn spaeter ueber seinen Renderer ("same as #N") erzeugt.
+    return text + "\n" + ThrowableRenderer.PLAIN.render(this.throwable);
 	}
+
+  /**
+   * Liefert die ggf. geloggte Exception.
+   * Ihr Stacktrace ist bereits in {@link #getText()} enthalten.
+   * @return die Exception oder <code>null</code>.
+   */
+  public Throwable getThrowable()
+  {
+    return this.throwable;
+  }
   
   /**
    * Liefert den Namen des Threads.
@@ -97,6 +190,7 @@ public class Message
    */
   public String getLoggingClass()
 	{
+    resolveCaller();
 		return clazz;
 	}
 
@@ -106,6 +200,7 @@ public class Message
    */
   public String getLoggingMethod()
 	{
+    resolveCaller();
 		return method;
 	}
   
@@ -114,7 +209,20 @@ public class Message
    */
   public String toString()
   {
-    StringBuffer sb = new StringBuffer();
+    StringBuilder sb = new StringBuilder(128 + (this.text != null ? this.text.length() : 0));
+    appendTo(sb,this.date != null ? TIMESTAMPS.format(this.date.getTime()) : null);
+    return sb.toString();
+  }
+
+  /**
+   * Haengt die Nachricht im Format von {@link #toString()} an den Puffer an.
+   * @param sb der Puffer.
+   * @param timestamp der bereits formatierte Zeitstempel der Nachricht.
+   */
+  void appendTo(StringBuilder sb, String timestamp)
+  {
+    resolveCaller();
+
     if (this.host != null && this.host.length() > 0)
     {
       sb.append("[");
@@ -122,10 +230,10 @@ public class Message
       sb.append("]");
     }
     
-    if (this.date != null)
+    if (timestamp != null)
     {
       sb.append("[");
-      sb.append(this.date.toString());
+      sb.append(timestamp);
       sb.append("]");
     }
     
@@ -153,8 +261,7 @@ public class Message
     }
     
 		sb.append(" ");
-		sb.append(text);
-		return sb.toString();
+		sb.append(getText());
   }
 
 }
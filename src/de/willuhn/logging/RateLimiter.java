@@ -0,0 +1,247 @@
+/**********************************************************************
+ *
+ * Copyright (c) 2004 Olaf Willuhn
+ * All rights reserved.
+ * 
+ * This software is copyrighted work licensed under the terms of the
+ * GNU LESSER GENERAL PUBLIC LICENSE 2.1.
+ * Please consult the file "LICENSE" for details. 
+ *
+ **********************************************************************/
+
+package de.willuhn.logging;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Begrenzt die Anzahl gleichartiger Log-Meldungen per Token-Bucket.
+ * Gleichartig sind Meldungen mit identischer Klasse, Methode und Vorlage
+ * (das Pattern mit den Platzhaltern "{}" bzw. der Text selbst).
+ * Fuer jede Art gibt es einen eigenen Bucket, der pro Sekunde um die
+ * festgelegte Rate wieder aufgefuellt wird. Ist er leer, wird die Meldung
+ * verworfen und nur gezaehlt. In regelmaessigen Abstaenden wird fuer jede
+ * Art mit verworfenen Meldungen eine Zusammenfassung geloggt.
+ * Die Anzahl der Buckets ist begrenzt. Lange nicht benutzte werden beim
+ * Zusammenfassen entfernt. Sind trotzdem alle belegt, werden Meldungen
+ * neuer Arten ungebremst durchgelassen.
+ */
+final class RateLimiter
+{
+  // Maximale Anzahl der Buckets
+  private final static int MAX_BUCKETS = 1024;
+
+  private final double perNano;
+  private final double burst;
+  private final long interval;
+
+  private final Map<Key,Bucket> buckets = new ConcurrentHashMap<Key,Bucket>();
+  private final AtomicLong nextSweep;
+  private final AtomicLong suppressed = new AtomicLong(0L);
+
+  /**
+   * ct.
+   * @param perSecond Anzahl der Meldungen pro Sekunde und Art.
+   * @param burst Anzahl der Meldungen, die kurzzeitig auch schneller durchgelassen werden.
+   * @param interval Abstand der Zusammenfassungen in Millisekunden.
+   */
+  RateLimiter(double perSecond, int burst, long interval)
+  {
+    this.perNano   = perSecond / TimeUnit.SECONDS.toNanos(1L);
+    this.burst     = Math.max(1,burst);
+    this.interval  = TimeUnit.MILLISECONDS.toNanos(Math.max(1L,interval));
+    this.nextSweep = new AtomicLong(System.nanoTime() + this.interval);
+  }
+
+  /**
+   * Prueft, ob die Meldung durchgelassen wird.
+   * @param level das Log-Level.
+   * @param clazz Name der Klasse, falls bekannt.
+   * @param method Name der Methode, falls bekannt.
+   * @param template die Vorlage der Meldung.
+   * @return true, wenn die Meldung geloggt werden soll.
+   */
+  boolean acquire(Level level, String clazz, String method, String template)
+  {
+    long now = System.nanoTime();
+    sweep(now);
+
+    Key key = new Key(clazz,method,template);
+    Bucket b = this.buckets.get(key);
+    if (b == null)
+    {
+      if (this.buckets.size() >= MAX_BUCKETS)
+        return true;
+      b = this.buckets.computeIfAbsent(key,k -> new Bucket(level,now));
+    }
+
+    if (b.take(now))
+      return true;
+    this.suppressed.incrementAndGet();
+    return false;
+  }
+
+  /**
+   * Liefert die Anzahl der bisher insgesamt verworfenen Meldungen.
+   * @return Anzahl der verworfenen Meldungen.
+   */
+  long getSuppressed()
+  {
+    return this.suppressed.get();
+  }
+
+  /**
+   * Loggt die Zusammenfassungen, falls das Intervall abgelaufen ist, und entfernt
+   * Buckets, die seit mindestens einem Intervall nicht mehr benutzt wurden.
+   * Laeuft immer nur in einem Thread gleichzeitig.
+   * @param now aktuelle Zeit in Nanosekunden.
+   */
+  void sweep(long now)
+  {
+    long next = this.nextSweep.get();
+    if (now - next < 0L || !this.nextSweep.compareAndSet(next,now + this.interval))
+      return;
+
+    Iterator<Map.Entry<Key,Bucket>> it = this.buckets.entrySet().iterator();
+    while (it.hasNext())
+    {
+      Map.Entry<Key,Bucket> e = it.next();
+      Bucket b = e.getValue();
+      long count = b.drainSuppressed();
+      if (count > 0L)
+      {
+        Key k = e.getKey();
+        String clazz  = k.clazz != null ? k.clazz : RateLimiter.class.getName();
+        String method = k.method != null ? k.method : "sweep";
+        Logger.summary(b.level,clazz,method,"suppressed " + count + " similar messages: " + k.template);
+      }
+      else if (now - b.lastUsed() > this.interval)
+      {
+        it.remove();
+      }
+    }
+  }
+
+  /**
+   * Schluessel eines Buckets.
+   */
+  private final static class Key
+  {
+    private final String clazz;
+    private final String method;
+    private final String template;
+    private final int hash;
+
+    /**
+     * ct.
+     * @param clazz Klasse.
+     * @param method Methode.
+     * @param template Vorlage.
+     */
+    private Key(String clazz, String method, String template)
+    {
+      this.clazz    = clazz;
+      this.method   = method;
+      this.template = template;
+
+      int h = template != null ? template.hashCode() : 0;
+      h = 31 * h + (clazz != null ? clazz.hashCode() : 0);
+      h = 31 * h + (method != null ? method.hashCode() : 0);
+      this.hash = h;
+    }
+
+    /**
+     * @see java.lang.Object#hashCode()
+     */
+    public int hashCode()
+    {
+      return this.hash;
+    }
+
+    /**
+     * @see java.lang.Object#equals(java.lang.Object)
+     */
+    public boolean equals(Object o)
+    {
+      if (o == this)
+        return true;
+      if (!(o instanceof Key))
+        return false;
+      Key k = (Key) o;
+      return this.hash == k.hash && eq(this.template,k.template) && eq(this.clazz,k.clazz) && eq(this.method,k.method);
+    }
+
+    /**
+     * Vergleicht zwei Strings, die auch <code>null</code> sein koennen.
+     * @param a String a.
+     * @param b String b.
+     * @return true, wenn sie gleich sind.
+     */
+    private static boolean eq(String a, String b)
+    {
+      return a == null ? b == null : a.equals(b);
+    }
+  }
+
+  /**
+   * Ein Token-Bucket.
+   */
+  private final class Bucket
+  {
+    private final Level level;
+    private double tokens;
+    private long last;
+    private final AtomicLong suppressed = new AtomicLong(0L);
+
+    /**
+     * ct.
+     * @param level Log-Level der ersten Meldung. Damit wird die Zusammenfassung geloggt.
+     * @param now aktuelle Zeit in Nanosekunden.
+     */
+    private Bucket(Level level, long now)
+    {
+      this.level  = level;
+      this.tokens = burst;
+      this.last   = now;
+    }
+
+    /**
+     * Entnimmt ein Token.
+     * @param now aktuelle Zeit in Nanosekunden.
+     * @return true, wenn ein Token verfuegbar war.
+     */
+    private synchronized boolean take(long now)
+    {
+      this.tokens = Math.min(burst,this.tokens + (now - this.last) * perNano);
+      this.last = now;
+      if (this.tokens >= 1d)
+      {
+        this.tokens -= 1d;
+        return true;
+      }
+      this.suppressed.incrementAndGet();
+      return false;
+    }
+
+    /**
+     * Liefert den Zeitpunkt der letzten Benutzung.
+     * @return Zeitpunkt in Nanosekunden.
+     */
+    private synchronized long lastUsed()
+    {
+      return this.last;
+    }
+
+    /**
+     * Liefert die Anzahl der seit dem letzten Aufruf verworfenen Meldungen und setzt sie zurueck.
+     * @return Anzahl der verworfenen Meldungen.
+     */
+    private long drainSuppressed()
+    {
+      return this.suppressed.getAndSet(0L);
+    }
+  }
+}
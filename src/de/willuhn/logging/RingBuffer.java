@@ -0,0 +1,313 @@
+/**********************************************************************
+ *
+ * Copyright (c) 2004 Olaf Willuhn
+ * All rights reserved.
+ * 
+ * This software is copyrighted work licensed under the terms of the
+ * GNU LESSER GENERAL PUBLIC LICENSE 2.1.
+ * Please consult the file "LICENSE" for details. 
+ *
+ **********************************************************************/
+
+package de.willuhn.logging;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import de.willuhn.logging.Logger.OverflowPolicy;
+
+/**
+ * Begrenzter Ringpuffer ohne Locks fuer die Uebergabe der Log-Meldungen
+ * an den Logger-Thread.
+ * Die Slots werden beim Erzeugen einmalig angelegt. Jeder Slot besitzt
+ * eine Sequenz-Nummer, anhand der Produzenten und Konsument erkennen, ob
+ * der Slot beschrieben bzw. gelesen werden kann. Die Schreib- und
+ * Lese-Position wird per CAS reserviert. Damit koennen beliebig viele
+ * Threads gleichzeitig schreiben. Gelesen wird normalerweise nur vom
+ * Logger-Thread, ein Produzent darf aber ebenfalls lesen, um bei vollem
+ * Puffer die aelteste Meldung zu verwerfen.
+ * Ueber {@link #completed()} und {@link #await(long, Thread)} kann ein Thread
+ * warten, bis alle bis dahin eingestellten Elemente verarbeitet wurden.
+ */
+final class RingBuffer
+{
+  // Wartezeit eines Produzenten bei OverflowPolicy.BLOCK, bevor er es erneut versucht
+  private final static long BLOCK_NANOS = TimeUnit.MICROSECONDS.toNanos(50L);
+
+  private final Object[] slots;
+  private final AtomicLongArray sequences;
+  private final int mask;
+
+  private final AtomicLong head = new AtomicLong(0L); // naechste Lese-Position
+  private final AtomicLong tail = new AtomicLong(0L); // naechste Schreib-Position
+
+  // Position, bis zu der alle Elemente verarbeitet (oder verworfen) wurden
+  private volatile long completed = 0L;
+  private final AtomicInteger waiters = new AtomicInteger(0);
+
+  private volatile boolean closed = false;
+
+  /**
+   * ct.
+   * @param capacity Mindest-Kapazitaet des Puffers.
+   * Sie wird auf die naechste Zweier-Potenz aufgerundet.
+   */
+  RingBuffer(int capacity)
+  {
+    int size = 2;
+    while (size < capacity)
+      size <<= 1;
+
+    this.slots     = new Object[size];
+    this.sequences = new AtomicLongArray(size);
+    this.mask      = size - 1;
+
+    for (int i=0;i<size;++i)
+      this.sequences.set(i,i);
+  }
+
+  /**
+   * Fuegt ein Element hinzu.
+   * @param o das Element.
+   * @return true, wenn es hinzugefuegt wurde, false, wenn der Puffer voll ist.
+   */
+  boolean offer(Object o)
+  {
+    long pos = tail.get();
+    while (true)
+    {
+      int idx  = (int) (pos & mask);
+      long dif = sequences.get(idx) - pos;
+      if (dif == 0)
+      {
+        if (tail.compareAndSet(pos,pos + 1))
+        {
+          slots[idx] = o;
+          sequences.set(idx,pos + 1); // erst jetzt ist der Slot fuer den Leser sichtbar
+          return true;
+        }
+        pos = tail.get();
+      }
+      else if (dif < 0)
+      {
+        return false; // voll
+      }
+      else
+      {
+        pos = tail.get(); // ein anderer Produzent war schneller
+      }
+    }
+  }
+
+  /**
+   * Fuegt ein Element hinzu und wendet bei vollem Puffer die angegebene Policy an.
+   * Die Behandlung von {@link OverflowPolicy#STDOUT} ist Sache des Aufrufers.
+   * @param o das Element.
+   * @param policy Verhalten bei vollem Puffer.
+   * @param consumer der lesende Thread. Er wird geweckt, waehrend ein Produzent wartet.
+   * Schreibt er selbst in den Puffer, wartet er nie, da er sonst auf sich selbst warten wuerde.
+   * In dem Fall wird stattdessen {@link OverflowPolicy#STDOUT} angewendet.
+   * @param overflows Zaehler je Policy, indiziert ueber die Ordinal-Nummer.
+   * @return <code>null</code>, wenn das Element im Puffer gelandet ist. Andernfalls die
+   * angewendete Policy. Bei {@link OverflowPolicy#STDOUT} muss der Aufrufer das Element ausgeben.
+   */
+  OverflowPolicy offer(Object o, OverflowPolicy policy, Thread consumer, AtomicLong[] overflows)
+  {
+    if (offer(o))
+      return null;
+
+    if (policy == OverflowPolicy.BLOCK && Thread.currentThread() == consumer)
+      policy = OverflowPolicy.STDOUT;
+
+    if (policy == OverflowPolicy.DROP_OLDEST)
+    {
+      // Wir entfernen solange die aeltesten Eintraege, bis wir unseren los werden.
+      // Normalerweise reicht genau einer. Gezaehlt werden die tatsaechlich verworfenen.
+      while (!offer(o))
+      {
+        if (poll() != null)
+          overflows[policy.ordinal()].incrementAndGet();
+      }
+      return null;
+    }
+
+    overflows[policy.ordinal()].incrementAndGet();
+
+    if (policy == OverflowPolicy.BLOCK)
+    {
+      while (!offer(o))
+      {
+        if (closed)
+          return policy;
+        LockSupport.unpark(consumer);
+        LockSupport.parkNanos(BLOCK_NANOS);
+      }
+      return null;
+    }
+
+    // DROP_NEWEST bzw. STDOUT
+    return policy;
+  }
+
+  /**
+   * Wird vom Leser aufgerufen, nachdem er alle bisher entnommenen Elemente
+   * verarbeitet hat. Weckt die in {@link #await(long, Thread)} wartenden Threads.
+   */
+  void completed()
+  {
+    this.completed = head.get();
+    if (this.waiters.get() > 0)
+    {
+      synchronized (this)
+      {
+        this.notifyAll();
+      }
+    }
+  }
+
+  /**
+   * Wartet, bis alle bis zum Aufruf eingestellten Elemente vom Leser verarbeitet wurden.
+   * Kehrt sofort zurueck, wenn der Aufrufer selbst der Leser ist, da er sonst auf
+   * sich selbst warten wuerde.
+   * @param timeout maximale Wartezeit in Millisekunden. 0 wartet ohne Limit.
+   * @param consumer der lesende Thread.
+   * @return Anzahl der Elemente, die bei Rueckkehr noch nicht verarbeitet waren.
+   * @throws InterruptedException
+   */
+  int await(long timeout, Thread consumer) throws InterruptedException
+  {
+    long barrier = tail.get();
+    if (this.completed >= barrier || Thread.currentThread() == consumer)
+      return pending(barrier);
+
+    long deadline = timeout > 0 ? System.currentTimeMillis() + timeout : Long.MAX_VALUE;
+    this.waiters.incrementAndGet();
+    try
+    {
+      LockSupport.unpark(consumer);
+      synchronized (this)
+      {
+        while (this.completed < barrier && consumer.isAlive())
+        {
+          long remaining = deadline - System.currentTimeMillis();
+          if (remaining <= 0L)
+            break;
+          // Die Begrenzung ist nur die Rueckfallebene, falls der Leser unerwartet stirbt
+          this.wait(Math.min(remaining,1000L));
+        }
+      }
+    }
+    finally
+    {
+      this.waiters.decrementAndGet();
+    }
+    return pending(barrier);
+  }
+
+  /**
+   * Liefert die Anzahl der bis zur angegebenen Position noch nicht verarbeiteten Elemente.
+   * @param barrier die Position.
+   * @return Anzahl der noch nicht verarbeiteten Elemente.
+   */
+  private int pending(long barrier)
+  {
+    return (int) Math.max(0L,barrier - this.completed);
+  }
+
+  /**
+   * Markiert den Puffer als geschlossen.
+   * Wartende Produzenten geben dann auf. Gelesen werden kann weiterhin.
+   */
+  void close()
+  {
+    this.closed = true;
+  }
+
+  /**
+   * Prueft, ob der Puffer geschlossen wurde.
+   * @return true, wenn er geschlossen wurde.
+   */
+  boolean isClosed()
+  {
+    return this.closed;
+  }
+
+  /**
+   * Entfernt das aelteste Element und liefert es zurueck.
+   * @return das Element oder <code>null</code>, wenn der Puffer leer ist.
+   */
+  Object poll()
+  {
+    long pos = head.get();
+    while (true)
+    {
+      int idx  = (int) (pos & mask);
+      long dif = sequences.get(idx) - (pos + 1);
+      if (dif == 0)
+      {
+        if (head.compareAndSet(pos,pos + 1))
+        {
+          Object o = slots[idx];
+          slots[idx] = null;
+          sequences.set(idx,pos + slots.length); // Slot fuer die naechste Runde freigeben
+          return o;
+        }
+        pos = head.get();
+      }
+      else if (dif < 0)
+      {
+        return null; // leer
+      }
+      else
+      {
+        pos = head.get();
+      }
+    }
+  }
+
+  /**
+   * Entnimmt bis zu <code>max</code> Elemente am Stueck.
+   * @param target Array, in das die Elemente geschrieben werden.
+   * @param max maximale Anzahl zu entnehmender Elemente.
+   * @return Anzahl der tatsaechlich entnommenen Elemente.
+   */
+  int drain(Object[] target, int max)
+  {
+    int count = 0;
+    Object o = null;
+    while (count < max && (o = poll()) != null)
+      target[count++] = o;
+    return count;
+  }
+
+  /**
+   * Liefert die ungefaehre Anzahl der Elemente im Puffer.
+   * @return ungefaehre Anzahl der Elemente.
+   */
+  int size()
+  {
+    long size = tail.get() - head.get();
+    return (int) Math.max(0L,Math.min(size,slots.length));
+  }
+
+  /**
+   * Prueft, ob der Puffer leer ist.
+   * @return true, wenn er leer ist.
+   */
+  boolean isEmpty()
+  {
+    return tail.get() == head.get();
+  }
+
+  /**
+   * Liefert die Kapazitaet des Puffers.
+   * @return Kapazitaet.
+   */
+  int capacity()
+  {
+    return slots.length;
+  }
+}
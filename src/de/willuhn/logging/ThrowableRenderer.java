@@ -0,0 +1,108 @@
+/**********************************************************************
+ *
+ * Copyright (c) 2004 Olaf Willuhn
+ * All rights reserved.
+ * 
+ * This software is copyrighted work licensed under the terms of the
+ * GNU LESSER GENERAL PUBLIC LICENSE 2.1.
+ * Please consult the file "LICENSE" for details. 
+ *
+ **********************************************************************/
+package de.willuhn.logging;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Erzeugt den Text des Stacktraces einer geloggten Exception.
+ * Optional merkt sich der Renderer die Fingerabdruecke der zuletzt gesehenen
+ * Stacktraces. Wiederholt sich ein Stacktrace, wird er nicht erneut komplett
+ * ausgegeben sondern nur ein Verweis auf sein erstes Auftreten ("same as #N").
+ * Ohne Cache ist die Klasse zustandslos und damit thread-safe, mit Cache
+ * darf sie nur vom Logger-Thread verwendet werden.
+ */
+final class ThrowableRenderer
+{
+  /**
+   * Renderer ohne Cache.
+   */
+  final static ThrowableRenderer PLAIN = new ThrowableRenderer(0);
+
+  // Maximale Tiefe der Cause-Kette, die in den Fingerabdruck eingeht
+  private final static int MAX_DEPTH = 16;
+
+  private final static String lineSep = System.getProperty("line.separator");
+
+  private Map<Long,Integer> seen = null;
+  private int next = 1;
+
+  /**
+   * ct.
+   * @param cacheSize Anzahl der Fingerabdruecke, die sich der Renderer merkt.
+   * Bei 0 werden alle Stacktraces komplett ausgegeben.
+   */
+  ThrowableRenderer(final int cacheSize)
+  {
+    if (cacheSize <= 0)
+      return;
+
+    this.seen = new LinkedHashMap<Long,Integer>(16,0.75f,true)
+    {
+      private static final long serialVersionUID = 1L;
+
+      protected boolean removeEldestEntry(Map.Entry<Long,Integer> eldest)
+      {
+        return size() > cacheSize;
+      }
+    };
+  }
+
+  /**
+   * Erzeugt den Text des Stacktraces.
+   * @param t die Exception.
+   * @return der Text inclusive abschliessendem Zeilenumbruch.
+   */
+  String render(Throwable t)
+  {
+    StringWriter sw = new StringWriter(1024);
+    if (this.seen == null)
+    {
+      t.printStackTrace(new PrintWriter(sw));
+      return sw.toString();
+    }
+
+    Long fp = Long.valueOf(fingerprint(t));
+    Integer id = this.seen.get(fp);
+    if (id != null)
+      return t.toString() + " (stack trace same as #" + id + ")" + lineSep;
+
+    id = Integer.valueOf(this.next++);
+    this.seen.put(fp,id);
+    sw.write("#" + id + " ");
+    t.printStackTrace(new PrintWriter(sw));
+    return sw.toString();
+  }
+
+  /**
+   * Berechnet den Fingerabdruck eines Stacktraces.
+   * Hierbei werden Klassen und Stackframes der Exception und ihrer Causes
+   * beruecksichtigt, nicht jedoch die Fehlertexte.
+   * @param t die Exception.
+   * @return der Fingerabdruck.
+   */
+  private static long fingerprint(Throwable t)
+  {
+    long h = 1125899906842597L;
+    int depth = 0;
+    for (Throwable c = t; c != null && depth < MAX_DEPTH; c = c.getCause(), depth++)
+    {
+      h = 31 * h + c.getClass().getName().hashCode();
+      StackTraceElement[] stack = c.getStackTrace();
+      for (int i=0;i<stack.length;++i)
+        h = 31 * h + stack[i].hashCode();
+    }
+    return h;
+  }
+}
@@ -0,0 +1,69 @@
+/**********************************************************************
+ *
+ * Copyright (c) 2004 Olaf Willuhn
+ * All rights reserved.
+ * 
+ * This software is copyrighted work licensed under the terms of the
+ * GNU LESSER GENERAL PUBLIC LICENSE 2.1.
+ * Please consult the file "LICENSE" for details. 
+ *
+ **********************************************************************/
+package de.willuhn.logging;
+
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Formatiert Zeitstempel im Format von <code>java.util.Date#toString()</code>.
+ * Da das Format nur sekundengenau ist, wird der Text nur einmal pro Sekunde
+ * neu erzeugt und ansonsten aus dem Cache geliefert.
+ * Die Klasse ist thread-safe.
+ */
+final class TimestampCache
+{
+  private final DateFormat format = new SimpleDateFormat("EEE MMM dd HH:mm:ss zzz yyyy",Locale.US);
+  private volatile Entry last = new Entry(Long.MIN_VALUE,null);
+
+  /**
+   * Liefert den formatierten Zeitstempel.
+   * @param millis der Zeitstempel in Millisekunden.
+   * @return der formatierte Zeitstempel.
+   */
+  String format(long millis)
+  {
+    long second = millis / 1000L; // Zeitstempel von Log-Meldungen liegen nach 1970
+    Entry e = this.last;
+    if (e.second == second)
+      return e.text;
+
+    String text = null;
+    synchronized (format)
+    {
+      text = format.format(new Date(millis));
+    }
+    this.last = new Entry(second,text);
+    return text;
+  }
+
+  /**
+   * Ein unveraenderlicher Cache-Eintrag.
+   */
+  private final static class Entry
+  {
+    private final long second;
+    private final String text;
+
+    /**
+     * ct.
+     * @param second die Sekunde.
+     * @param text der formatierte Text.
+     */
+    private Entry(long second, String text)
+    {
+      this.second = second;
+      this.text   = text;
+    }
+  }
+}
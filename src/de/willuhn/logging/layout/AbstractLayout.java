@@ -0,0 +1,161 @@
+/**********************************************************************
+ *
+ * Copyright (c) 2004 Olaf Willuhn
+ * All rights reserved.
+ * 
+ * This software is copyrighted work licensed under the terms of the
+ * GNU LESSER GENERAL PUBLIC LICENSE 2.1.
+ * Please consult the file "LICENSE" for details. 
+ *
+ **********************************************************************/
+
+package de.willuhn.logging.layout;
+
+import de.willuhn.logging.LineEncoder;
+
+/**
+ * Basis-Klasse der Layouts mit Hilfsfunktionen, die Zeichen, Zahlen und
+ * Zeitstempel ohne temporaere Strings als UTF-8 in den Puffer schreiben.
+ */
+public abstract class AbstractLayout implements Layout
+{
+  private final static byte[] HEX = {'0','1','2','3','4','5','6','7','8','9','a','b','c','d','e','f'};
+
+  /**
+   * Schreibt ein Zeichen als UTF-8.
+   * @param out der Puffer.
+   * @param s der Text.
+   * @param i Position des Zeichens.
+   * @return Anzahl der verbrauchten Zeichen (2 bei einem Surrogate-Paar, sonst 1).
+   */
+  protected static int putChar(LineEncoder out, CharSequence s, int i)
+  {
+    char c = s.charAt(i);
+    if (c < 0x80)
+    {
+      out.put(c);
+      return 1;
+    }
+    if (c < 0x800)
+    {
+      out.put(0xc0 | (c >> 6));
+      out.put(0x80 | (c & 0x3f));
+      return 1;
+    }
+    if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1)))
+    {
+      int cp = Character.toCodePoint(c,s.charAt(i + 1));
+      out.put(0xf0 | (cp >> 18));
+      out.put(0x80 | ((cp >> 12) & 0x3f));
+      out.put(0x80 | ((cp >> 6) & 0x3f));
+      out.put(0x80 | (cp & 0x3f));
+      return 2;
+    }
+    if (Character.isSurrogate(c))
+    {
+      out.put('?'); // einzelnes Surrogate - nicht darstellbar
+      return 1;
+    }
+    out.put(0xe0 | (c >> 12));
+    out.put(0x80 | ((c >> 6) & 0x3f));
+    out.put(0x80 | (c & 0x3f));
+    return 1;
+  }
+
+  /**
+   * Schreibt reinen ASCII-Text.
+   * @param out der Puffer.
+   * @param s der Text.
+   */
+  protected static void putAscii(LineEncoder out, String s)
+  {
+    for (int i=0;i<s.length();++i)
+      out.put(s.charAt(i));
+  }
+
+  /**
+   * Schreibt ein Zeichen als Unicode-Escape-Sequenz "\\uXXXX".
+   * @param out der Puffer.
+   * @param c das Zeichen.
+   */
+  protected static void putUnicodeEscape(LineEncoder out, char c)
+  {
+    out.put('\\');
+    out.put('u');
+    out.put(HEX[(c >> 12) & 0xf]);
+    out.put(HEX[(c >> 8) & 0xf]);
+    out.put(HEX[(c >> 4) & 0xf]);
+    out.put(HEX[c & 0xf]);
+  }
+
+  /**
+   * Schreibt eine Zahl mit fester Anzahl von Stellen (ggf. mit fuehrenden Nullen).
+   * @param out der Puffer.
+   * @param value die Zahl.
+   * @param digits Anzahl der Stellen.
+   */
+  protected static void putDigits(LineEncoder out, int value, int digits)
+  {
+    int div = 1;
+    for (int i=1;i<digits;++i)
+      div *= 10;
+    for (;div > 0;div /= 10)
+      out.put('0' + (value / div) % 10);
+  }
+
+  /**
+   * Schreibt den Zeitstempel im Format ISO 8601 in UTC mit Millisekunden,
+   * z.Bsp. "2004-12-31T19:34:22.123Z".
+   * @param out der Puffer.
+   * @param millis der Zeitstempel.
+   */
+  protected static void putTimestamp(LineEncoder out, long millis)
+  {
+    int date = date(millis);
+    putDigits(out,date / 10000,4);
+    out.put('-');
+    putDigits(out,(date / 100) % 100,2);
+    out.put('-');
+    putDigits(out,date % 100,2);
+    out.put('T');
+    putTime(out,millis);
+    out.put('.');
+    putDigits(out,(int) Math.floorMod(millis,1000L),3);
+    out.put('Z');
+  }
+
+  /**
+   * Schreibt die Uhrzeit im Format "HH:mm:ss".
+   * @param out der Puffer.
+   * @param millis der Zeitstempel.
+   */
+  protected static void putTime(LineEncoder out, long millis)
+  {
+    int ms = (int) Math.floorMod(millis,86400000L);
+    putDigits(out,ms / 3600000,2);
+    out.put(':');
+    putDigits(out,(ms / 60000) % 60,2);
+    out.put(':');
+    putDigits(out,(ms / 1000) % 60,2);
+  }
+
+  /**
+   * Rechnet den Zeitstempel in das Datum um.
+   * @param millis der Zeitstempel.
+   * @return das Datum in der Form <code>jahr * 10000 + monat * 100 + tag</code>.
+   */
+  protected static int date(long millis)
+  {
+    // Umrechnung der Tage seit 1970 in Jahr, Monat und Tag (nach Howard Hinnant, "civil_from_days")
+    long z   = Math.floorDiv(millis,86400000L) + 719468L;
+    long era = Math.floorDiv(z,146097L);
+    long doe = z - era * 146097L;
+    long yoe = (doe - doe / 1460L + doe / 36524L - doe / 146096L) / 365L;
+    long doy = doe - (365L * yoe + yoe / 4L - yoe / 100L);
+    long mp  = (5L * doy + 2L) / 153L;
+    int day   = (int) (doy - (153L * mp + 2L) / 5L + 1L);
+    int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+    int year  = (int) (yoe + era * 400L + (month <= 2 ? 1 : 0));
+    return year * 10000 + month * 100 + day;
+  }
+}
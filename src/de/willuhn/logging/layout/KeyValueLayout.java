@@ -0,0 +1,104 @@
+/**********************************************************************
+ *
+ * Copyright (c) 2004 Olaf Willuhn
+ * All rights reserved.
+ * 
+ * This software is copyrighted work licensed under the terms of the
+ * GNU LESSER GENERAL PUBLIC LICENSE 2.1.
+ * Please consult the file "LICENSE" for details. 
+ *
+ **********************************************************************/
+
+package de.willuhn.logging.layout;
+
+import de.willuhn.logging.LineEncoder;
+import de.willuhn.logging.Message;
+
+/**
+ * Schreibt jede Log-Meldung als Folge von "key=value"-Paaren in eine Zeile (UTF-8). Beispiel:
+ * <pre>
+ * date=2004-12-31T19:34:22.123Z level=INFO host=server thread=main class=de.willuhn.Foo method=bar text="Hallo Welt"
+ * </pre>
+ * Werte mit Leerzeichen, "=", Anfuehrungszeichen oder Steuerzeichen werden in
+ * Anfuehrungszeichen gesetzt, Anfuehrungszeichen, Backslashes und Zeilenumbrueche
+ * darin escaped. Felder ohne Wert werden weggelassen.
+ */
+public class KeyValueLayout extends AbstractLayout
+{
+  /**
+   * @see de.willuhn.logging.layout.Layout#format(de.willuhn.logging.Message, de.willuhn.logging.LineEncoder)
+   */
+  public void format(Message message, LineEncoder out)
+  {
+    boolean first = true;
+    if (message.getDate() != null)
+    {
+      putAscii(out,"date=");
+      putTimestamp(out,message.getDate().getTime());
+      first = false;
+    }
+    first = field(out,"level",message.getLevel() != null ? message.getLevel().getName() : null,first);
+    first = field(out,"host",message.getHost(),first);
+    first = field(out,"thread",message.getThread(),first);
+    first = field(out,"class",message.getLoggingClass(),first);
+    first = field(out,"method",message.getLoggingMethod(),first);
+    field(out,"text",message.getText(),first);
+  }
+
+  /**
+   * Schreibt ein Feld, sofern es einen Wert hat.
+   * @param out der Puffer.
+   * @param name Name des Feldes.
+   * @param value Wert des Feldes.
+   * @param first true, wenn es das erste Feld ist.
+   * @return true, wenn noch kein Feld geschrieben wurde.
+   */
+  private static boolean field(LineEncoder out, String name, String value, boolean first)
+  {
+    if (value == null)
+      return first;
+    if (!first)
+      out.put(' ');
+    putAscii(out,name);
+    out.put('=');
+
+    boolean quote = value.length() == 0;
+    for (int i=0;!quote && i<value.length();++i)
+    {
+      char c = value.charAt(i);
+      quote = c <= ' ' || c == '=' || c == '"' || c == 0x7f;
+    }
+
+    if (!quote)
+    {
+      for (int i=0;i<value.length();)
+        i += putChar(out,value,i);
+      return false;
+    }
+
+    out.put('"');
+    for (int i=0;i<value.length();)
+    {
+      char c = value.charAt(i);
+      switch (c)
+      {
+        case '"':  out.put('\\'); out.put('"');  break;
+        case '\\': out.put('\\'); out.put('\\'); break;
+        case '\n': out.put('\\'); out.put('n');  break;
+        case '\r': out.put('\\'); out.put('r');  break;
+        case '\t': out.put('\\'); out.put('t');  break;
+        default:
+          if (c < 0x20 || c == 0x7f)
+          {
+            putUnicodeEscape(out,c);
+            break;
+          }
+          i += putChar(out,value,i);
+          continue;
+      }
+      i++;
+    }
+    out.put('"');
+    return false;
+  }
+}
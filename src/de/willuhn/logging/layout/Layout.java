@@ -0,0 +1,43 @@
+/**********************************************************************
+ *
+ * Copyright (c) 2004 Olaf Willuhn
+ * All rights reserved.
+ * 
+ * This software is copyrighted work licensed under the terms of the
+ * GNU LESSER GENERAL PUBLIC LICENSE 2.1.
+ * Please consult the file "LICENSE" for details. 
+ *
+ **********************************************************************/
+
+package de.willuhn.logging.layout;
+
+import de.willuhn.logging.LineEncoder;
+import de.willuhn.logging.Message;
+
+/**
+ * Legt fest, in welchem Format eine Log-Meldung geschrieben wird.
+ * Das Layout schreibt die Bytes direkt in den Puffer des {@link LineEncoder}s.
+ * Der Zeilenumbruch wird vom LineEncoder angehaengt.
+ * Implementierungen muessen thread-safe sein, da ein Layout von mehreren
+ * Targets gleichzeitig verwendet werden kann.
+ */
+public interface Layout
+{
+  /**
+   * Schreibt die Meldung in den Puffer.
+   * @param message die Meldung.
+   * @param out der Puffer.
+   */
+  public void format(Message message, LineEncoder out);
+
+  /**
+   * Prueft, ob das Layout Klasse und Methode des Aufrufers ausgibt.
+   * Das Ermitteln des Aufrufers ist teuer. Layouts, die ihn nicht ausgeben,
+   * sollten daher false liefern.
+   * @return true, wenn Klasse und Methode benoetigt werden.
+   */
+  public default boolean needsCaller()
+  {
+    return true;
+  }
+}
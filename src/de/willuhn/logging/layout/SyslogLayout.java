@@ -0,0 +1,225 @@
+/**********************************************************************
+ *
+ * Copyright (c) 2004 Olaf Willuhn
+ * All rights reserved.
+ * 
+ * This software is copyrighted work licensed under the terms of the
+ * GNU LESSER GENERAL PUBLIC LICENSE 2.1.
+ * Please consult the file "LICENSE" for details. 
+ *
+ **********************************************************************/
+
+package de.willuhn.logging.layout;
+
+import java.util.TimeZone;
+
+import de.willuhn.logging.Level;
+import de.willuhn.logging.LineEncoder;
+import de.willuhn.logging.Message;
+
+/**
+ * Schreibt die Meldung im Syslog-Format nach RFC 5424 oder RFC 3164 (BSD-Syslog).
+ * RFC 5424:
+ * <pre>
+ * &lt;14&gt;1 2004-12-31T19:34:22.123Z server java - - - Hallo Welt
+ * </pre>
+ * RFC 3164:
+ * <pre>
+ * &lt;14&gt;Dec 31 20:34:22 server java: Hallo Welt
+ * </pre>
+ * Die Severity ergibt sich aus dem Log-Level: ERROR = 3, WARN = 4, INFO = 6, DEBUG und TRACE = 7.
+ */
+public class SyslogLayout extends AbstractLayout
+{
+  /**
+   * Wir schreiben weder Klasse noch Methode.
+   * @see de.willuhn.logging.layout.Layout#needsCaller()
+   */
+  public boolean needsCaller()
+  {
+    return false;
+  }
+
+  /**
+   * Das Syslog-Format.
+   */
+  public static enum Format
+  {
+    /**
+     * BSD-Syslog mit Zeitstempel in lokaler Zeit ohne Jahr.
+     */
+    RFC3164,
+
+    /**
+     * Syslog-Protokoll mit Zeitstempel nach ISO 8601 in UTC.
+     */
+    RFC5424,
+  }
+
+  /**
+   * Facility "user-level messages" (Default).
+   */
+  public final static int FACILITY_USER = 1;
+
+  /**
+   * Facility "local use 0". Bis "local use 7" (23) fortlaufend nummeriert.
+   */
+  public final static int FACILITY_LOCAL0 = 16;
+
+  private final static String[] MONTHS = {"Jan","Feb","Mar","Apr","May","Jun","Jul","Aug","Sep","Oct","Nov","Dec"};
+
+  private volatile Format format = Format.RFC3164;
+  private volatile int facility  = FACILITY_USER;
+  private volatile String hostname = null;
+  private volatile String appName  = "java";
+
+  /**
+   * ct.
+   * @param hostname der Hostname des Absenders.
+   * Wird verwendet, wenn in der Meldung kein Host angegeben ist.
+   */
+  public SyslogLayout(String hostname)
+  {
+    this.hostname = hostname;
+  }
+
+  /**
+   * Legt das Format fest.
+   * Default: RFC3164.
+   * @param format das Format.
+   */
+  public void setFormat(Format format)
+  {
+    if (format != null)
+      this.format = format;
+  }
+
+  /**
+   * Liefert das Format.
+   * @return das Format.
+   */
+  public Format getFormat()
+  {
+    return this.format;
+  }
+
+  /**
+   * Legt die Facility fest (0 bis 23).
+   * Default: {@link #FACILITY_USER}.
+   * @param facility die Facility.
+   */
+  public void setFacility(int facility)
+  {
+    if (facility < 0 || facility > 23)
+      throw new IllegalArgumentException("invalid syslog facility " + facility);
+    this.facility = facility;
+  }
+
+  /**
+   * Legt den Namen der Anwendung fest (APP-NAME bzw. TAG).
+   * Default: "java".
+   * @param name Name der Anwendung.
+   */
+  public void setAppName(String name)
+  {
+    this.appName = name;
+  }
+
+  /**
+   * Liefert die Syslog-Severity zum Log-Level.
+   * @param level das Log-Level.
+   * @return die Severity.
+   */
+  public static int severity(Level level)
+  {
+    if (level == null)
+      return 6;
+    int v = level.getValue();
+    if (v >= Level.ERROR.getValue())
+      return 3;
+    if (v >= Level.WARN.getValue())
+      return 4;
+    if (v >= Level.INFO.getValue())
+      return 6;
+    return 7;
+  }
+
+  /**
+   * @see de.willuhn.logging.layout.Layout#format(de.willuhn.logging.Message, de.willuhn.logging.LineEncoder)
+   */
+  public void format(Message message, LineEncoder out)
+  {
+    long millis = message.getDate() != null ? message.getDate().getTime() : System.currentTimeMillis();
+    String host = message.getHost() != null ? message.getHost() : this.hostname;
+
+    out.put('<');
+    int pri = this.facility * 8 + severity(message.getLevel());
+    if (pri >= 100)
+      putDigits(out,pri,3);
+    else if (pri >= 10)
+      putDigits(out,pri,2);
+    else
+      putDigits(out,pri,1);
+    out.put('>');
+
+    if (this.format == Format.RFC5424)
+    {
+      out.put('1');
+      out.put(' ');
+      putTimestamp(out,millis);
+      out.put(' ');
+      putName(out,host,255);
+      out.put(' ');
+      putName(out,this.appName,48);
+      putAscii(out," - - - "); // PROCID, MSGID, STRUCTURED-DATA
+    }
+    else
+    {
+      long local = millis + TimeZone.getDefault().getOffset(millis);
+      int date = date(local);
+      putAscii(out,MONTHS[(date / 100) % 100 - 1]);
+      out.put(' ');
+      int day = date % 100;
+      out.put(day < 10 ? ' ' : '0' + day / 10);
+      out.put('0' + day % 10);
+      out.put(' ');
+      putTime(out,local);
+      out.put(' ');
+      putName(out,host,255);
+      out.put(' ');
+      putName(out,this.appName,32);
+      out.put(':');
+      out.put(' ');
+    }
+
+    String text = message.getText();
+    if (text == null)
+      return;
+    for (int i=0;i<text.length();)
+      i += putChar(out,text,i);
+  }
+
+  /**
+   * Schreibt einen Namen (Host, Anwendung). Erlaubt sind nur druckbare ASCII-Zeichen
+   * ohne Leerzeichen, alle anderen werden durch "_" ersetzt.
+   * Ohne Namen wird "-" geschrieben.
+   * @param out der Puffer.
+   * @param name der Name.
+   * @param max maximale Laenge.
+   */
+  private static void putName(LineEncoder out, String name, int max)
+  {
+    if (name == null || name.length() == 0)
+    {
+      out.put('-');
+      return;
+    }
+
+    int len = Math.min(name.length(),max);
+    for (int i=0;i<len;++i)
+    {
+      char c = name.charAt(i);
+      out.put(c > 32 && c < 127 ? c : '_');
+    }
+  }
+}
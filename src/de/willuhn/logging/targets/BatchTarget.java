@@ -0,0 +1,33 @@
+/**********************************************************************
+ *
+ * Copyright (c) 2004 Olaf Willuhn
+ * All rights reserved.
+ * 
+ * This software is copyrighted work licensed under the terms of the
+ * GNU LESSER GENERAL PUBLIC LICENSE 2.1.
+ * Please consult the file "LICENSE" for details. 
+ *
+ **********************************************************************/
+package de.willuhn.logging.targets;
+
+import de.willuhn.logging.Message;
+
+/**
+ * Erweiterung eines Logging-Ziels, welches mehrere Nachrichten auf einmal
+ * entgegennehmen kann.
+ * Der Logger-Thread uebergibt die angesammelten Nachrichten dann in Bloecken
+ * statt einzeln. Targets, die dieses Interface nicht implementieren, erhalten
+ * die Nachrichten weiterhin einzeln via {@link Target#write(Message)}.
+ */
+public interface BatchTarget extends Target
+{
+  /**
+   * Schreibt die uebergebenen Nachrichten in das Logging-Target.
+   * Das Array wird vom Aufrufer wiederverwendet. Das Target darf sich
+   * daher keine Referenz darauf merken.
+   * @param batch Array mit den zu loggenden Nachrichten.
+   * @param count Anzahl der Nachrichten im Array, beginnend bei Index 0.
+   * @throws Exception
+   */
+  public void write(Message[] batch, int count) throws Exception;
+}
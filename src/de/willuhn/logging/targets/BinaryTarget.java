@@ -0,0 +1,367 @@
+/**********************************************************************
+ *
+ * Copyright (c) 2004 Olaf Willuhn
+ * All rights reserved.
+ * 
+ * This software is copyrighted work licensed under the terms of the
+ * GNU LESSER GENERAL PUBLIC LICENSE 2.1.
+ * Please consult the file "LICENSE" for details. 
+ *
+ **********************************************************************/
+package de.willuhn.logging.targets;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import de.willuhn.logging.Level;
+import de.willuhn.logging.Logger;
+import de.willuhn.logging.Message;
+
+/**
+ * Target, welches die Meldungen in einem kompakten Binaer-Format schreibt.
+ * Zeitstempel werden als Differenz zur vorherigen Meldung, Zahlen als Varint
+ * gespeichert. Host, Thread, Klasse, Methode und der Name des Log-Levels
+ * landen nur beim ersten Auftreten als Text in der Datei (Dictionary),
+ * danach nur noch deren Nummer. Die Datei kann mit {@link de.willuhn.logging.BinaryLogReader}
+ * wieder in das Text-Format von <code>Message#toString()</code> gewandelt werden:
+ * <pre>
+ * java de.willuhn.logging.BinaryLogReader server.blog
+ * </pre>
+ * Aufbau der Datei:
+ * <pre>
+ * Header:  "WLOG" Version(1 Byte)
+ * Eintrag: DICT    id(varint) laenge(varint) text(UTF-8)
+ *          MESSAGE zeit-delta(zigzag varint, ms) level-wert(zigzag varint) level-name(id)
+ *                  host(id) thread(id) klasse(id) methode(id) laenge+1(varint) text(UTF-8)
+ *          RESET   Dictionary und Zeitstempel beginnen von vorn
+ * </pre>
+ * Die Id 0 steht fuer <code>null</code>, ebenso die Text-Laenge 0.
+ */
+public class BinaryTarget implements BatchTarget, CallerAware
+{
+  /**
+   * Kennung am Anfang der Datei.
+   */
+  public final static String MAGIC = "WLOG";
+
+  /**
+   * Version des Datei-Formats.
+   */
+  public final static int VERSION  = 1;
+
+  /**
+   * Satzart fuer einen Dictionary-Eintrag.
+   */
+  public final static int DICT     = 1;
+
+  /**
+   * Satzart fuer eine Meldung.
+   */
+  public final static int MESSAGE  = 2;
+
+  /**
+   * Satzart fuer das Zuruecksetzen von Dictionary und Zeit-Basis.
+   */
+  public final static int RESET    = 3;
+
+  // Maximale Anzahl von Eintraegen im Dictionary. Danach beginnt es von vorn.
+  private final static int DICT_SIZE = 64 * 1024;
+
+  private OutputStream os = null;
+  private volatile boolean caller = true;
+  private Map<String,Integer> dict = new HashMap<String,Integer>();
+  private long lastTime = 0L;
+
+  // true, wenn der letzte Block nicht geschrieben werden konnte. Dictionary und
+  // Zeit-Basis passen dann nicht mehr zur Datei, der naechste Block beginnt mit RESET.
+  private boolean reset = false;
+
+  private byte[] buf = new byte[64 * 1024];
+  private int pos    = 0;
+
+  /**
+   * ct.
+   * @param file die Ziel-Datei.
+   * @param append Legt fest, ob an die Datei angehaengt oder sie ueberschrieben werden soll.
+   * @throws IOException
+   */
+  public BinaryTarget(File file, boolean append) throws IOException
+  {
+    boolean header = !append || file.length() == 0L;
+    this.os = new FileOutputStream(file,append);
+
+    if (header)
+    {
+      for (int i=0;i<MAGIC.length();++i)
+        put(MAGIC.charAt(i));
+      put(VERSION);
+    }
+    else
+    {
+      // Das Dictionary der vorhandenen Daten kennen wir nicht
+      put(RESET);
+    }
+    flush();
+  }
+
+  /**
+   * Legt fest, ob Klasse und Methode des Aufrufers gespeichert werden.
+   * Ohne sie muss der Logger den Aufrufer nicht ermitteln.
+   * Default: true.
+   * @param caller true, wenn Klasse und Methode gespeichert werden sollen.
+   */
+  public void setCaller(boolean caller)
+  {
+    this.caller = caller;
+    Logger.targetChanged();
+  }
+
+  /**
+   * @see de.willuhn.logging.targets.CallerAware#needsCaller()
+   */
+  public boolean needsCaller()
+  {
+    return this.caller;
+  }
+
+  /**
+   * @see de.willuhn.logging.targets.Target#write(de.willuhn.logging.Message)
+   */
+  public void write(Message message) throws Exception
+  {
+    if (message == null)
+      return;
+    write(new Message[]{message},1);
+  }
+
+  /**
+   * @see de.willuhn.logging.targets.BatchTarget#write(de.willuhn.logging.Message[], int)
+   */
+  public synchronized void write(Message[] batch, int count) throws Exception
+  {
+    boolean ok = false;
+    try
+    {
+      if (this.reset)
+      {
+        put(RESET);
+        this.reset = false;
+      }
+      for (int i=0;i<count;++i)
+      {
+        if (batch[i] != null)
+          encode(batch[i]);
+      }
+      flush();
+      ok = true;
+    }
+    finally
+    {
+      this.pos = 0;
+      if (!ok)
+      {
+        // Die im Puffer vermerkten DICT-Eintraege und die Zeit-Basis sind nie in der Datei angekommen
+        this.dict.clear();
+        this.lastTime = 0L;
+        this.reset = true;
+      }
+    }
+  }
+
+  /**
+   * Kodiert die Meldung in den Puffer.
+   * @param m die Meldung.
+   */
+  private void encode(Message m)
+  {
+    if (this.dict.size() + 6 > DICT_SIZE)
+    {
+      put(RESET);
+      this.dict.clear();
+      this.lastTime = 0L;
+    }
+
+    Level level = m.getLevel();
+    int levelName = id(level != null ? level.getName() : null);
+    int host      = id(m.getHost());
+    int thread    = id(m.getThread());
+    int clazz     = this.caller ? id(m.getLoggingClass()) : 0;
+    int method    = this.caller ? id(m.getLoggingMethod()) : 0;
+
+    long time = m.getDate() != null ? m.getDate().getTime() : this.lastTime;
+    put(MESSAGE);
+    putVarLong(zigzag(time - this.lastTime));
+    this.lastTime = time;
+    putVarLong(zigzag(level != null ? level.getValue() : 0));
+    putVarLong(levelName);
+    putVarLong(host);
+    putVarLong(thread);
+    putVarLong(clazz);
+    putVarLong(method);
+    putText(m.getText());
+  }
+
+  /**
+   * Liefert die Id des Textes im Dictionary. Ist er noch nicht enthalten, wird er
+   * hinzugefuegt und ein DICT-Eintrag geschrieben.
+   * @param s der Text.
+   * @return die Id. 0 fuer <code>null</code>.
+   */
+  private int id(String s)
+  {
+    if (s == null)
+      return 0;
+
+    Integer id = this.dict.get(s);
+    if (id != null)
+      return id.intValue();
+
+    int i = this.dict.size() + 1;
+    this.dict.put(s,i);
+    put(DICT);
+    putVarLong(i);
+    putText(s);
+    return i;
+  }
+
+  /**
+   * Schreibt die Laenge des Textes plus 1 und den Text als UTF-8.
+   * Fuer <code>null</code> wird nur 0 geschrieben.
+   * @param s der Text.
+   */
+  private void putText(String s)
+  {
+    if (s == null)
+    {
+      putVarLong(0L);
+      return;
+    }
+
+    int len = s.length();
+    int bytes = 0;
+    for (int i=0;i<len;++i)
+    {
+      char c = s.charAt(i);
+      if (c < 0x80)
+        bytes += 1;
+      else if (c < 0x800)
+        bytes += 2;
+      else if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(s.charAt(i + 1)))
+      {
+        bytes += 4;
+        i++;
+      }
+      else
+        bytes += 3;
+    }
+    putVarLong(bytes + 1L);
+    ensure(bytes);
+
+    for (int i=0;i<len;++i)
+    {
+      char c = s.charAt(i);
+      if (c < 0x80)
+      {
+        this.buf[this.pos++] = (byte) c;
+      }
+      else if (c < 0x800)
+      {
+        this.buf[this.pos++] = (byte) (0xc0 | (c >> 6));
+        this.buf[this.pos++] = (byte) (0x80 | (c & 0x3f));
+      }
+      else if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(s.charAt(i + 1)))
+      {
+        int cp = Character.toCodePoint(c,s.charAt(++i));
+        this.buf[this.pos++] = (byte) (0xf0 | (cp >> 18));
+        this.buf[this.pos++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+        this.buf[this.pos++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+        this.buf[this.pos++] = (byte) (0x80 | (cp & 0x3f));
+      }
+      else
+      {
+        // Einzelne Surrogates werden wie von String#getBytes als 3 Bytes kodiert.
+        this.buf[this.pos++] = (byte) (0xe0 | (c >> 12));
+        this.buf[this.pos++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+        this.buf[this.pos++] = (byte) (0x80 | (c & 0x3f));
+      }
+    }
+  }
+
+  /**
+   * Wandelt eine Zahl mit Vorzeichen so um, dass kleine Betraege wenige Bytes belegen.
+   * @param value die Zahl.
+   * @return die umgewandelte Zahl.
+   */
+  static long zigzag(long value)
+  {
+    return (value << 1) ^ (value >> 63);
+  }
+
+  /**
+   * Schreibt die Zahl als Varint (7 Bit pro Byte).
+   * @param value die Zahl.
+   */
+  private void putVarLong(long value)
+  {
+    ensure(10);
+    while ((value & ~0x7fL) != 0L)
+    {
+      this.buf[this.pos++] = (byte) ((value & 0x7f) | 0x80);
+      value >>>= 7;
+    }
+    this.buf[this.pos++] = (byte) value;
+  }
+
+  /**
+   * Schreibt ein einzelnes Byte.
+   * @param b das Byte.
+   */
+  private void put(int b)
+  {
+    ensure(1);
+    this.buf[this.pos++] = (byte) b;
+  }
+
+  /**
+   * Stellt sicher, dass im Puffer noch Platz fuer die angegebene Anzahl Bytes ist.
+   * @param n Anzahl der Bytes.
+   */
+  private void ensure(int n)
+  {
+    if (this.pos + n <= this.buf.length)
+      return;
+    byte[] bigger = new byte[Math.max(this.buf.length * 2,this.pos + n)];
+    System.arraycopy(this.buf,0,bigger,0,this.pos);
+    this.buf = bigger;
+  }
+
+  /**
+   * Schreibt den Puffer in die Datei.
+   * @throws IOException
+   */
+  private void flush() throws IOException
+  {
+    if (this.pos == 0)
+      return;
+    try
+    {
+      this.os.write(this.buf,0,this.pos);
+    }
+    finally
+    {
+      this.pos = 0;
+    }
+  }
+
+  /**
+   * @see de.willuhn.logging.targets.Target#close()
+   */
+  public synchronized void close() throws Exception
+  {
+    this.os.close();
+  }
+}
@@ -0,0 +1,29 @@
+/**********************************************************************
+ *
+ * Copyright (c) 2004 Olaf Willuhn
+ * All rights reserved.
+ * 
+ * This software is copyrighted work licensed under the terms of the
+ * GNU LESSER GENERAL PUBLIC LICENSE 2.1.
+ * Please consult the file "LICENSE" for details. 
+ *
+ **********************************************************************/
+package de.willuhn.logging.targets;
+
+/**
+ * Optionales Interface fuer Targets, die mitteilen koennen, ob sie
+ * Klasse und Methode des Aufrufers ausgeben.
+ * Das Ermitteln des Aufrufers ist teuer, da hierfuer der Stacktrace
+ * erzeugt werden muss. Der Logger verzichtet darauf, wenn keines der
+ * registrierten Targets diese Angaben benoetigt.
+ * Targets, die dieses Interface nicht implementieren, gelten als
+ * Targets, die den Aufrufer benoetigen.
+ */
+public interface CallerAware
+{
+  /**
+   * Prueft, ob das Target Klasse und Methode des Aufrufers benoetigt.
+   * @return true, wenn Klasse und Methode benoetigt werden.
+   */
+  public boolean needsCaller();
+}
@@ -0,0 +1,246 @@
+/**********************************************************************
+ *
+ * Copyright (c) 2004 Olaf Willuhn
+ * All rights reserved.
+ * 
+ * This software is copyrighted work licensed under the terms of the
+ * GNU LESSER GENERAL PUBLIC LICENSE 2.1.
+ * Please consult the file "LICENSE" for details. 
+ *
+ **********************************************************************/
+package de.willuhn.logging.targets;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import de.willuhn.logging.Level;
+import de.willuhn.logging.LineEncoder;
+import de.willuhn.logging.Logger;
+import de.willuhn.logging.Message;
+import de.willuhn.logging.layout.Layout;
+
+/**
+ * Target, welches ueber einen FileChannel in eine Datei schreibt.
+ * Die Meldungen werden in einem grossen Direct-ByteBuffer gesammelt und
+ * erst geschrieben, wenn der Puffer voll ist oder die Flush-Regeln es
+ * verlangen. Damit ist der Durchsatz nur noch durch die Festplatte begrenzt
+ * und nicht mehr durch die Anzahl der Schreibzugriffe.
+ * Flush-Regeln:
+ * <ul>
+ *   <li>Ohne Flush-Intervall (Default) wird nach jedem Block geschrieben.</li>
+ *   <li>Mit Flush-Intervall werden die Meldungen ueber mehrere Bloecke gesammelt
+ *       und spaetestens nach Ablauf des Intervalls geschrieben.</li>
+ *   <li>Enthaelt ein Block eine Meldung ab dem Flush-Level (Default: WARN), wird sofort geschrieben.</li>
+ * </ul>
+ */
+public class FileChannelTarget implements BatchTarget, CallerAware
+{
+  // Default-Groesse des Puffers
+  private final static int BUFFER_SIZE = 256 * 1024;
+
+  private final static String lineSep = System.getProperty("line.separator");
+
+  private FileChannel channel = null;
+  private LineEncoder encoder = null;
+  private int flushSize       = 0;
+
+  private Level flushLevel    = Level.WARN;
+  private long flushInterval  = 0L;
+  private boolean sync        = false;
+  private Timer timer         = null;
+
+  private long lastFlush      = System.currentTimeMillis();
+
+  /**
+   * ct.
+   * @param file die Ziel-Datei.
+   * @param append Legt fest, ob an die Datei angehaengt oder sie ueberschrieben werden soll.
+   * @throws IOException
+   */
+  public FileChannelTarget(File file, boolean append) throws IOException
+  {
+    this(file,append,BUFFER_SIZE);
+  }
+
+  /**
+   * ct.
+   * @param file die Ziel-Datei.
+   * @param append Legt fest, ob an die Datei angehaengt oder sie ueberschrieben werden soll.
+   * @param bufferSize Groesse des Puffers in Bytes.
+   * @throws IOException
+   */
+  public FileChannelTarget(File file, boolean append, int bufferSize) throws IOException
+  {
+    if (append)
+      this.channel = FileChannel.open(file.toPath(),StandardOpenOption.CREATE,StandardOpenOption.WRITE,StandardOpenOption.APPEND);
+    else
+      this.channel = FileChannel.open(file.toPath(),StandardOpenOption.CREATE,StandardOpenOption.WRITE,StandardOpenOption.TRUNCATE_EXISTING);
+
+    bufferSize = Math.max(bufferSize,4 * 1024);
+    this.encoder   = new LineEncoder(Charset.defaultCharset(),lineSep,bufferSize,true);
+    this.flushSize = bufferSize - (bufferSize / 4); // bevor der Puffer wachsen muss
+  }
+
+  /**
+   * Legt fest, ab welchem Log-Level sofort geschrieben wird.
+   * Default: WARN.
+   * @param level das Log-Level. NULL deaktiviert die Funktion.
+   */
+  public synchronized void setFlushLevel(Level level)
+  {
+    this.flushLevel = level;
+  }
+
+  /**
+   * Legt fest, nach welcher Zeit gesammelte Meldungen spaetestens geschrieben werden.
+   * Default: 0. Dann wird nach jedem Block geschrieben.
+   * @param millis Intervall in Millisekunden.
+   */
+  public synchronized void setFlushInterval(long millis)
+  {
+    this.flushInterval = Math.max(0L,millis);
+    if (this.timer != null)
+    {
+      this.timer.cancel();
+      this.timer = null;
+    }
+
+    if (this.flushInterval == 0L)
+      return;
+
+    // Damit die Meldungen auch dann geschrieben werden, wenn keine neuen mehr kommen
+    this.timer = new Timer("FileChannelTarget Flush-Timer",true);
+    this.timer.schedule(new TimerTask() {
+      public void run()
+      {
+        try
+        {
+          flush(false);
+        }
+        catch (IOException e)
+        {
+          // ignore - der naechste Schreibversuch meldet den Fehler
+        }
+      }
+    },this.flushInterval,this.flushInterval);
+  }
+
+  /**
+   * Legt fest, ob nach jedem Schreiben zusaetzlich ein <code>FileChannel#force</code>
+   * ausgefuehrt werden soll, damit die Daten tatsaechlich auf der Platte sind.
+   * Default: false.
+   * @param sync true, wenn nach jedem Schreiben synchronisiert werden soll.
+   */
+  public synchronized void setSync(boolean sync)
+  {
+    this.sync = sync;
+  }
+
+  /**
+   * Legt das Format fest, in dem die Meldungen geschrieben werden.
+   * Default: das Format von <code>Message#toString()</code>.
+   * @param layout das Layout oder <code>null</code> fuer das Default-Format.
+   */
+  public void setLayout(Layout layout)
+  {
+    synchronized (this)
+    {
+      this.encoder.setLayout(layout);
+    }
+    Logger.targetChanged();
+  }
+
+  /**
+   * Haengt vom Layout ab.
+   * @see de.willuhn.logging.targets.CallerAware#needsCaller()
+   */
+  public boolean needsCaller()
+  {
+    return this.encoder.needsCaller();
+  }
+
+  /**
+   * @see de.willuhn.logging.targets.Target#write(de.willuhn.logging.Message)
+   */
+  public void write(Message message) throws Exception
+  {
+    if (message == null)
+      return;
+    write(new Message[]{message},1);
+  }
+
+  /**
+   * @see de.willuhn.logging.targets.BatchTarget#write(de.willuhn.logging.Message[], int)
+   */
+  public synchronized void write(Message[] batch, int count) throws Exception
+  {
+    boolean force = this.flushInterval == 0L;
+    for (int i=0;i<count;++i)
+    {
+      Message m = batch[i];
+      if (m == null)
+        continue;
+      
+      if (this.flushLevel != null && m.getLevel() != null && m.getLevel().getValue() >= this.flushLevel.getValue())
+        force = true;
+
+      this.encoder.append(m);
+      if (this.encoder.size() >= this.flushSize)
+        write();
+    }
+    flush(force);
+  }
+
+  /**
+   * Schreibt den Puffer, wenn es verlangt wird oder das Flush-Intervall abgelaufen ist.
+   * @param force true, wenn in jedem Fall geschrieben werden soll.
+   * @throws IOException
+   */
+  private synchronized void flush(boolean force) throws IOException
+  {
+    if (this.encoder.size() == 0 || !this.channel.isOpen())
+      return;
+
+    if (force || System.currentTimeMillis() - this.lastFlush >= this.flushInterval)
+      write();
+  }
+
+  /**
+   * Schreibt den Puffer in den Channel.
+   * Muss innerhalb von synchronized(this) aufgerufen werden.
+   * @throws IOException
+   */
+  private void write() throws IOException
+  {
+    this.encoder.writeTo(this.channel);
+    if (this.sync)
+      this.channel.force(false);
+    this.lastFlush = System.currentTimeMillis();
+  }
+
+  /**
+   * @see de.willuhn.logging.targets.Target#close()
+   */
+  public synchronized void close() throws Exception
+  {
+    if (this.timer != null)
+    {
+      this.timer.cancel();
+      this.timer = null;
+    }
+
+    try
+    {
+      flush(true);
+    }
+    finally
+    {
+      this.channel.close();
+    }
+  }
+}
@@ -14,26 +14,43 @@ package de.willuhn.logging.targets;
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileFilter;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
 import java.util.zip.GZIPOutputStream;
 
-import de.willuhn.io.FileCopy;
+import de.willuhn.io.IOUtil;
+import de.willuhn.logging.LineEncoder;
 import de.willuhn.logging.Logger;
 import de.willuhn.logging.Message;
+import de.willuhn.logging.layout.Layout;
 
 /**
  * Implementierung eines Targets, welches nach einer definierten Dateigroesse
- * das Log-File rotiert und optional zippt.
+ * oder einem definierten Zeitintervall das Log-File rotiert und optional zippt.
+ * Die Nachrichten eines Blocks werden gesammelt und am Stueck geschrieben.
+ * Beim Rotieren wird die Datei lediglich umbenannt. Das Komprimieren sowie
+ * das Loeschen alter Archive geschieht in einem Hintergrund-Thread, damit
+ * das Logging waehrenddessen nicht steht.
  * @author willuhn
  */
-public class LogrotateTarget implements Target
+public class LogrotateTarget implements BatchTarget, CallerAware
 {
 
   private File file = null;
@@ -43,9 +60,25 @@ public class LogrotateTarget implements Target
   
   private long maxLength = 1L * 1024L * 1024L;
   private boolean zip = true;
+
+  private long interval       = 0L;
+  private int maxArchives     = 0;
+  private long maxArchiveSize = 0L;
+
+  // Anzahl der in die aktuelle Datei geschriebenen Bytes und Zeitpunkt der naechsten Rotation
+  private long written      = 0L;
+  private long nextRotation = 0L;
   
   private final static DateFormat DF = new SimpleDateFormat("yyyyMMdd-HHmm_ss");
-  private final static String lineSep = System.getProperty("line.separator");
+
+  // Ab dieser Groesse wird der Puffer auch innerhalb eines Blocks geschrieben
+  private final static int FLUSH_SIZE = 64 * 1024;
+
+  // Maximale Wartezeit beim Schliessen, bis eine laufende Komprimierung fertig ist
+  private final static long CLOSE_TIMEOUT = 60 * 1000L;
+
+  private LineEncoder encoder = new LineEncoder();
+  private ExecutorService executor = null;
 
   /**
    * ct.
@@ -58,6 +91,7 @@ public class LogrotateTarget implements Target
     this.file = target;
     this.append = append;
     this.os = new FileOutputStream(this.file,this.append);
+    this.written = this.append ? this.file.length() : 0L;
   }
 
   /**
@@ -80,7 +114,64 @@ public class LogrotateTarget implements Target
   {
     this.zip = zip;
   }
+
+  /**
+   * Legt fest, dass das Log-File zusaetzlich nach Ablauf des angegebenen
+   * Zeitintervalls rotiert wird - unabhaengig von seiner Groesse.
+   * Default: 0 (deaktiviert).
+   * @param millis Zeitintervall in Millisekunden.
+   */
+  public synchronized void setInterval(long millis)
+  {
+    this.interval = Math.max(0L,millis);
+    this.nextRotation = this.interval > 0 ? System.currentTimeMillis() + this.interval : 0L;
+  }
+
+  /**
+   * Legt die maximale Anzahl der aufzubewahrenden Archive fest.
+   * Aeltere Archive werden geloescht.
+   * Default: 0 (unbegrenzt).
+   * @param count maximale Anzahl der Archive.
+   */
+  public void setMaxArchives(int count)
+  {
+    this.maxArchives = Math.max(0,count);
+  }
+
+  /**
+   * Legt die maximale Gesamtgroesse aller Archive fest.
+   * Wird sie ueberschritten, werden die aeltesten Archive geloescht.
+   * Default: 0 (unbegrenzt).
+   * @param size maximale Gesamtgroesse in Bytes.
+   */
+  public void setMaxArchiveSize(long size)
+  {
+    this.maxArchiveSize = Math.max(0L,size);
+  }
   
+  /**
+   * Legt das Format fest, in dem die Meldungen geschrieben werden.
+   * Default: das Format von <code>Message#toString()</code>.
+   * @param layout das Layout oder <code>null</code> fuer das Default-Format.
+   */
+  public void setLayout(Layout layout)
+  {
+    synchronized (this)
+    {
+      this.encoder.setLayout(layout);
+    }
+    Logger.targetChanged();
+  }
+
+  /**
+   * Haengt vom Layout ab.
+   * @see de.willuhn.logging.targets.CallerAware#needsCaller()
+   */
+  public boolean needsCaller()
+  {
+    return this.encoder.needsCaller();
+  }
+
   /**
    * @see de.willuhn.logging.targets.Target#write(de.willuhn.logging.Message)
    */
@@ -89,123 +180,283 @@ public class LogrotateTarget implements Target
     if (message == null)
       return;
 
+    write(new Message[]{message},1);
+  }
+
+  /**
+   * @see de.willuhn.logging.targets.BatchTarget#write(de.willuhn.logging.Message[], int)
+   */
+  public synchronized void write(Message[] batch, int count) throws Exception
+  {
     checkRotate();
-    os.write((message.toString() + lineSep).getBytes());
+    try
+    {
+      for (int i=0;i<count;++i)
+      {
+        if (batch[i] == null)
+          continue;
+        
+        encoder.append(batch[i]);
+        if (encoder.size() >= FLUSH_SIZE)
+          flushEncoder();
+      }
+      flushEncoder();
+    }
+    finally
+    {
+      encoder.reset();
+    }
   }
 
   /**
+   * Schreibt den Inhalt des Encoders in die Datei und zaehlt die geschriebenen Bytes.
+   * @throws IOException
+   */
+  private void flushEncoder() throws IOException
+  {
+    this.written += encoder.size();
+    encoder.writeTo(os);
+  }
+
+  /**
+   * Schliesst die Datei. Eine ggf. noch laufende Komprimierung wird
+   * vorher noch abgewartet.
    * @see de.willuhn.logging.targets.Target#close()
    */
   public void close() throws Exception
   {
-    os.close();
+    synchronized (this)
+    {
+      os.close();
+    }
+
+    ExecutorService e = null;
+    synchronized (this)
+    {
+      e = this.executor;
+      this.executor = null;
+    }
+    if (e != null)
+    {
+      e.shutdown();
+      e.awaitTermination(CLOSE_TIMEOUT,TimeUnit.MILLISECONDS);
+    }
   }
   
   /**
-   * Prueft die Dateigroesse und rotiert ggf.
+   * Prueft Dateigroesse und Alter und rotiert ggf.
+   * Die Dateigroesse wird hierbei nicht mehr vom Dateisystem erfragt sondern
+   * anhand der geschriebenen Bytes ermittelt.
+   * Muss innerhalb von synchronized(this) aufgerufen werden.
    * @throws IOException
    */
-  private synchronized void checkRotate() throws IOException
+  private void checkRotate() throws IOException
   {
     if (skipRotate)
       return;
-    
-    synchronized(os)
+
+    boolean bySize = this.written >= this.maxLength;
+    boolean byTime = this.nextRotation > 0 && System.currentTimeMillis() >= this.nextRotation;
+    if (!bySize && !byTime)
+      return;
+
+    if (this.written == 0L)
     {
-      if (this.file.length() < this.maxLength)
-        return;
+      // Leere Datei rotieren wir nicht, wir setzen nur das Intervall neu
+      if (this.interval > 0)
+        this.nextRotation = System.currentTimeMillis() + this.interval;
+      return;
+    }
 
-      Logger.info("rotating log file " + this.file.getAbsolutePath());
+    Logger.info("rotating log file " + this.file.getAbsolutePath());
 
-      Logger.debug("closing old log file");
-      os.close();
+    Logger.debug("closing old log file");
+    os.close();
+
+    File archiveFile = createArchiveFile();
+    try
+    {
+      move(this.file,archiveFile);
+    }
+    catch (IOException e)
+    {
+      Logger.error("unable to rename log file to " + archiveFile.getAbsolutePath() + ", disable rotating",e);
+      skipRotate = true;
+    }
 
-      String name = this.file.getName();
+    Logger.info("creating new log file " + this.file.getName());
+    this.os = new FileOutputStream(this.file,this.append);
+    this.written = this.append ? this.file.length() : 0L;
+    if (this.interval > 0)
+      this.nextRotation = System.currentTimeMillis() + this.interval;
 
-      if (zip)
-      {
-        File archiveFile = new File(this.file.getParent(),name + "-" + DF.format(new Date()) + ".gz");
+    if (!skipRotate)
+      archive(archiveFile);
+    Logger.info("logrotation done");
+  }
 
-        Logger.info("compressing old log file to " + archiveFile.getAbsolutePath());
+  /**
+   * Liefert einen noch nicht existierenden Dateinamen fuer das Archiv.
+   * @return Dateiname fuer das Archiv.
+   */
+  private File createArchiveFile()
+  {
+    File dir = this.file.getAbsoluteFile().getParentFile();
+    String base = null;
+    synchronized (DF)
+    {
+      base = this.file.getName() + "-" + DF.format(new Date());
+    }
+    File f = new File(dir,base);
+    for (int i=1;f.exists() || new File(dir,f.getName() + ".gz").exists();++i)
+      f = new File(dir,base + "-" + i);
+    return f;
+  }
 
-        OutputStream os = null;
-        InputStream is  = null;
-        try
-        {
-          os = new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(archiveFile)));
-          is = new BufferedInputStream(new FileInputStream(this.file));
-          byte[] buf = new byte[4096];
-          int read = 0;
-          do
-          {
-            read = is.read(buf);
-            if (read > 0)
-              os.write(buf,0,read);
-          }
-          while(read != -1);
-          Logger.info("old log file compressed");
-        }
-        catch (Throwable t)
-        {
-          Logger.error("error while rotating logfile, disable rotating",t);
-          skipRotate = true;
-        }
-        finally
+  /**
+   * Benennt die Datei um - wenn moeglich atomar.
+   * @param from bisherige Datei.
+   * @param to neue Datei.
+   * @throws IOException
+   */
+  private static void move(File from, File to) throws IOException
+  {
+    try
+    {
+      Files.move(from.toPath(),to.toPath(),StandardCopyOption.ATOMIC_MOVE);
+    }
+    catch (AtomicMoveNotSupportedException e)
+    {
+      Files.move(from.toPath(),to.toPath());
+    }
+  }
+
+  /**
+   * Uebergibt das rotierte Log-File an den Hintergrund-Thread, welcher es
+   * ggf. komprimiert und anschliessend die alten Archive aufraeumt.
+   * @param archiveFile das rotierte Log-File.
+   */
+  private void archive(final File archiveFile)
+  {
+    if (this.executor == null)
+    {
+      this.executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        public Thread newThread(Runnable r)
         {
-          if (os != null)
-          {
-            try
-            {
-              os.close();
-            }
-            catch (Exception e)
-            {
-              Logger.error("error while closing outputstream, disable rotating");
-              skipRotate = true;
-            }
-          }
-          if (is != null)
-          {
-            try
-            {
-              is.close();
-            }
-            catch (Exception e)
-            {
-              Logger.error("error while closing inputstream, disable rotating");
-              skipRotate = true;
-            }
-          }
+          Thread t = new Thread(r,"Logrotate-Thread [" + file.getName() + "]");
+          t.setDaemon(true);
+          return t;
         }
+      });
+    }
+
+    final boolean zip         = this.zip;
+    final int maxArchives     = this.maxArchives;
+    final long maxArchiveSize = this.maxArchiveSize;
+    this.executor.execute(new Runnable() {
+      public void run()
+      {
+        if (zip)
+          compress(archiveFile);
+        cleanup(maxArchives,maxArchiveSize);
       }
-      else
+    });
+  }
+
+  /**
+   * Komprimiert das rotierte Log-File und loescht anschliessend das Original.
+   * Laeuft im Hintergrund-Thread.
+   * @param source das rotierte Log-File.
+   */
+  private void compress(File source)
+  {
+    File archiveFile = new File(source.getParentFile(),source.getName() + ".gz");
+    Logger.info("compressing old log file to " + archiveFile.getAbsolutePath());
+
+    OutputStream os = null;
+    InputStream is  = null;
+    boolean ok = false;
+    try
+    {
+      os = new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(archiveFile)));
+      is = new BufferedInputStream(new FileInputStream(source));
+      byte[] buf = new byte[64 * 1024];
+      int read = 0;
+      while ((read = is.read(buf)) != -1)
       {
-        File archiveFile = new File(this.file.getParent(),name + "-" + DF.format(new Date()));
-        Logger.info("copying log file to " + archiveFile.getAbsolutePath());
-        try
-        {
-          FileCopy.copy(this.file,archiveFile,true);
-        }
-        catch (FileCopy.FileExistsException e)
-        {
-          Logger.error("unable to copy log file, disable rotating",e);
-          skipRotate = true;
-        }
+        if (read > 0)
+          os.write(buf,0,read);
       }
- 
-      Logger.info("deleting old log file");
-      if (this.file.delete())
+      os.close();
+      os = null;
+      ok = true;
+    }
+    catch (Throwable t)
+    {
+      Logger.error("error while compressing " + source.getAbsolutePath() + ", keeping uncompressed file",t);
+    }
+    finally
+    {
+      IOUtil.close(os,is);
+    }
+
+    if (!ok)
+    {
+      archiveFile.delete();
+      return;
+    }
+
+    if (!source.delete())
+      Logger.warn("unable to delete " + source.getAbsolutePath());
+    Logger.info("old log file compressed");
+  }
+
+  /**
+   * Loescht die aeltesten Archive, bis Anzahl und Gesamtgroesse wieder in den Grenzen liegen.
+   * Laeuft im Hintergrund-Thread.
+   * @param maxArchives maximale Anzahl der Archive oder 0.
+   * @param maxArchiveSize maximale Gesamtgroesse der Archive oder 0.
+   */
+  private void cleanup(int maxArchives, long maxArchiveSize)
+  {
+    if (maxArchives <= 0 && maxArchiveSize <= 0)
+      return;
+
+    // Nur die Namen, die createArchiveFile() erzeugt: <name>-yyyyMMdd-HHmm_ss[-N][.gz]
+    // Andere Dateien im Verzeichnis (z.Bsp. "app.log-old") bleiben unangetastet.
+    final Pattern pattern = Pattern.compile(Pattern.quote(this.file.getName()) + "-\\d{8}-\\d{4}_\\d{2}(-\\d+)?(\\.gz)?");
+    File dir = this.file.getAbsoluteFile().getParentFile();
+    File[] archives = dir.listFiles(new FileFilter() {
+      public boolean accept(File f)
       {
-        Logger.info("creating new log file " + name);
-        this.file = new File(this.file.getParent(),name);
+        return f.isFile() && pattern.matcher(f.getName()).matches();
       }
-      else
+    });
+    if (archives == null || archives.length == 0)
+      return;
+
+    // Neueste zuerst
+    Arrays.sort(archives,new Comparator<File>() {
+      public int compare(File f1, File f2)
       {
-        Logger.error("unable to delete old log file " + name + ", disable rotating");
-        skipRotate = true;
+        long l1 = f1.lastModified();
+        long l2 = f2.lastModified();
+        return l1 == l2 ? f2.getName().compareTo(f1.getName()) : (l1 > l2 ? -1 : 1);
       }
-      this.os = new FileOutputStream(this.file,this.append);
-      Logger.info("logrotation done");
+    });
+
+    long size = 0L;
+    for (int i=0;i<archives.length;++i)
+    {
+      size += archives[i].length();
+      boolean tooMany  = maxArchives > 0 && i >= maxArchives;
+      boolean tooLarge = maxArchiveSize > 0 && size > maxArchiveSize;
+      if (!tooMany && !tooLarge)
+        continue;
+
+      Logger.info("deleting old log archive " + archives[i].getAbsolutePath());
+      if (!archives[i].delete())
+        Logger.warn("unable to delete " + archives[i].getAbsolutePath());
     }
   }
 }
@@ -12,16 +12,25 @@ package de.willuhn.logging.targets;
 
 import java.io.OutputStream;
 
+import de.willuhn.logging.LineEncoder;
+import de.willuhn.logging.Logger;
 import de.willuhn.logging.Message;
+import de.willuhn.logging.layout.Layout;
 
 /**
  * Target, welches in einen OutputStream schreibt.
+ * Die Nachrichten eines Blocks werden gesammelt und mit einem einzelnen
+ * Aufruf von <code>OutputStream#write</code> geschrieben.
  */
-public class OutputStreamTarget implements Target
+public class OutputStreamTarget implements BatchTarget, CallerAware
 {
 
 	private OutputStream os = null;
-  private final static String lineSep = System.getProperty("line.separator");
+
+  // Ab dieser Groesse wird der Puffer auch innerhalb eines Blocks geschrieben
+  private final static int FLUSH_SIZE = 64 * 1024;
+
+  private LineEncoder encoder = new LineEncoder();
 
   /**
    * ct.
@@ -32,6 +41,29 @@ public class OutputStreamTarget implements Target
   	this.os = os;
   }
 
+  /**
+   * Legt das Format fest, in dem die Meldungen geschrieben werden.
+   * Default: das Format von <code>Message#toString()</code>.
+   * @param layout das Layout oder <code>null</code> fuer das Default-Format.
+   */
+  public void setLayout(Layout layout)
+  {
+    synchronized (this)
+    {
+      this.encoder.setLayout(layout);
+    }
+    Logger.targetChanged();
+  }
+
+  /**
+   * Haengt vom Layout ab.
+   * @see de.willuhn.logging.targets.CallerAware#needsCaller()
+   */
+  public boolean needsCaller()
+  {
+    return this.encoder.needsCaller();
+  }
+
   /**
    * @see de.willuhn.logging.targets.Target#write(de.willuhn.logging.Message)
    */
@@ -40,7 +72,31 @@ public class OutputStreamTarget implements Target
   	if (message == null)
   		return;
   	
-		os.write((message.toString() + lineSep).getBytes());
+		write(new Message[]{message},1);
+  }
+
+  /**
+   * @see de.willuhn.logging.targets.BatchTarget#write(de.willuhn.logging.Message[], int)
+   */
+  public synchronized void write(Message[] batch, int count) throws Exception
+  {
+    try
+    {
+      for (int i=0;i<count;++i)
+      {
+        if (batch[i] == null)
+          continue;
+        
+        encoder.append(batch[i]);
+        if (encoder.size() >= FLUSH_SIZE)
+          encoder.writeTo(os);
+      }
+      encoder.writeTo(os);
+    }
+    finally
+    {
+      encoder.reset();
+    }
   }
 
   /**
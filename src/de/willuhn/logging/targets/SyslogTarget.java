@@ -10,22 +10,65 @@
  **********************************************************************/
 package de.willuhn.logging.targets;
 
+import java.io.IOException;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
 
+import de.willuhn.io.IOUtil;
+import de.willuhn.logging.LineEncoder;
 import de.willuhn.logging.Logger;
 import de.willuhn.logging.Message;
+import de.willuhn.logging.layout.SyslogLayout;
 
 /**
  * Target, welches an einen Syslog-Server loggen kann.
+ * Die Meldungen werden per {@link SyslogLayout} nach RFC 3164 (Default) oder
+ * RFC 5424 formatiert. Per UDP wird jede Meldung als eigenes Paket gesendet
+ * (Pakete ueber 64KB werden abgeschnitten), Puffer und DatagramPacket werden
+ * dabei wiederverwendet. Per TCP werden die Meldungen nach RFC 6587 mit
+ * vorangestellter Laenge ("octet counting") gesendet und ein ganzer Block
+ * in einem Puffer gesammelt, bevor er geschrieben wird. Bricht die Verbindung
+ * ab, wird sie beim naechsten Schreiben neu aufgebaut.
+ * Der Verbindungsaufbau wartet maximal {@link #setConnectTimeout(int)} Millisekunden.
+ * Da das Target im Logger-Thread laeuft, haelt ein nicht erreichbarer Server
+ * trotzdem fuer diese Zeit alle anderen Targets auf. Per TCP sollte es daher
+ * in ein {@link de.willuhn.logging.AsyncTarget} verpackt werden:
+ * <pre>
+ * Logger.addTarget(new AsyncTarget(new SyslogTarget("loghost",514,true)));
+ * </pre>
  */
-public class SyslogTarget implements Target
+public class SyslogTarget implements BatchTarget, CallerAware
 {
+  // Maximale Nutzlast eines UDP-Pakets
+  private final static int MAX_DATAGRAM = 65507;
+
+  // Groesse des Sendepuffers bei TCP
+  private final static int BUFFER_SIZE = 64 * 1024;
+
+  // Wartezeit zwischen zwei Verbindungsversuchen bei TCP
+  private final static long RECONNECT_DELAY = 5 * 1000L;
+
+  // Default-Wartezeit beim Verbindungsaufbau per TCP
+  private final static int CONNECT_TIMEOUT = 2 * 1000;
 
 	private int port 								= 514;
 	private InetAddress targetHost 	= null;
 	private DatagramSocket socket 	= null;
+  private DatagramPacket packet   = null;
+
+  private boolean tcp             = false;
+  private SocketChannel channel   = null;
+  private long nextConnect        = 0L;
+  private int connectTimeout      = CONNECT_TIMEOUT;
+
+  private SyslogLayout layout     = null;
+  private LineEncoder frame        = null;
+  private ByteBuffer buffer       = null;
 
 	/**
 	 * ct.
@@ -47,6 +90,19 @@ public class SyslogTarget implements Target
    * @throws Exception
    */
   public SyslogTarget(String hostname, int port) throws Exception
+  {
+    this(hostname,port,false);
+  }
+
+  /**
+   * ct.
+   * @param hostname Hostname des Servers, auf dem der Syslog-Server laeuft.
+   * Ist dieser nicht angegeben, wird an Localhost geloggt.
+   * @param port Port, an den gesendet werden soll.
+   * @param tcp true, wenn per TCP statt UDP gesendet werden soll.
+   * @throws Exception
+   */
+  public SyslogTarget(String hostname, int port, boolean tcp) throws Exception
   {
 		try
 		{
@@ -58,7 +114,71 @@ public class SyslogTarget implements Target
 			targetHost = InetAddress.getByName("localhost");
 		}
 		this.port = port;
-		this.socket = new DatagramSocket();
+    this.tcp  = tcp;
+
+    String localhost = null;
+    try
+    {
+      localhost = InetAddress.getLocalHost().getHostName();
+    }
+    catch (Exception e)
+    {
+      // dann eben ohne
+    }
+    this.layout = new SyslogLayout(localhost);
+    this.frame  = new LineEncoder(StandardCharsets.UTF_8,"",1024,false);
+    this.frame.setLayout(this.layout);
+
+    if (tcp)
+    {
+      this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    }
+    else
+    {
+      this.buffer = ByteBuffer.allocate(MAX_DATAGRAM);
+      this.packet = new DatagramPacket(this.buffer.array(),0,this.targetHost,this.port);
+      this.socket = new DatagramSocket();
+    }
+  }
+
+  /**
+   * Legt das Format fest.
+   * Default: RFC 3164.
+   * @param format das Format.
+   */
+  public synchronized void setFormat(SyslogLayout.Format format)
+  {
+    this.layout.setFormat(format);
+  }
+
+  /**
+   * Legt die Facility fest (0 bis 23).
+   * Default: {@link SyslogLayout#FACILITY_USER}.
+   * @param facility die Facility.
+   */
+  public synchronized void setFacility(int facility)
+  {
+    this.layout.setFacility(facility);
+  }
+
+  /**
+   * Legt den Namen der Anwendung fest.
+   * Default: "java".
+   * @param name Name der Anwendung.
+   */
+  public synchronized void setAppName(String name)
+  {
+    this.layout.setAppName(name);
+  }
+
+  /**
+   * Legt fest, wie lange beim Verbindungsaufbau per TCP maximal gewartet wird.
+   * Default: 2 Sekunden.
+   * @param millis Wartezeit in Millisekunden. 0 wartet ohne Limit.
+   */
+  public synchronized void setConnectTimeout(int millis)
+  {
+    this.connectTimeout = Math.max(0,millis);
   }
 
   /**
@@ -68,19 +188,190 @@ public class SyslogTarget implements Target
   {
   	if (message == null)
   		return;
-		String s = "[" + message.getLevel().getName() + "] " + message.getText();
-  	byte[] data = s.getBytes();
-
-		DatagramPacket packet = new DatagramPacket(data, data.length, targetHost, port);
-		socket.send(packet);
+    write(new Message[]{message},1);
 	}
 
+  /**
+   * @see de.willuhn.logging.targets.BatchTarget#write(de.willuhn.logging.Message[], int)
+   */
+  public synchronized void write(Message[] batch, int count) throws Exception
+  {
+    if (this.tcp)
+    {
+      writeTcp(batch,count);
+      return;
+    }
+
+    // Syslog via UDP kennt nur eine Nachricht pro Paket.
+    for (int i=0;i<count;++i)
+    {
+      if (batch[i] == null)
+        continue;
+      this.frame.append(batch[i]);
+      this.buffer.clear();
+      this.packet.setLength(this.frame.writeTo(this.buffer));
+      this.socket.send(this.packet);
+    }
+  }
+
+  /**
+   * Sendet die Meldungen per TCP. Jeder Meldung wird ihre Laenge vorangestellt.
+   * @param batch die Meldungen.
+   * @param count Anzahl der Meldungen.
+   * @throws IOException
+   */
+  private void writeTcp(Message[] batch, int count) throws IOException
+  {
+    try
+    {
+      for (int i=0;i<count;++i)
+      {
+        if (batch[i] == null)
+          continue;
+
+        this.frame.append(batch[i]);
+        int len = this.frame.size();
+        if (this.buffer.remaining() < len + 12)
+          send();
+
+        putLength(len);
+        if (this.buffer.remaining() >= len)
+        {
+          this.frame.writeTo(this.buffer);
+        }
+        else
+        {
+          // passt nicht in den Puffer, dann direkt hinterher
+          send();
+          this.frame.writeTo(connect());
+        }
+      }
+      send();
+    }
+    catch (IOException e)
+    {
+      disconnect();
+      throw e;
+    }
+    finally
+    {
+      this.frame.reset();
+      this.buffer.clear();
+    }
+  }
+
+  /**
+   * Schreibt die Laenge gefolgt von einem Leerzeichen in den Puffer.
+   * @param len die Laenge.
+   */
+  private void putLength(int len)
+  {
+    int div = 1;
+    while (div <= len / 10)
+      div *= 10;
+    for (;div > 0;div /= 10)
+      this.buffer.put((byte) ('0' + (len / div) % 10));
+    this.buffer.put((byte) ' ');
+  }
+
+  /**
+   * Sendet den Inhalt des Puffers per TCP.
+   * Schlaegt das Senden fehl, wird die Verbindung einmal neu aufgebaut und
+   * der Puffer erneut gesendet.
+   * @throws IOException
+   */
+  private void send() throws IOException
+  {
+    if (this.buffer.position() == 0)
+      return;
+
+    this.buffer.flip();
+    try
+    {
+      SocketChannel c = connect();
+      try
+      {
+        while (this.buffer.hasRemaining())
+          c.write(this.buffer);
+      }
+      catch (IOException e)
+      {
+        // Verbindung vom Server geschlossen? Dann einmal neu versuchen.
+        // Wurde ein Teil schon gesendet, fangen wir mit der unvollstaendigen Meldung
+        // nicht von vorn an, der Server wuerde sonst den Rest als Muell empfangen.
+        if (this.buffer.position() != 0)
+          throw e;
+        disconnect();
+        this.nextConnect = 0L;
+        c = connect();
+        while (this.buffer.hasRemaining())
+          c.write(this.buffer);
+      }
+    }
+    finally
+    {
+      this.buffer.clear();
+    }
+  }
+
+  /**
+   * Liefert die TCP-Verbindung und baut sie bei Bedarf auf.
+   * Nach einem fehlgeschlagenen Versuch wird erst nach einer Wartezeit erneut versucht.
+   * @return die Verbindung.
+   * @throws IOException
+   */
+  private SocketChannel connect() throws IOException
+  {
+    if (this.channel != null && this.channel.isOpen())
+      return this.channel;
+
+    long now = System.currentTimeMillis();
+    if (now < this.nextConnect)
+      throw new IOException("syslog server " + this.targetHost + ":" + this.port + " not reachable, retrying later");
+
+    this.nextConnect = now + RECONNECT_DELAY;
+    SocketChannel c = SocketChannel.open();
+    try
+    {
+      c.socket().connect(new InetSocketAddress(this.targetHost,this.port),this.connectTimeout);
+      c.socket().setTcpNoDelay(false);
+    }
+    catch (IOException e)
+    {
+      IOUtil.close(c);
+      throw e;
+    }
+    this.channel = c;
+    this.nextConnect = 0L;
+    return this.channel;
+  }
+
+  /**
+   * Schliesst die TCP-Verbindung.
+   */
+  private void disconnect()
+  {
+    IOUtil.close(this.channel);
+    this.channel = null;
+  }
+
+  /**
+   * Wir senden weder Klasse noch Methode.
+   * @see de.willuhn.logging.targets.CallerAware#needsCaller()
+   */
+  public boolean needsCaller()
+  {
+    return false;
+  }
+
   /**
    * @see de.willuhn.logging.targets.Target#close()
    */
-  public void close() throws Exception
+  public synchronized void close() throws Exception
   {
-  	socket.close();
+    if (this.socket != null)
+  	  this.socket.close();
+    disconnect();
   }
 
 }
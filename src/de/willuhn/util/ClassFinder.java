@@ -133,14 +133,14 @@ public class ClassFinder
 		if (ranking.size() == 0)
 		{
 			// Mift, ueberhaupt nix gefunden
-			Logger.debug("...no implementor found for " + interphase.getName());
+			Logger.debug("...no implementor found for {}",interphase.getName());
 			throw new ClassNotFoundException("no implementor found for " + interphase.getName());
 		}
 
 		// ok, wir haben was. Das tun wir in den Cache als Array von Class-Objekten
 		Class[] classes = (Class[]) ranking.toArray(new Class[ranking.size()]);
 		cache.put(interphase,classes);
-		Logger.debug("used time to search for implementors of " + interphase.getName() + ": " + (System.currentTimeMillis() - start) + " millis]");
+		Logger.debug("used time to search for implementors of {}: {} millis]",interphase.getName(),System.currentTimeMillis() - start);
 		return classes;
 
 	}
@@ -0,0 +1,90 @@
+/**********************************************************************
+ *
+ * Copyright (c) 2004 Olaf Willuhn
+ * All rights reserved.
+ * 
+ * This software is copyrighted work licensed under the terms of the
+ * GNU LESSER GENERAL PUBLIC LICENSE 2.1.
+ * Please consult the file "LICENSE" for details. 
+ *
+ **********************************************************************/
+
+package de.willuhn.util;
+
+/**
+ * History fuer <code>double</code>-Werte, z.Bsp. als gleitendes Fenster fuer Messwerte.
+ * Die Werte werden ohne Boxing als Bit-Muster gespeichert.
+ * @see History
+ */
+public class DoubleHistory extends PrimitiveHistory
+{
+  /**
+   * ct.
+   * @param capacity maximale Anzahl der Werte. Sie wird auf den Bereich von
+   * {@link Queue#CAPACITY_MIN} bis {@link Queue#CAPACITY_MAX} begrenzt.
+   */
+  public DoubleHistory(int capacity)
+  {
+    super(capacity,true);
+  }
+
+  /**
+   * Fuegt einen Wert hinzu. Ist die History voll, wird der aelteste Wert ueberschrieben.
+   * @param value der Wert.
+   */
+  public void push(double value)
+  {
+    add(Double.doubleToRawLongBits(value));
+  }
+
+  /**
+   * Liefert den zuletzt hinzugefuegten Wert.
+   * @return der Wert.
+   * @throws ArrayIndexOutOfBoundsException wenn die History leer ist.
+   */
+  public double last()
+  {
+    return Double.longBitsToDouble(latest());
+  }
+
+  /**
+   * Liefert die Werte in der Reihenfolge des Hinzufuegens.
+   * Es wird nur eine Kopie ausgegeben.
+   * @return Array mit den Werten.
+   */
+  public double[] toArray()
+  {
+    long[] values = snapshot();
+    double[] result = new double[values.length];
+    for (int i=0;i<values.length;++i)
+      result[i] = Double.longBitsToDouble(values[i]);
+    return result;
+  }
+
+  /**
+   * Liefert die Summe der Werte.
+   * @return Summe.
+   */
+  public double sum()
+  {
+    return Double.longBitsToDouble(aggregate(SUM));
+  }
+
+  /**
+   * Liefert den kleinsten Wert.
+   * @return kleinster Wert oder <code>Double.NaN</code>, wenn die History leer ist.
+   */
+  public double min()
+  {
+    return Double.longBitsToDouble(aggregate(MIN));
+  }
+
+  /**
+   * Liefert den groessten Wert.
+   * @return groesster Wert oder <code>Double.NaN</code>, wenn die History leer ist.
+   */
+  public double max()
+  {
+    return Double.longBitsToDouble(aggregate(MAX));
+  }
+}
@@ -11,12 +11,47 @@
 
 package de.willuhn.util;
 
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
 /**
  * Bildet eine History ab, die immer eine definierte Anzahl der letzten
  * Elemente enthaelt.
+ * Die Elemente liegen in einem Ringpuffer fester Groesse. Hinzufuegen kommt
+ * ohne Lock aus: Die Position wird ueber einen atomaren Zaehler vergeben, den
+ * Slot reserviert der Schreiber per CAS. Wird ein Schreiber von einem um eine
+ * komplette Runde neueren ueberholt, verwirft er sein Element, da es ohnehin
+ * ueberschrieben worden waere. Jeder Slot traegt zusaetzlich die laufende Nummer des
+ * Elements, das er enthaelt. Lesende Zugriffe erkennen daran Slots, die
+ * waehrend des Lesens ueberschrieben wurden, und liefern so immer eine
+ * konsistente Folge in der Reihenfolge des Hinzufuegens.
+ * Da eine History nie voll ist, kehren <code>offer</code> und <code>put</code>
+ * immer sofort zurueck. Die blockierenden Lese-Methoden pruefen mangels
+ * Lock in kurzen Abstaenden, ob ein Element vorliegt.
+ * @param <T> Typ der Elemente.
  */
-public class History extends Queue
+public class History<T> extends Queue<T>
 {
+  // Markiert einen Slot, der gerade beschrieben wird
+  private final static long WRITING = -1L;
+
+  // Markiert einen Slot, der noch nie beschrieben wurde
+  private final static long EMPTY   = -2L;
+
+  // Wartezeit der blockierenden Lese-Methoden zwischen zwei Versuchen
+  private final static long POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(1L);
+
+  private final AtomicReferenceArray<T> slots;
+  private final AtomicLongArray sequences;
+
+  private final AtomicLong tail = new AtomicLong(0L); // Anzahl der bisher hinzugefuegten Elemente
+  private final AtomicLong head = new AtomicLong(0L); // Anzahl der per pop() entnommenen Elemente
 
   /**
    * ct.
@@ -24,23 +59,242 @@ public class History extends Queue
    */
   public History(int capacity)
   {
-    super(capacity);
+    super(capacity,false);
+    this.slots     = new AtomicReferenceArray<T>(this.capacity);
+    this.sequences = new AtomicLongArray(this.capacity);
+    for (int i=0;i<this.capacity;++i)
+      this.sequences.set(i,EMPTY);
   }
 
   /**
+   * Fuegt ein Element hinzu. Ist die History voll, wird das aelteste Element ueberschrieben.
    * @see de.willuhn.util.Queue#push(java.lang.Object)
    */
-  public synchronized void push(Object o)
+  public void push(T o)
+  {
+    long seq = this.tail.getAndIncrement();
+    int idx  = (int) (seq % this.capacity);
+    while (true)
+    {
+      long current = this.sequences.get(idx);
+      if (current > seq)
+        return; // Ein neueres Element ist schon im Slot, unseres waere ohnehin ueberschrieben worden
+      if (current == WRITING)
+        Thread.yield(); // Ein anderer Schreiber ist gerade in diesem Slot
+      else if (this.sequences.compareAndSet(idx,current,WRITING))
+        break;
+    }
+    this.slots.set(idx,o);
+    this.sequences.set(idx,seq); // erst jetzt ist das Element fuer Leser sichtbar
+  }
+
+  /**
+   * Fuegt ein Element hinzu. Ist die History voll, wird das aelteste Element ueberschrieben.
+   * @see de.willuhn.util.Queue#offer(java.lang.Object)
+   */
+  public boolean offer(T o)
+  {
+    push(o);
+    return true;
+  }
+
+  /**
+   * Fuegt ein Element hinzu, ohne zu warten.
+   * @see de.willuhn.util.Queue#offer(java.lang.Object, long, java.util.concurrent.TimeUnit)
+   */
+  public boolean offer(T o, long timeout, TimeUnit unit)
+  {
+    push(o);
+    return true;
+  }
+
+  /**
+   * Fuegt ein Element hinzu, ohne zu warten.
+   * @see de.willuhn.util.Queue#put(java.lang.Object)
+   */
+  public void put(T o)
+  {
+    push(o);
+  }
+
+  /**
+   * Liest das Element mit der angegebenen laufenden Nummer.
+   * @param seq laufende Nummer.
+   * @param result Array, in dem das Element an Position 0 abgelegt wird.
+   * @return true, wenn das Element gelesen werden konnte. false, wenn es gerade
+   * geschrieben oder bereits ueberschrieben wurde.
+   */
+  private boolean read(long seq, Object[] result)
+  {
+    int idx = (int) (seq % this.capacity);
+    if (this.sequences.get(idx) != seq)
+      return false;
+    result[0] = this.slots.get(idx);
+    return this.sequences.get(idx) == seq;
+  }
+
+  /**
+   * Entfernt das aelteste Element und liefert es zurueck.
+   * @see de.willuhn.util.Queue#pop()
+   */
+  @SuppressWarnings("unchecked")
+  public T pop()
+  {
+    Object[] result = new Object[1];
+    while (true)
+    {
+      long end   = this.tail.get();
+      long h     = this.head.get();
+      long start = Math.max(h,end - this.capacity);
+      if (start >= end)
+        throw new ArrayIndexOutOfBoundsException("history is empty");
+
+      if (!read(start,result))
+      {
+        // Wurde der Slot inzwischen ueberschrieben, versuchen wir es mit dem naechsten.
+        // Wird er noch geschrieben, warten wir kurz auf den anderen Thread.
+        if (start < this.tail.get() - this.capacity)
+          this.head.compareAndSet(h,start + 1);
+        else
+          Thread.yield();
+        continue;
+      }
+      if (this.head.compareAndSet(h,start + 1))
+        return (T) result[0];
+    }
+  }
+
+  /**
+   * @see de.willuhn.util.Queue#poll()
+   */
+  public T poll()
   {
-  	if (full())
-  		pop();
     try
     {
-      super.push(o);
+      return pop();
+    }
+    catch (ArrayIndexOutOfBoundsException e)
+    {
+      return null;
+    }
+  }
+
+  /**
+   * @see de.willuhn.util.Queue#poll(long, java.util.concurrent.TimeUnit)
+   */
+  public T poll(long timeout, TimeUnit unit) throws InterruptedException
+  {
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    while (true)
+    {
+      if (Thread.interrupted())
+        throw new InterruptedException();
+      T o = poll();
+      if (o != null)
+        return o;
+      long remaining = deadline - System.nanoTime();
+      if (remaining <= 0L)
+        return null;
+      LockSupport.parkNanos(Math.min(remaining,POLL_NANOS));
+    }
+  }
+
+  /**
+   * @see de.willuhn.util.Queue#take()
+   */
+  public T take() throws InterruptedException
+  {
+    while (true)
+    {
+      if (Thread.interrupted())
+        throw new InterruptedException();
+      T o = poll();
+      if (o != null)
+        return o;
+      LockSupport.parkNanos(POLL_NANOS);
+    }
+  }
+
+  /**
+   * @see de.willuhn.util.Queue#drainTo(java.util.Collection, int)
+   */
+  public int drainTo(Collection<? super T> c, int max)
+  {
+    int count = 0;
+    T o = null;
+    while (count < max && (o = poll()) != null)
+    {
+      c.add(o);
+      count++;
+    }
+    return count;
+  }
+
+  /**
+   * @see de.willuhn.util.Queue#size()
+   */
+  public int size()
+  {
+    long end = this.tail.get();
+    return (int) Math.max(0L,end - Math.max(this.head.get(),end - this.capacity));
+  }
+
+  /**
+   * @see de.willuhn.util.Queue#full()
+   */
+  public boolean full()
+  {
+    return size() >= this.capacity;
+  }
+
+  /**
+   * Liefert einen konsistenten Schnappschuss der Elemente in der Reihenfolge
+   * des Hinzufuegens. Elemente, die waehrend des Lesens ueberschrieben wurden,
+   * fehlen darin - es werden also nie neuere Elemente an der Position aelterer geliefert.
+   * @return Schnappschuss.
+   */
+  private Object[] snapshot()
+  {
+    long end   = this.tail.get();
+    long start = Math.max(this.head.get(),end - this.capacity);
+    if (start >= end)
+      return new Object[0];
+
+    Object[] result = new Object[(int) (end - start)];
+    Object[] tmp = new Object[1];
+    int count = 0;
+    for (long seq=start;seq<end;++seq)
+    {
+      if (read(seq,tmp))
+        result[count++] = tmp[0];
     }
-    catch (QueueFullException e){}
+    return count == result.length ? result : Arrays.copyOf(result,count);
   }
 
+  /**
+   * @see de.willuhn.util.Queue#elements()
+   */
+  @SuppressWarnings("unchecked")
+  public List<T> elements()
+  {
+    return (List<T>) Arrays.asList(snapshot());
+  }
+
+  /**
+   * @see de.willuhn.util.Queue#toArray(java.lang.Object[])
+   */
+  @SuppressWarnings("unchecked")
+  public <A> A[] toArray(A[] type)
+  {
+    Object[] snapshot = snapshot();
+    if (type.length < snapshot.length)
+      return (A[]) Arrays.copyOf(snapshot,snapshot.length,type.getClass());
+
+    System.arraycopy(snapshot,0,type,0,snapshot.length);
+    if (type.length > snapshot.length)
+      type[snapshot.length] = null;
+    return type;
+  }
 }
 
 
@@ -49,4 +303,4 @@ public class History extends Queue
  * Revision 1.1  2004/01/08 21:38:39  willuhn
  * *** empty log message ***
  *
- **********************************************************************/
\ No newline at end of file
+ **********************************************************************/
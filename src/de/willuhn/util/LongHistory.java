@@ -0,0 +1,86 @@
+/**********************************************************************
+ *
+ * Copyright (c) 2004 Olaf Willuhn
+ * All rights reserved.
+ * 
+ * This software is copyrighted work licensed under the terms of the
+ * GNU LESSER GENERAL PUBLIC LICENSE 2.1.
+ * Please consult the file "LICENSE" for details. 
+ *
+ **********************************************************************/
+
+package de.willuhn.util;
+
+/**
+ * History fuer <code>long</code>-Werte, z.Bsp. als gleitendes Fenster fuer Messwerte.
+ * Die Werte werden ohne Boxing gespeichert.
+ * @see History
+ */
+public class LongHistory extends PrimitiveHistory
+{
+  /**
+   * ct.
+   * @param capacity maximale Anzahl der Werte. Sie wird auf den Bereich von
+   * {@link Queue#CAPACITY_MIN} bis {@link Queue#CAPACITY_MAX} begrenzt.
+   */
+  public LongHistory(int capacity)
+  {
+    super(capacity,false);
+  }
+
+  /**
+   * Fuegt einen Wert hinzu. Ist die History voll, wird der aelteste Wert ueberschrieben.
+   * @param value der Wert.
+   */
+  public void push(long value)
+  {
+    add(value);
+  }
+
+  /**
+   * Liefert den zuletzt hinzugefuegten Wert.
+   * @return der Wert.
+   * @throws ArrayIndexOutOfBoundsException wenn die History leer ist.
+   */
+  public long last()
+  {
+    return latest();
+  }
+
+  /**
+   * Liefert die Werte in der Reihenfolge des Hinzufuegens.
+   * Es wird nur eine Kopie ausgegeben.
+   * @return Array mit den Werten.
+   */
+  public long[] toArray()
+  {
+    return snapshot();
+  }
+
+  /**
+   * Liefert die Summe der Werte.
+   * @return Summe.
+   */
+  public long sum()
+  {
+    return aggregate(SUM);
+  }
+
+  /**
+   * Liefert den kleinsten Wert.
+   * @return kleinster Wert oder 0, wenn die History leer ist.
+   */
+  public long min()
+  {
+    return aggregate(MIN);
+  }
+
+  /**
+   * Liefert den groessten Wert.
+   * @return groesster Wert oder 0, wenn die History leer ist.
+   */
+  public long max()
+  {
+    return aggregate(MAX);
+  }
+}
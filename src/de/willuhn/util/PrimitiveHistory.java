@@ -0,0 +1,241 @@
+/**********************************************************************
+ *
+ * Copyright (c) 2004 Olaf Willuhn
+ * All rights reserved.
+ * 
+ * This software is copyrighted work licensed under the terms of the
+ * GNU LESSER GENERAL PUBLIC LICENSE 2.1.
+ * Please consult the file "LICENSE" for details. 
+ *
+ **********************************************************************/
+
+package de.willuhn.util;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Gemeinsame Basis von {@link LongHistory}, {@link IntHistory} und {@link DoubleHistory}.
+ * Funktioniert wie {@link History}, die Werte werden jedoch als <code>long</code>
+ * in einem Array primitiver Typen gespeichert, sodass beim Hinzufuegen keine
+ * Objekte erzeugt werden. Die abgeleiteten Klassen uebernehmen die Umwandlung
+ * von und nach ihrem jeweiligen Typ. Die Auswertungen (Summe, Minimum, Maximum,
+ * Mittelwert) laufen direkt ueber die Slots, ohne einen Schnappschuss anzulegen.
+ * Eigene Ableitungen ausserhalb dieses Packages sind nicht vorgesehen.
+ */
+public abstract class PrimitiveHistory
+{
+  // Markiert einen Slot, der gerade beschrieben wird
+  private final static long WRITING = -1L;
+
+  // Markiert einen Slot, der noch nie beschrieben wurde
+  private final static long EMPTY   = -2L;
+
+  // Auswertungen fuer aggregate()
+  final static int SUM     = 0;
+  final static int MIN     = 1;
+  final static int MAX     = 2;
+  final static int AVERAGE = 3;
+
+  private final boolean floating;
+  private final int capacity;
+  private final AtomicLongArray values;
+  private final AtomicLongArray sequences;
+
+  private final AtomicLong tail = new AtomicLong(0L); // Anzahl der bisher hinzugefuegten Werte
+
+  /**
+   * ct.
+   * @param capacity maximale Anzahl der Werte.
+   * Werte unterhalb von {@link Queue#CAPACITY_MIN} werden auf diesen angehoben,
+   * Werte oberhalb von {@link Queue#CAPACITY_MAX} auf diesen begrenzt.
+   * @param floating true, wenn die Werte das Bit-Muster eines <code>double</code> enthalten.
+   */
+  PrimitiveHistory(int capacity, boolean floating)
+  {
+    this.floating  = floating;
+    this.capacity  = Math.min(Math.max(capacity,Queue.CAPACITY_MIN),Queue.CAPACITY_MAX);
+    this.values    = new AtomicLongArray(this.capacity);
+    this.sequences = new AtomicLongArray(this.capacity);
+    for (int i=0;i<this.capacity;++i)
+      this.sequences.set(i,EMPTY);
+  }
+
+  /**
+   * Fuegt einen Wert hinzu. Ist die History voll, wird der aelteste Wert ueberschrieben.
+   * @param value der Wert.
+   */
+  final void add(long value)
+  {
+    long seq = this.tail.getAndIncrement();
+    int idx  = (int) (seq % this.capacity);
+    while (true)
+    {
+      long current = this.sequences.get(idx);
+      if (current > seq)
+        return; // Ein neuerer Wert ist schon im Slot, unserer waere ohnehin ueberschrieben worden
+      if (current == WRITING)
+        Thread.yield(); // Ein anderer Schreiber ist gerade in diesem Slot
+      else if (this.sequences.compareAndSet(idx,current,WRITING))
+        break;
+    }
+    this.values.set(idx,value);
+    this.sequences.set(idx,seq); // erst jetzt ist der Wert fuer Leser sichtbar
+  }
+
+  /**
+   * Liefert den zuletzt hinzugefuegten Wert.
+   * @return der Wert.
+   * @throws ArrayIndexOutOfBoundsException wenn die History leer ist.
+   */
+  final long latest()
+  {
+    while (true)
+    {
+      long seq = this.tail.get() - 1;
+      if (seq < 0)
+        throw new ArrayIndexOutOfBoundsException("history is empty");
+      int idx = (int) (seq % this.capacity);
+      long current = this.sequences.get(idx);
+      if (current == seq)
+      {
+        long value = this.values.get(idx);
+        if (this.sequences.get(idx) == seq)
+          return value;
+      }
+      else if (current > seq)
+        continue; // Schon ueberschrieben, es gibt also einen neueren Wert
+
+      // Wird gerade geschrieben
+      Thread.yield();
+    }
+  }
+
+  /**
+   * Wertet die aktuellen Werte aus, ohne sie zu kopieren.
+   * Werte, die waehrend des Lesens ueberschrieben werden, fehlen darin.
+   * @param op die Auswertung: {@link #SUM}, {@link #MIN}, {@link #MAX} oder {@link #AVERAGE}.
+   * @return das Ergebnis im Format der Werte, der Mittelwert immer als Bit-Muster eines <code>double</code>.
+   * Bei leerer History ist die Summe 0. Minimum und Maximum sind 0 bzw. <code>Double.NaN</code>
+   * und der Mittelwert <code>Double.NaN</code>.
+   */
+  final long aggregate(int op)
+  {
+    long end   = this.tail.get();
+    long start = Math.max(0L,end - this.capacity);
+
+    int count  = 0;
+    long lsum  = 0L;
+    long lmin  = Long.MAX_VALUE;
+    long lmax  = Long.MIN_VALUE;
+    double dsum = 0d;
+    double dmin = Double.POSITIVE_INFINITY;
+    double dmax = Double.NEGATIVE_INFINITY;
+
+    for (long seq=start;seq<end;++seq)
+    {
+      int idx = (int) (seq % this.capacity);
+      if (this.sequences.get(idx) != seq)
+        continue;
+      long value = this.values.get(idx);
+      if (this.sequences.get(idx) != seq)
+        continue;
+
+      count++;
+      if (this.floating)
+      {
+        double d = Double.longBitsToDouble(value);
+        dsum += d;
+        dmin = Math.min(dmin,d);
+        dmax = Math.max(dmax,d);
+      }
+      else
+      {
+        lsum += value;
+        lmin = Math.min(lmin,value);
+        lmax = Math.max(lmax,value);
+      }
+    }
+
+    if (op == AVERAGE)
+    {
+      if (count == 0)
+        return Double.doubleToRawLongBits(Double.NaN);
+      return Double.doubleToRawLongBits((this.floating ? dsum : (double) lsum) / count);
+    }
+
+    if (this.floating)
+    {
+      if (op == SUM)
+        return Double.doubleToRawLongBits(dsum);
+      if (count == 0)
+        return Double.doubleToRawLongBits(Double.NaN);
+      return Double.doubleToRawLongBits(op == MIN ? dmin : dmax);
+    }
+
+    if (op == SUM || count == 0)
+      return lsum;
+    return op == MIN ? lmin : lmax;
+  }
+
+  /**
+   * Liefert einen konsistenten Schnappschuss der Werte in der Reihenfolge
+   * des Hinzufuegens. Werte, die waehrend des Lesens ueberschrieben wurden, fehlen darin.
+   * @return Schnappschuss.
+   */
+  final long[] snapshot()
+  {
+    long end   = this.tail.get();
+    long start = Math.max(0L,end - this.capacity);
+
+    long[] result = new long[(int) (end - start)];
+    int count = 0;
+    for (long seq=start;seq<end;++seq)
+    {
+      int idx = (int) (seq % this.capacity);
+      if (this.sequences.get(idx) != seq)
+        continue;
+      long value = this.values.get(idx);
+      if (this.sequences.get(idx) == seq)
+        result[count++] = value;
+    }
+    return count == result.length ? result : Arrays.copyOf(result,count);
+  }
+
+  /**
+   * Liefert den Mittelwert.
+   * @return Mittelwert oder <code>Double.NaN</code>, wenn die History leer ist.
+   */
+  public double average()
+  {
+    return Double.longBitsToDouble(aggregate(AVERAGE));
+  }
+
+  /**
+   * Liefert die aktuelle Anzahl der Werte.
+   * @return Anzahl der Werte.
+   */
+  public int size()
+  {
+    return (int) Math.min(this.tail.get(),this.capacity);
+  }
+
+  /**
+   * Prueft, ob die History voll ist.
+   * @return true, wenn sie voll ist.
+   */
+  public boolean full()
+  {
+    return size() >= this.capacity;
+  }
+
+  /**
+   * Liefert die maximale Anzahl der Werte.
+   * @return maximale Anzahl der Werte.
+   */
+  public int getCapacity()
+  {
+    return this.capacity;
+  }
+}
@@ -12,20 +12,40 @@
 package de.willuhn.util;
 
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
-import java.util.Vector;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Bildet eine Queue nach FIFO-Prinzip ab (First in, First out).
  * Die Queue enthaelt eine definierte Anzahl von Elementen. Diese werden
  * in der Reihenfolge abgearbeitet, wie sie hinzugefuegt wurden.
- * Sie ist synchronized.
+ * Sie ist thread-safe. Die Elemente liegen in einem Ringpuffer fester Groesse
+ * mit getrennter Lese- und Schreib-Position, Entnehmen verschiebt also keine
+ * Elemente. Neben <code>push</code>/<code>pop</code> gibt es nicht-werfende
+ * (<code>offer</code>/<code>poll</code>) und blockierende Varianten
+ * (<code>put</code>/<code>take</code>, optional mit Timeout) sowie
+ * <code>drainTo</code> zum Entnehmen mehrerer Elemente am Stueck.
+ * @param <T> Typ der Elemente.
  */
-public class Queue
+public class Queue<T>
 {
 
-	private int capacity = 10;
-	private Vector v = null;
+	/**
+	 * Die maximale Kapazitaet dieser Queue.
+	 */
+	protected int capacity = 10;
+
+	private Object[] items = null;
+	private int head  = 0; // Position des naechsten zu entnehmenden Elements
+	private int tail  = 0; // Position, an die das naechste Element geschrieben wird
+	private int count = 0;
+
+	private final ReentrantLock lock  = new ReentrantLock();
+	private final Condition notEmpty  = lock.newCondition();
+	private final Condition notFull   = lock.newCondition();
 
 	/**
 	 * Die Minimal-Kapazitaet der Queue.
@@ -42,22 +62,187 @@ public class Queue
    * @param capacity maximale Kapazitaet, die die Queue haben soll.
    */
   public Queue(int capacity)
+  {
+    this(capacity,true);
+  }
+
+  /**
+   * ct.
+   * @param capacity maximale Kapazitaet, die die Queue haben soll.
+   * @param store false, wenn die abgeleitete Klasse die Elemente selbst speichert.
+   */
+  Queue(int capacity, boolean store)
   {
   	if (capacity >= CAPACITY_MIN && capacity <= CAPACITY_MAX)
   		this.capacity = capacity;
-  	v = new Vector(this.capacity);
+    if (store)
+  	  this.items = new Object[this.capacity];
   }
 
 	/**
 	 * Entfernt das naechste zu bearbeitende Objekt aus der Queue und liefert es zurueck. 
    * @return naechstes zu bearbeitendes Objekt.
+   * @throws ArrayIndexOutOfBoundsException wenn die Queue leer ist.
    */
-  public synchronized Object pop()
+  public T pop()
 	{
-		Object o = v.get(0);
-		v.removeElementAt(0);
-		return o;
+    lock.lock();
+    try
+    {
+      if (count == 0)
+        throw new ArrayIndexOutOfBoundsException("queue is empty");
+      return dequeue();
+    }
+    finally
+    {
+      lock.unlock();
+    }
 	}
+
+  /**
+   * Entfernt das naechste zu bearbeitende Objekt aus der Queue und liefert es zurueck.
+   * @return naechstes zu bearbeitendes Objekt oder <code>null</code>, wenn die Queue leer ist.
+   */
+  public T poll()
+  {
+    lock.lock();
+    try
+    {
+      return count == 0 ? null : dequeue();
+    }
+    finally
+    {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Entfernt das naechste zu bearbeitende Objekt aus der Queue und liefert es zurueck.
+   * Ist die Queue leer, wird maximal die angegebene Zeit gewartet.
+   * @param timeout maximale Wartezeit.
+   * @param unit Einheit der Wartezeit.
+   * @return naechstes zu bearbeitendes Objekt oder <code>null</code>, wenn die Queue
+   * nach Ablauf der Wartezeit noch immer leer ist.
+   * @throws InterruptedException
+   */
+  public T poll(long timeout, TimeUnit unit) throws InterruptedException
+  {
+    long nanos = unit.toNanos(timeout);
+    lock.lockInterruptibly();
+    try
+    {
+      while (count == 0)
+      {
+        if (nanos <= 0L)
+          return null;
+        nanos = notEmpty.awaitNanos(nanos);
+      }
+      return dequeue();
+    }
+    finally
+    {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Entfernt das naechste zu bearbeitende Objekt aus der Queue und liefert es zurueck.
+   * Ist die Queue leer, wird gewartet, bis ein Objekt hinzugefuegt wird.
+   * @return naechstes zu bearbeitendes Objekt.
+   * @throws InterruptedException
+   */
+  public T take() throws InterruptedException
+  {
+    lock.lockInterruptibly();
+    try
+    {
+      while (count == 0)
+        notEmpty.await();
+      return dequeue();
+    }
+    finally
+    {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Entnimmt bis zu <code>max</code> Elemente am Stueck und fuegt sie der Collection hinzu.
+   * Wartet nicht, wenn die Queue leer ist.
+   * @param c Collection, in die die Elemente uebernommen werden.
+   * @param max maximale Anzahl.
+   * @return Anzahl der uebernommenen Elemente.
+   */
+  public int drainTo(Collection<? super T> c, int max)
+  {
+    lock.lock();
+    try
+    {
+      int n = Math.min(max,count);
+      int i = 0;
+      try
+      {
+        for (;i<n;++i)
+        {
+          c.add(elementAt(head)); // wirft es hier, bleibt das Element in der Queue
+          items[head] = null;
+          head = (head + 1) % items.length;
+        }
+        return n;
+      }
+      finally
+      {
+        // Auch wenn die Collection unterwegs eine Exception wirft, muss "count" zu den
+        // tatsaechlich entnommenen Elementen passen
+        count -= i;
+        if (i > 0)
+          notFull.signalAll();
+      }
+    }
+    finally
+    {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Entnimmt das Element an der Lese-Position.
+   * Muss mit gehaltenem Lock aufgerufen werden und die Queue darf nicht leer sein.
+   * @return das Element.
+   */
+  private T dequeue()
+  {
+    T o = elementAt(head);
+    items[head] = null;
+    head = (head + 1) % items.length;
+    count--;
+    notFull.signal();
+    return o;
+  }
+
+  /**
+   * Fuegt das Element an der Schreib-Position hinzu.
+   * Muss mit gehaltenem Lock aufgerufen werden und die Queue darf nicht voll sein.
+   * @param o das Element.
+   */
+  private void enqueue(T o)
+  {
+    items[tail] = o;
+    tail = (tail + 1) % items.length;
+    count++;
+    notEmpty.signal();
+  }
+
+  /**
+   * Liefert das Element an der angegebenen Position des Arrays.
+   * @param index Position.
+   * @return das Element.
+   */
+  @SuppressWarnings("unchecked")
+  private T elementAt(int index)
+  {
+    return (T) items[index];
+  }
 	
 	/**
 	 * Liefert die aktuelle Groesse der Queue.
@@ -65,7 +250,15 @@ public class Queue
    */
   public int size()
 	{
-		return v.size();
+    lock.lock();
+    try
+    {
+		  return count;
+    }
+    finally
+    {
+      lock.unlock();
+    }
 	}
 
 	/**
@@ -73,19 +266,35 @@ public class Queue
 	 * Es wird nur eine Kopie ausgegeben.
    * @return Liste aller Elemente.
    */
-  public synchronized List elements()
+  @SuppressWarnings("unchecked")
+  public List<T> elements()
 	{
-		return Arrays.asList(v.toArray());
+		return (List<T>) Arrays.asList(toArray(new Object[0]));
 	}
 
   /**
 	 * Liefert ein Object-Array mit allen momentan in der Queue befindlichen Objekten.
+   * @param <A> Typ des Arrays.
    * @param type Objekt-Typ, der fuer das Array verwendet werden soll.
 	 * @return Array mit Objects.
 	 */
-	public Object[] toArray(Object[] type)
+	@SuppressWarnings("unchecked")
+	public <A> A[] toArray(A[] type)
 	{
-		return v.toArray(type);
+    lock.lock();
+    try
+    {
+      Object[] result = type.length >= count ? type : Arrays.copyOf(type,count);
+      for (int i=0;i<count;++i)
+        result[i] = items[(head + i) % items.length];
+      if (result.length > count)
+        result[count] = null;
+      return (A[]) result;
+    }
+    finally
+    {
+      lock.unlock();
+    }
 	}
 
 	/**
@@ -94,7 +303,7 @@ public class Queue
    */
   public boolean full()
 	{
-		return (v.size() >= capacity);
+		return size() >= capacity;
 	}
 
   /**
@@ -103,13 +312,85 @@ public class Queue
    * @param o das hinzuzufuegende Objekt.
    * @throws QueueFullException Wenn die Queue voll ist.
    */
-  public synchronized void push(Object o) throws QueueFullException
+  public void push(T o) throws QueueFullException
 	{
-		if (full())
+		if (!offer(o))
 			throw new QueueFullException("maximum queue size reached");
-		v.addElement(o);
 	}
 
+  /**
+   * Fuegt der Queue ein weiteres Objekt hinzu, sofern sie nicht voll ist.
+   * @param o das hinzuzufuegende Objekt.
+   * @return true, wenn es hinzugefuegt wurde, false, wenn die Queue voll ist.
+   */
+  public boolean offer(T o)
+  {
+    lock.lock();
+    try
+    {
+      if (count == items.length)
+        return false;
+      enqueue(o);
+      return true;
+    }
+    finally
+    {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Fuegt der Queue ein weiteres Objekt hinzu.
+   * Ist die Queue voll, wird maximal die angegebene Zeit gewartet.
+   * @param o das hinzuzufuegende Objekt.
+   * @param timeout maximale Wartezeit.
+   * @param unit Einheit der Wartezeit.
+   * @return true, wenn es hinzugefuegt wurde, false, wenn die Queue nach Ablauf
+   * der Wartezeit noch immer voll ist.
+   * @throws InterruptedException
+   */
+  public boolean offer(T o, long timeout, TimeUnit unit) throws InterruptedException
+  {
+    long nanos = unit.toNanos(timeout);
+    lock.lockInterruptibly();
+    try
+    {
+      while (count == items.length)
+      {
+        if (nanos <= 0L)
+          return false;
+        nanos = notFull.awaitNanos(nanos);
+      }
+      enqueue(o);
+      return true;
+    }
+    finally
+    {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Fuegt der Queue ein weiteres Objekt hinzu.
+   * Ist die Queue voll, wird gewartet, bis wieder Platz ist.
+   * @param o das hinzuzufuegende Objekt.
+   * @throws InterruptedException
+   */
+  public void put(T o) throws InterruptedException
+  {
+    lock.lockInterruptibly();
+    try
+    {
+      while (count == items.length)
+        notFull.await();
+      enqueue(o);
+    }
+    finally
+    {
+      lock.unlock();
+    }
+  }
+
 	/**
 	 * Wird geworfen, wenn die Queue voll ist und trotzdem versucht wird, Daten
 	 * hineinzuschreiben.
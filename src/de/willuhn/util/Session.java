@@ -13,17 +13,33 @@ package de.willuhn.util;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.Enumeration;
-import java.util.Hashtable;
+import java.util.List;
 import java.util.Observable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
 import de.willuhn.logging.Logger;
 
 /**
  * Implementierung eines Session-Containers.
+ * Abgelaufene Elemente werden von einem gemeinsamen Worker-Thread entfernt.
+ * Dieser sortiert die Elemente aller Sessions in ein {@link TimerWheel} ein und
+ * fasst damit nur die Elemente an, deren Ablauf-Zeitpunkt erreicht ist.
+ * Die Elemente liegen in einer {@link ConcurrentHashMap}. Lesende Zugriffe
+ * kommen damit ohne Lock aus und koennen parallel erfolgen.
+ * Optional kann die Session in ihrer Groesse begrenzt werden - entweder ueber
+ * die Anzahl der Elemente oder ueber ein per {@link Weigher} ermitteltes Gewicht.
+ * Wird die Grenze ueberschritten, werden die am laengsten nicht mehr benutzten
+ * Elemente entfernt. Die Reihenfolge wird nach dem Clock-Verfahren (Second Chance)
+ * angenaehert: Lesende Zugriffe setzen nur eine Markierung, sodass sie auch hier
+ * ohne Lock auskommen. Ueber entfernte Elemente werden die Observer genauso
+ * benachrichtigt wie bei abgelaufenen Elementen.
  * @author willuhn
  */
 public class Session extends Observable
 {
+  // Maximale Aufloesung, mit der der Zugriffs-Zeitpunkt beim Lesen aktualisiert wird
+  private final static long ACCESS_TICK = 100L;
 
   private static Worker worker = null;
 
@@ -43,7 +59,23 @@ public class Session extends Observable
 
 
   private long timeout;
-  private Hashtable data = new Hashtable();
+  private ConcurrentHashMap<Object,SessionObject> data = new ConcurrentHashMap<Object,SessionObject>();
+  private Worker myWorker = null;
+
+  // Groessen-Begrenzung. 0 bedeutet unbegrenzt
+  private long maxWeight  = 0L;
+  private Weigher weigher = null;
+
+  // Elemente in der Reihenfolge des Hinzufuegens fuer das Clock-Verfahren.
+  // Nur bei begrenzter Groesse, synchronisiert ueber "clock".
+  private final Object clock = new Object();
+  private SessionObject first = null;
+  private SessionObject last  = null;
+  private long weight         = 0L;
+
+  private final LongAdder hits      = new LongAdder();
+  private final LongAdder misses    = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
   
   /**
    * Erzeugt eine Session mit dem Default-Timeout von 30 Minuten.
@@ -59,9 +91,35 @@ public class Session extends Observable
    */
   public Session(long timeout)
   {
-    Logger.debug("creating new session. default timeout: " + timeout + " millis");
+    Logger.debug("creating new session. default timeout: {} millis",timeout);
     this.timeout = timeout;
-    getWorker().register(this);
+    this.myWorker = getWorker();
+    this.myWorker.register(this);
+  }
+
+  /**
+   * Erzeugt eine Session mit einer maximalen Anzahl von Elementen.
+   * @param timeout Anzahl der Millisekunden, nach deren Ablauf ein Element wieder entfernt werden soll.
+   * @param maxSize maximale Anzahl der Elemente. 0 bedeutet unbegrenzt.
+   */
+  public Session(long timeout, int maxSize)
+  {
+    this(timeout,maxSize,null);
+  }
+
+  /**
+   * Erzeugt eine Session mit einem maximalen Gesamt-Gewicht.
+   * @param timeout Anzahl der Millisekunden, nach deren Ablauf ein Element wieder entfernt werden soll.
+   * @param maxWeight maximales Gesamt-Gewicht der Elemente. 0 bedeutet unbegrenzt.
+   * @param weigher ermittelt das Gewicht eines Elements. Ist keiner angegeben, zaehlt jedes Element 1.
+   */
+  public Session(long timeout, long maxWeight, Weigher weigher)
+  {
+    this(timeout);
+    if (maxWeight < 0L)
+      throw new IllegalArgumentException("max weight must not be negative");
+    this.maxWeight = maxWeight;
+    this.weigher   = weigher;
   }
 
   /**
@@ -96,7 +154,7 @@ public class Session extends Observable
    */
   public void put(Object key, Object value, long t)
   {
-    data.put(key,new SessionObject(value,t,false));
+    put(new SessionObject(key,value,t,false));
   }
 
   /**
@@ -110,9 +168,46 @@ public class Session extends Observable
    */
   public void put(Object key, Object value, Date t)
   {
-    data.put(key,new SessionObject(value, t.getTime(),true));
+    put(new SessionObject(key,value,t.getTime(),true));
   }
 
+  /**
+   * Speichert das Element und meldet es beim Worker an.
+   * @param o das Element.
+   */
+  private void put(SessionObject o)
+  {
+    if (this.maxWeight > 0L && this.weigher != null)
+      o.weight = Math.max(0L,this.weigher.getWeight(o.key,o.value));
+
+    if (this.maxWeight <= 0L)
+    {
+      this.myWorker.schedule(o,data.put(o.key,o));
+      return;
+    }
+
+    // Bei begrenzter Groesse aendern wir die Map nur zusammen mit der Clock-Liste.
+    // Sonst koennten sich parallele Aufrufe fuer denselben Schluessel ueberholen und
+    // ein ersetztes Element bliebe mit seinem Gewicht in der Liste.
+    SessionObject prev = null;
+    List<SessionObject> evicted = null;
+    synchronized (this.clock)
+    {
+      prev = data.put(o.key,o);
+      unlink(prev);
+      link(o);
+      evicted = evict();
+    }
+    this.myWorker.schedule(o,prev);
+
+    for (SessionObject e:evicted)
+    {
+      Logger.trace("evicting object {} from session",e.key);
+      this.myWorker.schedule(null,e);
+      setChanged();
+      notifyObservers(e.value);
+    }
+  }
   
   /**
    * Liefert Wert aus der Session, der unter dem angegebenen Namen gespeichert ist.
@@ -121,11 +216,14 @@ public class Session extends Observable
    */
   public Object get(Object key)
   {
-    synchronized(data)
+    SessionObject o = data.get(key);
+    if (o == null)
     {
-      SessionObject o = (SessionObject) data.get(key);
-      return o == null ? null : o.getValue();
+      this.misses.increment();
+      return null;
     }
+    this.hits.increment();
+    return o.getValue();
   }
 
   /**
@@ -136,11 +234,23 @@ public class Session extends Observable
    */
   public Object remove(Object key)
   {
-    synchronized(data)
+    SessionObject o = null;
+    if (this.maxWeight <= 0L)
+    {
+      o = data.remove(key);
+    }
+    else
     {
-      SessionObject o = (SessionObject) data.remove(key);
-      return o == null ? null : o.value;
+      synchronized (this.clock)
+      {
+        o = data.remove(key);
+        unlink(o);
+      }
     }
+    if (o == null)
+      return null;
+    this.myWorker.schedule(null,o);
+    return o.value;
   }
   
   /**
@@ -148,9 +258,148 @@ public class Session extends Observable
    */
   public void clear()
   {
-    synchronized (data)
+    for (SessionObject o:data.values())
+    {
+      if (discard(o))
+        this.myWorker.schedule(null,o);
+    }
+  }
+
+  /**
+   * Haengt ein Element am Ende der Clock-Liste an.
+   * Muss mit gehaltenem Lock auf "clock" aufgerufen werden.
+   * @param o das Element.
+   */
+  private void link(SessionObject o)
+  {
+    o.before = this.last;
+    o.after  = null;
+    if (this.last == null)
+      this.first = o;
+    else
+      this.last.after = o;
+    this.last = o;
+    o.linked = true;
+    this.weight += o.weight;
+  }
+
+  /**
+   * Entfernt ein Element aus der Clock-Liste.
+   * Muss mit gehaltenem Lock auf "clock" aufgerufen werden.
+   * @param o das Element. Ist es nicht enthalten, passiert nichts.
+   */
+  private void unlink(SessionObject o)
+  {
+    if (o == null || !o.linked)
+      return;
+    if (o.before == null)
+      this.first = o.after;
+    else
+      o.before.after = o.after;
+    if (o.after == null)
+      this.last = o.before;
+    else
+      o.after.before = o.before;
+    o.before = null;
+    o.after  = null;
+    o.linked = false;
+    this.weight -= o.weight;
+  }
+
+  /**
+   * Entfernt solange Elemente, bis das maximale Gewicht wieder eingehalten wird.
+   * Ein Element, das seit dem letzten Durchlauf benutzt wurde, bekommt eine zweite
+   * Chance und wird stattdessen wieder hinten angehaengt.
+   * Muss mit gehaltenem Lock auf "clock" aufgerufen werden.
+   * @return Liste der entfernten Elemente.
+   */
+  private List<SessionObject> evict()
+  {
+    List<SessionObject> evicted = new ArrayList<SessionObject>();
+    while (this.weight > this.maxWeight && this.first != null)
     {
-      data.clear();
+      SessionObject o = this.first;
+      unlink(o);
+
+      // Wurde inzwischen ersetzt oder entfernt
+      if (data.get(o.key) != o)
+        continue;
+
+      if (o.referenced)
+      {
+        o.referenced = false;
+        link(o);
+        continue;
+      }
+
+      if (data.remove(o.key,o))
+      {
+        this.evictions.increment();
+        evicted.add(o);
+      }
+    }
+    return evicted;
+  }
+
+  /**
+   * Entfernt das Element aus der Session, sofern es noch unter seinem Schluessel
+   * gespeichert ist. Bei begrenzter Groesse geschieht das zusammen mit dem Entfernen
+   * aus der Clock-Liste, damit deren Gewicht immer zum Inhalt der Session passt.
+   * @param o das Element.
+   * @return true, wenn es entfernt wurde.
+   */
+  private boolean discard(SessionObject o)
+  {
+    if (this.maxWeight <= 0L)
+      return data.remove(o.key,o);
+
+    synchronized (this.clock)
+    {
+      if (!data.remove(o.key,o))
+        return false;
+      unlink(o);
+      return true;
+    }
+  }
+
+  /**
+   * Liefert die Anzahl der Lese-Zugriffe, bei denen der Schluessel gefunden wurde.
+   * @return Anzahl der Treffer.
+   */
+  public long getHitCount()
+  {
+    return this.hits.sum();
+  }
+
+  /**
+   * Liefert die Anzahl der Lese-Zugriffe, bei denen der Schluessel nicht gefunden wurde.
+   * @return Anzahl der Fehlgriffe.
+   */
+  public long getMissCount()
+  {
+    return this.misses.sum();
+  }
+
+  /**
+   * Liefert die Anzahl der Elemente, die wegen Ueberschreitens der maximalen
+   * Groesse entfernt wurden. Abgelaufene Elemente zaehlen nicht mit.
+   * @return Anzahl der verdraengten Elemente.
+   */
+  public long getEvictionCount()
+  {
+    return this.evictions.sum();
+  }
+
+  /**
+   * Liefert das aktuelle Gesamt-Gewicht der Elemente.
+   * Bei unbegrenzter Groesse wird nicht gezaehlt, dann ist es immer 0.
+   * @return Gesamt-Gewicht.
+   */
+  public long getWeight()
+  {
+    synchronized (this.clock)
+    {
+      return this.weight;
     }
   }
 
@@ -160,10 +409,7 @@ public class Session extends Observable
    */
   public int size()
   {
-    synchronized(data)
-    {
-      return data.size();
-    }
+    return data.size();
   }
 
   /**
@@ -171,45 +417,118 @@ public class Session extends Observable
    */
   protected void finalize() throws Throwable
   {
-    getWorker().unregister(this);
+    this.myWorker.unregister(this);
     super.finalize();
   }
 
-  private class SessionObject
+  private class SessionObject extends TimerWheel.Node
   {
+    private Object key;
     private Object value;
 
-    private long timestamp      = System.currentTimeMillis();
-    private long myTimeout      = timeout;
-    private boolean hardTimeout = false;
+    private volatile long timestamp = System.currentTimeMillis();
+    private long myTimeout          = timeout;
+    private long accessTick         = 0L;
+    private boolean hardTimeout     = false;
+
+    // Fuer die Groessen-Begrenzung
+    private long weight                 = 1L;
+    private volatile boolean referenced = false;
+    private boolean linked              = false;
+    private SessionObject before        = null;
+    private SessionObject after         = null;
 
-    private SessionObject(Object value, long t, boolean hardTimeout)
+    private SessionObject(Object key, Object value, long t, boolean hardTimeout)
     {
+      this.key = key;
       this.value = value;
       this.hardTimeout = hardTimeout;
       if (this.hardTimeout)
       {
-        Logger.trace("added object \"" + value + "\" to session. hard timeout: " + new Date(t).toString());
+        Logger.traceLazy(() -> "added object \"" + value + "\" to session. hard timeout: " + new Date(t).toString());
         this.timestamp = t;
         this.myTimeout = 0;
       }
       else
       {
         this.myTimeout = t;
-        Logger.trace("added object \"" + value + "\" to session. timeout: " + t + " millis");
+        this.accessTick = Math.min(ACCESS_TICK,t >>> 4);
+        Logger.trace("added object \"{}\" to session. timeout: {} millis",value,t);
       }
     }
     
     /**
      * Liefert den Wert des Keys.
+     * Bei einem gleitenden Timeout wird nur der Zeitstempel aktualisiert. Der Worker
+     * sortiert das Element erst dann neu ein, wenn der alte Ablauf-Zeitpunkt erreicht ist.
+     * Geschrieben wird der Zeitstempel nur, wenn er sich um mehr als <code>accessTick</code>
+     * geaendert hat. Parallel lesende Threads schreiben damit nicht staendig in dieselbe
+     * Cache-Line.
      * @return der Wert.
      */
     private Object getValue()
     {
+      if (maxWeight > 0L && !this.referenced)
+        this.referenced = true;
       if (!hardTimeout)
-        this.timestamp = System.currentTimeMillis();
+      {
+        long now = System.currentTimeMillis();
+        if (now - this.timestamp > this.accessTick)
+          this.timestamp = now;
+      }
       return this.value;
     }
+
+    /**
+     * @see de.willuhn.util.TimerWheel.Node#getDeadline()
+     */
+    long getDeadline()
+    {
+      long deadline = this.timestamp + this.myTimeout;
+      return deadline < this.timestamp ? Long.MAX_VALUE : deadline; // Ueberlauf
+    }
+
+    /**
+     * Entfernt das Element aus der Session, sofern es noch abgelaufen und nicht
+     * inzwischen ersetzt oder entfernt wurde.
+     * @param now aktuelle Zeit in Millisekunden.
+     * @return true, wenn es entfernt wurde. false, wenn es inzwischen wieder benutzt wurde
+     * und neu einsortiert werden muss.
+     */
+    private boolean expire(long now)
+    {
+      if (getDeadline() > now)
+        return !isCurrent(); // nur neu einsortieren, wenn es noch Bestandteil der Session ist
+      if (!discard(this))
+        return true; // nicht mehr Bestandteil der Session
+      Logger.trace("removing object {} from session",this.key);
+      setChanged();
+      notifyObservers(this.value);
+      return true;
+    }
+
+    /**
+     * Prueft, ob das Element noch Bestandteil der Session ist.
+     * @return true, wenn es noch unter seinem Schluessel gespeichert ist.
+     */
+    private boolean isCurrent()
+    {
+      return data.get(this.key) == this;
+    }
+  }
+
+  /**
+   * Ermittelt das Gewicht eines Elements fuer die Groessen-Begrenzung der Session.
+   */
+  public static interface Weigher
+  {
+    /**
+     * Liefert das Gewicht des Elements.
+     * @param key der Schluessel.
+     * @param value der Wert.
+     * @return das Gewicht. Negative Werte werden als 0 behandelt.
+     */
+    public long getWeight(Object key, Object value);
   }
 
   
@@ -219,7 +538,11 @@ public class Session extends Observable
    */
   private final static class Worker extends Thread
   {
+    // Intervall, in dem das Zeitrad weitergedreht wird
+    private final static long TICK = 250L;
+
     private ArrayList sessions = new ArrayList();
+    private TimerWheel wheel = new TimerWheel(System.currentTimeMillis());
     
     /**
      * ct.
@@ -272,6 +595,29 @@ public class Session extends Observable
       }
     }
 
+    /**
+     * Sortiert ein Element in das Zeitrad ein und entfernt ggf. das vorherige.
+     * @param o das neue Element. Kann null sein.
+     * @param prev das bisherige Element. Kann null sein.
+     */
+    private void schedule(SessionObject o, SessionObject prev)
+    {
+      synchronized(this.wheel)
+      {
+        this.wheel.remove(prev);
+        if (o == null)
+          return;
+        this.wheel.schedule(o);
+        if (!o.isCurrent())
+        {
+          this.wheel.remove(o); // Wurde inzwischen schon wieder ersetzt oder entfernt
+          return;
+        }
+        if (this.wheel.size() == 1)
+          this.wheel.notifyAll(); // Der Worker schlaeft evtl., weil es nichts zu tun gab
+      }
+    }
+
     /**
      * @see java.lang.Runnable#run()
      */
@@ -283,32 +629,39 @@ public class Session extends Observable
         {
           long current = System.currentTimeMillis();
 
-          synchronized(this.sessions)
+          List<TimerWheel.Node> expired = null;
+          synchronized(this.wheel)
           {
-            for (int i=0;i<this.sessions.size();++i)
+            expired = this.wheel.advance(current);
+          }
+
+          for (TimerWheel.Node node:expired)
+          {
+            SessionObject o = (SessionObject) node;
+            if (!o.expire(current))
             {
-              Session s = (Session) this.sessions.get(i);
-              Hashtable data = s.data;
-  
-              synchronized(data)
+              synchronized(this.wheel)
               {
-                Enumeration e = data.keys();
-                while (e.hasMoreElements())
-                {
-                  Object key          = e.nextElement();
-                  SessionObject value = (SessionObject) data.get(key);
-                  if (current > (value.timestamp + value.myTimeout))
-                  {
-                    Logger.trace("removing object " + key + " from session");
-                    data.remove(key);
-                    s.setChanged();
-                    s.notifyObservers(value.value);
-                  }
-                }
+                this.wheel.schedule(o);
+
+                // Wurde das Element zwischen expire() und hier ersetzt oder entfernt, hat
+                // put() bzw. remove() es noch vor dem erneuten Einsortieren aus dem Zeitrad
+                // genommen. Dann entfernen wir es selbst, damit es nicht haengen bleibt.
+                // Alle spaeteren Aenderungen nehmen es danach ohnehin wieder heraus.
+                if (!o.isCurrent())
+                  this.wheel.remove(o);
               }
             }
           }
-          sleep(1000l);
+
+          synchronized(this.wheel)
+          {
+            // Gibt es nichts zu tun, warten wir, bis das naechste Element kommt
+            if (this.wheel.size() == 0)
+              this.wheel.wait();
+            else
+              this.wheel.wait(TICK);
+          }
         }
       }
       catch (InterruptedException e)
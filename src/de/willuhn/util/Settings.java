@@ -105,7 +105,7 @@ public class Settings
           // "this.properties" wird initial mit den System-Vorgaben befuellt.
           // Wenn der User eigene Werte definiert hat, ersetzen seine Werte anschliessend
           // in "reload()" die System-Vorgaben
-          Logger.debug("loading system presets from " + systemFile.getAbsolutePath());
+          Logger.debugLazy(() -> "loading system presets from " + systemFile.getAbsolutePath());
           Properties presets = new Properties();
           is = new BufferedInputStream(new FileInputStream(systemFile));
           presets.load(is);
@@ -498,7 +498,7 @@ public class Settings
     try
     {
       os = new BufferedOutputStream(new FileOutputStream(this.file));
-      Logger.debug("saving " + this.file.getAbsolutePath());
+      Logger.debugLazy(() -> "saving " + this.file.getAbsolutePath());
       this.properties.store(os,null);
     }
     catch (Exception e1)
@@ -548,7 +548,7 @@ public class Settings
     try
     {
       if (this.lastModified > 0) // wenn lastModified 0 ist, wurde die Datei noch gar nicht geladen
-        Logger.debug(this.file.getAbsolutePath() + " has changed, reloading");
+        Logger.debugLazy(() -> this.file.getAbsolutePath() + " has changed, reloading");
       
       is = new BufferedInputStream(new FileInputStream(this.file));
       this.properties.load(is);
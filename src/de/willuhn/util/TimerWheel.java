@@ -0,0 +1,201 @@
+/**********************************************************************
+ *
+ * Copyright (c) 2004 Olaf Willuhn
+ * All rights reserved.
+ *
+ * This software is copyrighted work licensed under the terms of the
+ * GNU LESSER GENERAL PUBLIC LICENSE 2.1.
+ * Please consult the file "LICENSE" for details.
+ *
+ **********************************************************************/
+
+package de.willuhn.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hierarchisches Zeitrad fuer das Ablaufen der Elemente einer {@link Session}.
+ * Jede Ebene besteht aus 64 Faechern, die jeweils einen festen Zeitraum abdecken.
+ * Auf der untersten Ebene sind das 256 Millisekunden, jede weitere Ebene ist
+ * 64 mal so grob. Ein Element wird anhand seines Ablauf-Zeitpunktes in das
+ * Fach der feinsten Ebene einsortiert, die den Abstand noch abdeckt.
+ * Beim Weiterdrehen werden nur die Faecher angefasst, deren Zeitraum inzwischen
+ * erreicht ist. Elemente, deren Ablauf-Zeitpunkt sich inzwischen nach hinten
+ * verschoben hat (weil sie benutzt wurden), werden dabei neu einsortiert.
+ * Damit muss beim Benutzen eines Elements nur dessen Zeitstempel aktualisiert
+ * werden, das Zeitrad bleibt unveraendert.
+ * Die Klasse ist nicht thread-safe, der Aufrufer muss synchronisieren.
+ */
+final class TimerWheel
+{
+  private final static int BUCKETS = 64;
+
+  // Zeitraum eines Fachs je Ebene als Zweier-Exponent in Millisekunden:
+  // 256ms, 16s, ca. 17 Minuten, ca. 18 Stunden, ca. 50 Tage
+  private final static int[] SHIFTS = {8, 14, 20, 26, 32};
+
+  private final Node[][] wheel = new Node[SHIFTS.length][BUCKETS];
+  private long time = 0L;
+  private int size  = 0;
+
+  /**
+   * ct.
+   * @param now aktuelle Zeit in Millisekunden.
+   */
+  TimerWheel(long now)
+  {
+    this.time = now;
+    for (Node[] level:this.wheel)
+    {
+      for (int i=0;i<level.length;++i)
+      {
+        Node sentinel = new Sentinel();
+        sentinel.prev = sentinel;
+        sentinel.next = sentinel;
+        level[i] = sentinel;
+      }
+    }
+  }
+
+  /**
+   * Sortiert das Element anhand seines Ablauf-Zeitpunktes ein.
+   * Ist es bereits einsortiert, wird es vorher entfernt.
+   * @param node das Element.
+   */
+  void schedule(Node node)
+  {
+    remove(node);
+    Node sentinel = bucket(node.getDeadline());
+    node.prev = sentinel.prev;
+    node.next = sentinel;
+    sentinel.prev.next = node;
+    sentinel.prev = node;
+    this.size++;
+  }
+
+  /**
+   * Entfernt das Element aus dem Zeitrad.
+   * @param node das Element. Ist es nicht einsortiert, passiert nichts.
+   */
+  void remove(Node node)
+  {
+    if (node == null || node.next == null)
+      return;
+    node.prev.next = node.next;
+    node.next.prev = node.prev;
+    node.prev = null;
+    node.next = null;
+    this.size--;
+  }
+
+  /**
+   * Dreht das Zeitrad bis zur angegebenen Zeit weiter.
+   * @param now aktuelle Zeit in Millisekunden.
+   * @return Liste der Elemente, deren Ablauf-Zeitpunkt erreicht ist. Sie sind
+   * bereits aus dem Zeitrad entfernt.
+   */
+  List<Node> advance(long now)
+  {
+    List<Node> expired = new ArrayList<Node>();
+    long previous = this.time;
+    if (now < previous)
+      return expired; // Uhr wurde zurueckgestellt. Wir warten, bis sie wieder aufgeholt hat
+    this.time = now;
+
+    for (int i=0;i<SHIFTS.length;++i)
+    {
+      long prevTicks = previous >>> SHIFTS[i];
+      long delta     = (now >>> SHIFTS[i]) - prevTicks;
+      if (delta <= 0L && i > 0)
+        break;
+
+      // Das Fach der aktuellen Zeit gehoert immer dazu, da es auch schon faellige Elemente enthalten kann
+      int count = (int) Math.min(delta + 1,BUCKETS);
+      for (int j=0;j<count;++j)
+        expire(this.wheel[i][(int) ((prevTicks + j) & (BUCKETS - 1))],now,expired);
+    }
+    return expired;
+  }
+
+  /**
+   * Leert ein Fach. Faellige Elemente landen in der Liste, die anderen werden neu einsortiert.
+   * @param sentinel das Fach.
+   * @param now aktuelle Zeit in Millisekunden.
+   * @param expired Liste der faelligen Elemente.
+   */
+  private void expire(Node sentinel, long now, List<Node> expired)
+  {
+    // Wir haengen die Liste erst komplett aus, da neu einsortierte
+    // Elemente im selben Fach landen koennen.
+    Node node = sentinel.next;
+    sentinel.prev = sentinel;
+    sentinel.next = sentinel;
+    while (node != sentinel)
+    {
+      Node next = node.next;
+      node.prev = null;
+      node.next = null;
+      this.size--;
+      if (node.getDeadline() <= now)
+        expired.add(node);
+      else
+        schedule(node);
+      node = next;
+    }
+  }
+
+  /**
+   * Liefert das Fach fuer den angegebenen Ablauf-Zeitpunkt.
+   * @param deadline Ablauf-Zeitpunkt in Millisekunden.
+   * @return das Fach.
+   */
+  private Node bucket(long deadline)
+  {
+    long delta = Math.max(0L,deadline - this.time);
+    int level = 0;
+    while (level < SHIFTS.length - 1 && delta >= (1L << SHIFTS[level + 1]))
+      level++;
+    // Liegt der Zeitpunkt hinter der obersten Ebene, landet er vorerst in deren letztem Fach
+    long ticks = Math.min(deadline,this.time + (1L << SHIFTS[level]) * (BUCKETS - 1)) >>> SHIFTS[level];
+    return this.wheel[level][(int) (Math.max(ticks,this.time >>> SHIFTS[level]) & (BUCKETS - 1))];
+  }
+
+  /**
+   * Liefert die Anzahl der einsortierten Elemente.
+   * @return Anzahl der Elemente.
+   */
+  int size()
+  {
+    return this.size;
+  }
+
+  /**
+   * Basisklasse der Elemente im Zeitrad.
+   */
+  abstract static class Node
+  {
+    private Node prev = null;
+    private Node next = null;
+
+    /**
+     * Liefert den Ablauf-Zeitpunkt.
+     * @return Ablauf-Zeitpunkt in Millisekunden.
+     */
+    abstract long getDeadline();
+  }
+
+  /**
+   * Kopf der ringfoermig verketteten Liste eines Fachs.
+   */
+  private final static class Sentinel extends Node
+  {
+    /**
+     * @see de.willuhn.util.TimerWheel.Node#getDeadline()
+     */
+    long getDeadline()
+    {
+      return Long.MAX_VALUE;
+    }
+  }
+}
@@ -0,0 +1,115 @@
+/**********************************************************************
+ *
+ * Copyright (c) 2004 Olaf Willuhn
+ * All rights reserved.
+ *
+ * This software is copyrighted work licensed under the terms of the
+ * GNU LESSER GENERAL PUBLIC LICENSE 2.1.
+ * Please consult the file "LICENSE" for details.
+ *
+ **********************************************************************/
+
+package de.willuhn.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests fuer {@link LineOutputStream}.
+ */
+public class LineOutputStreamTest
+{
+  private final static String TEXT = "gr\u00fc\u00dfe \u20ac \ud83d\ude00";
+
+  /**
+   * Multi-Byte-Zeichen bleiben erhalten, auch wenn ihre Bytes einzeln geschrieben werden.
+   * @throws Exception
+   */
+  @Test
+  public void testSingleBytes() throws Exception
+  {
+    Lines out = new Lines(1024);
+    for (byte b:(TEXT + "\n").getBytes(StandardCharsets.UTF_8))
+      out.write(b);
+    assertEquals(1,out.lines.size());
+    assertEquals(TEXT,out.lines.get(0));
+  }
+
+  /**
+   * Multi-Byte-Zeichen bleiben erhalten, wenn sie auf mehrere write()-Aufrufe verteilt sind.
+   * @throws Exception
+   */
+  @Test
+  public void testSplitChunks() throws Exception
+  {
+    byte[] data = (TEXT + "\n" + TEXT + "\r\n").getBytes(StandardCharsets.UTF_8);
+    for (int chunk=1;chunk<data.length;++chunk)
+    {
+      Lines out = new Lines(1024);
+      for (int off=0;off<data.length;off+=chunk)
+        out.write(data,off,Math.min(chunk,data.length - off));
+      assertEquals(2,out.lines.size());
+      assertEquals(TEXT,out.lines.get(0));
+      assertEquals(TEXT,out.lines.get(1));
+    }
+  }
+
+  /**
+   * Zu lange Zeilen werden aufgeteilt, ohne Multi-Byte-Zeichen zu zerschneiden.
+   * @throws Exception
+   */
+  @Test
+  public void testMaxLineLength() throws Exception
+  {
+    StringBuilder sb = new StringBuilder();
+    for (int i=0;i<20;++i)
+      sb.append('\u20ac');
+    String line = sb.toString();
+
+    Lines out = new Lines(16);
+    out.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+    assertTrue(out.lines.size() > 1);
+
+    StringBuilder joined = new StringBuilder();
+    for (String s:out.lines)
+    {
+      assertFalse(s,s.contains("\ufffd"));
+      assertTrue(s,s.getBytes(StandardCharsets.UTF_8).length <= 16);
+      joined.append(s);
+    }
+    assertEquals(line,joined.toString());
+  }
+
+  /**
+   * Sammelt die geschriebenen Zeilen.
+   */
+  private static class Lines extends LineOutputStream
+  {
+    private List<String> lines = new ArrayList<String>();
+
+    /**
+     * ct.
+     * @param maxLineLength maximale Zeilenlaenge in Bytes.
+     */
+    private Lines(int maxLineLength)
+    {
+      super(16,maxLineLength,StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @see de.willuhn.io.LineOutputStream#writeLine(java.lang.String)
+     */
+    public void writeLine(String s) throws IOException
+    {
+      this.lines.add(s);
+    }
+  }
+}
@@ -0,0 +1,169 @@
+/**********************************************************************
+ *
+ * Copyright (c) 2004 Olaf Willuhn
+ * All rights reserved.
+ *
+ * This software is copyrighted work licensed under the terms of the
+ * GNU LESSER GENERAL PUBLIC LICENSE 2.1.
+ * Please consult the file "LICENSE" for details.
+ *
+ **********************************************************************/
+
+package de.willuhn.logging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Date;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+import de.willuhn.logging.Logger.OverflowPolicy;
+import de.willuhn.logging.targets.Target;
+
+/**
+ * Tests fuer die Warte-Barrieren von {@link AsyncTarget#flush(long)} und {@link AsyncTarget#close(long)}.
+ */
+public class AsyncTargetTest
+{
+  private final BlockingTarget target = new BlockingTarget();
+
+  /**
+   * Gibt ein ggf. noch blockiertes Target frei.
+   */
+  @After
+  public void tearDown()
+  {
+    this.target.release.countDown();
+  }
+
+  /**
+   * flush() kehrt zurueck, sobald alles geschrieben wurde.
+   * @throws Exception
+   */
+  @Test(timeout=10000L)
+  public void testFlush() throws Exception
+  {
+    this.target.release.countDown();
+    AsyncTarget at = new AsyncTarget(this.target,16,OverflowPolicy.BLOCK);
+    for (int i=0;i<10;++i)
+      at.write(message(i));
+
+    assertEquals(0,at.flush(5000L));
+    assertEquals(10,this.target.written.get());
+    assertEquals(0,at.close(5000L));
+  }
+
+  /**
+   * flush() kehrt nach Ablauf der Wartezeit zurueck, auch wenn das Target haengt,
+   * und liefert die Anzahl der noch nicht geschriebenen Meldungen.
+   * @throws Exception
+   */
+  @Test(timeout=10000L)
+  public void testFlushTimeout() throws Exception
+  {
+    AsyncTarget at = new AsyncTarget(this.target,16,OverflowPolicy.BLOCK);
+    for (int i=0;i<3;++i)
+      at.write(message(i));
+
+    long start = System.currentTimeMillis();
+    assertEquals(3,at.flush(200L));
+    assertTrue(System.currentTimeMillis() - start >= 200L);
+
+    this.target.release.countDown();
+    assertEquals(0,at.flush(5000L));
+    assertEquals(3,this.target.written.get());
+    assertEquals(0,at.close(5000L));
+  }
+
+  /**
+   * close() schliesst das Target sofort, wenn alles geschrieben wurde.
+   * @throws Exception
+   */
+  @Test(timeout=10000L)
+  public void testClose() throws Exception
+  {
+    this.target.release.countDown();
+    AsyncTarget at = new AsyncTarget(this.target,16,OverflowPolicy.BLOCK);
+    at.write(message(0));
+
+    assertEquals(0,at.close(5000L));
+    assertEquals(1,this.target.written.get());
+    assertEquals(1,this.target.closed.get());
+  }
+
+  /**
+   * Laeuft die Wartezeit von close() ab, wird das Target nicht geschlossen, solange
+   * noch darauf geschrieben wird. Das uebernimmt der Thread, sobald er fertig ist.
+   * @throws Exception
+   */
+  @Test(timeout=10000L)
+  public void testCloseTimeout() throws Exception
+  {
+    AsyncTarget at = new AsyncTarget(this.target,16,OverflowPolicy.BLOCK);
+    for (int i=0;i<3;++i)
+      at.write(message(i));
+    assertTrue(this.target.entered.await(5L,TimeUnit.SECONDS));
+
+    assertEquals(3,at.close(200L));
+    assertEquals(0,this.target.closed.get());
+
+    // Nach dem Schliessen werden keine Meldungen mehr angenommen
+    at.write(message(3));
+
+    this.target.release.countDown();
+    while (this.target.closed.get() == 0)
+      Thread.sleep(10L);
+
+    assertEquals(1,this.target.closed.get());
+    assertFalse(this.target.writeAfterClose);
+    assertTrue(this.target.written.get() <= 3);
+  }
+
+  /**
+   * Erzeugt eine Test-Meldung.
+   * @param i laufende Nummer.
+   * @return die Meldung.
+   */
+  private static Message message(int i)
+  {
+    return new Message(new Date(),Level.INFO,null,AsyncTargetTest.class.getName(),"message",null,"message " + i,null,Thread.currentThread().getName());
+  }
+
+  /**
+   * Target, das beim Schreiben wartet, bis es freigegeben wird.
+   */
+  private static class BlockingTarget implements Target
+  {
+    private final CountDownLatch entered = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final AtomicInteger written  = new AtomicInteger(0);
+    private final AtomicInteger closed   = new AtomicInteger(0);
+    private volatile boolean writeAfterClose = false;
+
+    /**
+     * @see de.willuhn.logging.targets.Target#write(de.willuhn.logging.Message)
+     */
+    public void write(Message message) throws Exception
+    {
+      this.entered.countDown();
+      this.release.await();
+      if (this.closed.get() > 0)
+        this.writeAfterClose = true;
+      this.written.incrementAndGet();
+    }
+
+    /**
+     * @see de.willuhn.logging.targets.Target#close()
+     */
+    public void close() throws Exception
+    {
+      this.closed.incrementAndGet();
+    }
+  }
+}
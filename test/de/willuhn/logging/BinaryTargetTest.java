@@ -0,0 +1,162 @@
+/**********************************************************************
+ *
+ * Copyright (c) 2004 Olaf Willuhn
+ * All rights reserved.
+ *
+ * This software is copyrighted work licensed under the terms of the
+ * GNU LESSER GENERAL PUBLIC LICENSE 2.1.
+ * Please consult the file "LICENSE" for details.
+ *
+ **********************************************************************/
+
+package de.willuhn.logging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.willuhn.logging.targets.BinaryTarget;
+
+/**
+ * Tests fuer {@link BinaryTarget} und {@link BinaryLogReader}.
+ */
+public class BinaryTargetTest
+{
+  private File file = null;
+
+  /**
+   * Legt die Ziel-Datei an.
+   * @throws Exception
+   */
+  @Before
+  public void setUp() throws Exception
+  {
+    this.file = File.createTempFile("binarytarget",".blog");
+  }
+
+  /**
+   * Loescht die Ziel-Datei wieder.
+   */
+  @After
+  public void tearDown()
+  {
+    this.file.delete();
+  }
+
+  /**
+   * Geschriebene Meldungen kommen unveraendert wieder heraus.
+   * @throws Exception
+   */
+  @Test
+  public void testRoundTrip() throws Exception
+  {
+    Message[] batch = new Message[]{
+      new Message(new Date(1104521662123L),Level.INFO,null,"a.B","run","first","main"),
+      new Message(new Date(1104521662000L),Level.ERROR,"server","a.B","run","second \u00e4\u20ac\ud83d\ude00","worker"),
+      new Message(new Date(1104521663000L),Level.DEBUG,null,null,null,"","main"),
+      new Message(new Date(1104521664000L),Level.WARN,null,"a.C","stop",null,"main"),
+    };
+
+    BinaryTarget target = new BinaryTarget(this.file,false);
+    target.write(batch,batch.length);
+    target.close();
+
+    List<Message> read = read();
+    assertEquals(batch.length,read.size());
+    for (int i=0;i<batch.length;++i)
+      assertEquals(batch[i].toString(),read.get(i).toString());
+  }
+
+  /**
+   * Beim Anhaengen beginnt das Dictionary von vorn.
+   * @throws Exception
+   */
+  @Test
+  public void testAppend() throws Exception
+  {
+    Message first  = new Message(new Date(1104521662123L),Level.INFO,null,"a.B","run","first","main");
+    Message second = new Message(new Date(1104521665123L),Level.INFO,null,"a.C","run","second","main");
+
+    BinaryTarget target = new BinaryTarget(this.file,false);
+    target.write(first);
+    target.close();
+
+    target = new BinaryTarget(this.file,true);
+    target.write(second);
+    target.close();
+
+    List<Message> read = read();
+    assertEquals(2,read.size());
+    assertEquals(first.toString(),read.get(0).toString());
+    assertEquals(second.toString(),read.get(1).toString());
+  }
+
+  /**
+   * Ohne Aufrufer werden Klasse und Methode nicht gespeichert.
+   * @throws Exception
+   */
+  @Test
+  public void testWithoutCaller() throws Exception
+  {
+    BinaryTarget target = new BinaryTarget(this.file,false);
+    target.setCaller(false);
+    assertFalse(target.needsCaller());
+    target.write(new Message(new Date(),Level.INFO,null,"a.B","run","text","main"));
+    target.close();
+
+    Message m = read().get(0);
+    assertNull(m.getLoggingClass());
+    assertNull(m.getLoggingMethod());
+    assertEquals("text",m.getText());
+  }
+
+  /**
+   * Unbekannte Log-Levels werden beim Lesen nicht global registriert.
+   * @throws Exception
+   */
+  @Test
+  public void testUnknownLevel() throws Exception
+  {
+    Level custom = new Level("BINARYTEST",42,false);
+    BinaryTarget target = new BinaryTarget(this.file,false);
+    target.write(new Message(new Date(),custom,null,null,null,"text","main"));
+    target.close();
+
+    Message m = read().get(0);
+    assertEquals("BINARYTEST",m.getLevel().getName());
+    assertEquals(42,m.getLevel().getValue());
+    assertNull(Level.findByName("BINARYTEST"));
+  }
+
+  /**
+   * Liest alle Meldungen aus der Datei.
+   * @return die Meldungen.
+   * @throws Exception
+   */
+  private List<Message> read() throws Exception
+  {
+    List<Message> list = new ArrayList<Message>();
+    BinaryLogReader reader = new BinaryLogReader(new FileInputStream(this.file));
+    try
+    {
+      Message m = null;
+      while ((m = reader.read()) != null)
+        list.add(m);
+    }
+    finally
+    {
+      reader.close();
+    }
+    return list;
+  }
+}
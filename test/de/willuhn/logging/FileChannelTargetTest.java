@@ -0,0 +1,169 @@
+/**********************************************************************
+ *
+ * Copyright (c) 2004 Olaf Willuhn
+ * All rights reserved.
+ *
+ * This software is copyrighted work licensed under the terms of the
+ * GNU LESSER GENERAL PUBLIC LICENSE 2.1.
+ * Please consult the file "LICENSE" for details.
+ *
+ **********************************************************************/
+
+package de.willuhn.logging;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Date;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.willuhn.logging.targets.FileChannelTarget;
+
+/**
+ * Tests fuer {@link FileChannelTarget}.
+ */
+public class FileChannelTargetTest
+{
+  private final static String lineSep = System.getProperty("line.separator");
+
+  private File file = null;
+
+  /**
+   * Legt die Ziel-Datei an.
+   * @throws Exception
+   */
+  @Before
+  public void setUp() throws Exception
+  {
+    this.file = File.createTempFile("filechannel",".log");
+  }
+
+  /**
+   * Loescht die Ziel-Datei wieder.
+   */
+  @After
+  public void tearDown()
+  {
+    this.file.delete();
+  }
+
+  /**
+   * Ohne Flush-Intervall wird jeder Block sofort geschrieben.
+   * @throws Exception
+   */
+  @Test
+  public void testWrite() throws Exception
+  {
+    Message first  = message(Level.INFO,"first");
+    Message second = message(Level.DEBUG,"second");
+    FileChannelTarget target = new FileChannelTarget(this.file,false);
+    try
+    {
+      target.write(new Message[]{first,null,second},3);
+      assertEquals(first.toString() + lineSep + second.toString() + lineSep,read());
+    }
+    finally
+    {
+      target.close();
+    }
+  }
+
+  /**
+   * Mit Flush-Intervall wird erst beim Flush-Level, beim Schliessen
+   * oder nach Ablauf des Intervalls geschrieben.
+   * @throws Exception
+   */
+  @Test(timeout=10000L)
+  public void testFlushPolicy() throws Exception
+  {
+    Message info = message(Level.INFO,"info");
+    Message warn = message(Level.WARN,"warn");
+    FileChannelTarget target = new FileChannelTarget(this.file,false);
+    target.setFlushInterval(60 * 1000L);
+    try
+    {
+      target.write(info);
+      assertEquals("",read());
+
+      target.write(warn);
+      assertEquals(info.toString() + lineSep + warn.toString() + lineSep,read());
+
+      target.write(info);
+    }
+    finally
+    {
+      target.close();
+    }
+    assertEquals(info.toString() + lineSep + warn.toString() + lineSep + info.toString() + lineSep,read());
+  }
+
+  /**
+   * Gesammelte Meldungen werden nach Ablauf des Intervalls auch ohne neue Meldungen geschrieben.
+   * @throws Exception
+   */
+  @Test(timeout=10000L)
+  public void testFlushTimer() throws Exception
+  {
+    Message info = message(Level.INFO,"info");
+    FileChannelTarget target = new FileChannelTarget(this.file,false);
+    target.setFlushLevel(null);
+    target.setFlushInterval(100L);
+    try
+    {
+      target.write(info);
+      while (read().length() == 0)
+        Thread.sleep(20L);
+      assertEquals(info.toString() + lineSep,read());
+    }
+    finally
+    {
+      target.close();
+    }
+  }
+
+  /**
+   * Beim Anhaengen bleibt der bisherige Inhalt erhalten.
+   * @throws Exception
+   */
+  @Test
+  public void testAppend() throws Exception
+  {
+    Message first  = message(Level.INFO,"first");
+    Message second = message(Level.INFO,"second");
+
+    FileChannelTarget target = new FileChannelTarget(this.file,false);
+    target.write(first);
+    target.close();
+
+    target = new FileChannelTarget(this.file,true);
+    target.write(second);
+    target.close();
+
+    assertEquals(first.toString() + lineSep + second.toString() + lineSep,read());
+  }
+
+  /**
+   * Liest den Inhalt der Datei.
+   * @return der Inhalt.
+   * @throws Exception
+   */
+  private String read() throws Exception
+  {
+    return new String(Files.readAllBytes(this.file.toPath()));
+  }
+
+  /**
+   * Erzeugt eine Test-Meldung.
+   * @param level das Log-Level.
+   * @param text der Text.
+   * @return die Meldung.
+   */
+  private static Message message(Level level, String text)
+  {
+    return new Message(new Date(),level,null,FileChannelTargetTest.class.getName(),"message",text,Thread.currentThread().getName());
+  }
+}
@@ -0,0 +1,105 @@
+/**********************************************************************
+ *
+ * Copyright (c) 2004 Olaf Willuhn
+ * All rights reserved.
+ *
+ * This software is copyrighted work licensed under the terms of the
+ * GNU LESSER GENERAL PUBLIC LICENSE 2.1.
+ * Please consult the file "LICENSE" for details.
+ *
+ **********************************************************************/
+
+package de.willuhn.logging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.LogRecord;
+
+import org.junit.Test;
+
+import de.willuhn.logging.targets.Target;
+
+/**
+ * Tests fuer {@link JavaLoggingHandler}.
+ */
+public class JavaLoggingHandlerTest
+{
+  /**
+   * Die Java-Levels werden auf unsere Log-Levels abgebildet.
+   */
+  @Test
+  public void testMap()
+  {
+    assertNull(JavaLoggingHandler.map(java.util.logging.Level.OFF));
+    assertSame(Level.ERROR,JavaLoggingHandler.map(java.util.logging.Level.SEVERE));
+    assertSame(Level.WARN,JavaLoggingHandler.map(java.util.logging.Level.WARNING));
+    assertSame(Level.INFO,JavaLoggingHandler.map(java.util.logging.Level.INFO));
+    assertSame(Level.INFO,JavaLoggingHandler.map(java.util.logging.Level.CONFIG));
+    assertSame(Level.DEBUG,JavaLoggingHandler.map(java.util.logging.Level.FINE));
+    assertSame(Level.DEBUG,JavaLoggingHandler.map(java.util.logging.Level.FINER));
+    assertSame(Level.TRACE,JavaLoggingHandler.map(java.util.logging.Level.FINEST));
+    assertSame(Level.DEFAULT,JavaLoggingHandler.map(java.util.logging.Level.ALL));
+    assertSame(Level.DEFAULT,JavaLoggingHandler.map(java.util.logging.Level.parse("850")));
+  }
+
+  /**
+   * Meldungen landen mit Klasse und Methode im Logger, sofern ihr Level geloggt wird.
+   * @throws Exception
+   */
+  @Test(timeout=10000L)
+  public void testPublish() throws Exception
+  {
+    final List<Message> messages = new CopyOnWriteArrayList<Message>();
+    Target target = new Target() {
+      public void write(Message message) throws Exception
+      {
+        messages.add(message);
+      }
+      public void close() throws Exception
+      {
+      }
+    };
+
+    Level level = Logger.getLevel();
+    Logger.setLevel(Level.INFO);
+    Logger.addTarget(target);
+    try
+    {
+      JavaLoggingHandler handler = new JavaLoggingHandler();
+      handler.publish(record(java.util.logging.Level.FINE,"filtered"));
+      handler.publish(record(java.util.logging.Level.OFF,"off"));
+      handler.publish(record(java.util.logging.Level.WARNING,"passed"));
+      Logger.flush(5000L);
+
+      assertEquals(1,messages.size());
+      Message m = messages.get(0);
+      assertSame(Level.WARN,m.getLevel());
+      assertEquals("passed",m.getText());
+      assertEquals("a.B",m.getLoggingClass());
+      assertEquals("run",m.getLoggingMethod());
+    }
+    finally
+    {
+      Logger.removeTarget(target);
+      Logger.setLevel(level);
+    }
+  }
+
+  /**
+   * Erzeugt einen Log-Eintrag von Java.
+   * @param level das Level.
+   * @param text der Text.
+   * @return der Log-Eintrag.
+   */
+  private static LogRecord record(java.util.logging.Level level, String text)
+  {
+    LogRecord r = new LogRecord(level,text);
+    r.setSourceClassName("a.B");
+    r.setSourceMethodName("run");
+    return r;
+  }
+}
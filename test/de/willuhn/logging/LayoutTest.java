@@ -0,0 +1,95 @@
+/**********************************************************************
+ *
+ * Copyright (c) 2004 Olaf Willuhn
+ * All rights reserved.
+ *
+ * This software is copyrighted work licensed under the terms of the
+ * GNU LESSER GENERAL PUBLIC LICENSE 2.1.
+ * Please consult the file "LICENSE" for details.
+ *
+ **********************************************************************/
+
+package de.willuhn.logging;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+
+import org.junit.Test;
+
+import de.willuhn.logging.layout.JsonLayout;
+import de.willuhn.logging.layout.KeyValueLayout;
+import de.willuhn.logging.layout.Layout;
+
+/**
+ * Tests fuer {@link JsonLayout} und {@link KeyValueLayout}.
+ */
+public class LayoutTest
+{
+  /**
+   * JSON mit Escaping von Sonderzeichen und UTF-8 ausserhalb von ASCII.
+   * @throws Exception
+   */
+  @Test
+  public void testJson() throws Exception
+  {
+    Message m = new Message(new Date(0L),Level.INFO,null,"a.B","run","say \"hi\"\n\u00e4\u20ac\ud83d\ude00\u0001","main");
+    assertEquals("{\"date\":\"1970-01-01T00:00:00.000Z\",\"level\":\"INFO\",\"thread\":\"main\",\"class\":\"a.B\",\"method\":\"run\","
+               + "\"text\":\"say \\\"hi\\\"\\n\u00e4\u20ac\ud83d\ude00\\u0001\"}\n",
+                 format(new JsonLayout(),m));
+  }
+
+  /**
+   * key=value mit Anfuehrungszeichen nur dort, wo sie noetig sind.
+   * @throws Exception
+   */
+  @Test
+  public void testKeyValue() throws Exception
+  {
+    Message m = new Message(new Date(1104521662123L),Level.WARN,"server",null,null,"a=b \"c\"","worker-1");
+    assertEquals("date=2004-12-31T19:34:22.123Z level=WARN host=server thread=worker-1 text=\"a=b \\\"c\\\"\"\n",
+                 format(new KeyValueLayout(),m));
+
+    m = new Message(new Date(1104521662123L),Level.INFO,null,null,null,"","main");
+    assertEquals("date=2004-12-31T19:34:22.123Z level=INFO thread=main text=\"\"\n",format(new KeyValueLayout(),m));
+  }
+
+  /**
+   * Der Zeitstempel entspricht dem von SimpleDateFormat, auch ueber Schaltjahre und vor 1970.
+   * @throws Exception
+   */
+  @Test
+  public void testTimestamp() throws Exception
+  {
+    SimpleDateFormat df = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+    df.setTimeZone(TimeZone.getTimeZone("UTC"));
+
+    long step = 7L * 3600L * 1000L + 123L;
+    for (long millis = -40L * 365L * 86400000L; millis < 100L * 365L * 86400000L; millis += step)
+    {
+      Message m = new Message(new Date(millis),null,null,null,null,null,null);
+      assertEquals("{\"date\":\"" + df.format(new Date(millis)) + "\"}\n",format(new JsonLayout(),m));
+    }
+  }
+
+  /**
+   * Formatiert die Meldung mit dem Layout.
+   * @param layout das Layout.
+   * @param m die Meldung.
+   * @return die formatierte Zeile.
+   * @throws Exception
+   */
+  private static String format(Layout layout, Message m) throws Exception
+  {
+    LineEncoder encoder = new LineEncoder(StandardCharsets.UTF_8,"\n");
+    encoder.setLayout(layout);
+    encoder.append(m);
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    encoder.writeTo(bos);
+    return new String(bos.toByteArray(),StandardCharsets.UTF_8);
+  }
+}
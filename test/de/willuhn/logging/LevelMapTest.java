@@ -0,0 +1,108 @@
+/**********************************************************************
+ *
+ * Copyright (c) 2004 Olaf Willuhn
+ * All rights reserved.
+ *
+ * This software is copyrighted work licensed under the terms of the
+ * GNU LESSER GENERAL PUBLIC LICENSE 2.1.
+ * Please consult the file "LICENSE" for details.
+ *
+ **********************************************************************/
+
+package de.willuhn.logging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+
+import org.junit.Test;
+
+/**
+ * Tests fuer die Log-Levels je Package bzw. Klasse in {@link LevelMap}.
+ */
+public class LevelMapTest
+{
+  /**
+   * Es gilt der laengste passende Package- bzw. Klassen-Name.
+   */
+  @Test
+  public void testHierarchy()
+  {
+    LevelMap map = new LevelMap(Level.INFO,new HashMap<String,Level>())
+      .with("de.willuhn",Level.WARN)
+      .with("de.willuhn.sql",Level.DEBUG)
+      .with("de.willuhn.sql.Foo",Level.ERROR);
+
+    assertSame(Level.INFO,map.get(null));
+    assertSame(Level.INFO,map.get("org.example.Bar"));
+    assertSame(Level.WARN,map.get("de.willuhn.io.Bar"));
+    assertSame(Level.DEBUG,map.get("de.willuhn.sql.Bar"));
+    assertSame(Level.ERROR,map.get("de.willuhn.sql.Foo"));
+    assertSame(Level.ERROR,map.get("de.willuhn.sql.Foo$Inner"));
+    assertSame(Level.ERROR,map.get("de.willuhn.sql.Foo$Inner")); // aus dem Cache
+
+    // Nur ganze Namensbestandteile zaehlen
+    assertSame(Level.WARN,map.get("de.willuhn.sqlx.Bar"));
+    assertSame(Level.INFO,map.get("de.willuhnx.Bar"));
+  }
+
+  /**
+   * Die Pruefung beruecksichtigt das Level der Klasse und die Grenzen ueber alle Levels.
+   */
+  @Test
+  public void testIsLogging()
+  {
+    LevelMap map = new LevelMap(Level.INFO,new HashMap<String,Level>()).with("de.willuhn.sql",Level.DEBUG);
+    assertEquals(Level.DEBUG.getValue(),map.min);
+    assertEquals(Level.INFO.getValue(),map.max);
+
+    assertFalse(map.isLogging(Level.TRACE,"de.willuhn.sql.Foo"));
+    assertTrue(map.isLogging(Level.DEBUG,"de.willuhn.sql.Foo"));
+    assertFalse(map.isLogging(Level.DEBUG,"de.willuhn.io.Foo"));
+    assertFalse(map.isLogging(Level.DEBUG,null));
+    assertTrue(map.isLogging(Level.INFO,"de.willuhn.io.Foo"));
+  }
+
+  /**
+   * Aenderungen erzeugen eine neue Instanz, die bisherige bleibt unveraendert.
+   */
+  @Test
+  public void testCopy()
+  {
+    LevelMap map   = new LevelMap(Level.INFO,new HashMap<String,Level>()).with("de.willuhn",Level.WARN);
+    LevelMap other = map.with("de.willuhn",null).root(Level.ERROR);
+
+    assertSame(Level.WARN,map.get("de.willuhn.Foo"));
+    assertSame(Level.ERROR,other.get("de.willuhn.Foo"));
+    assertTrue(other.getOverrides().isEmpty());
+    assertSame(Level.INFO,map.getRoot());
+  }
+
+  /**
+   * Der Logger verwendet die Levels je Klasse.
+   */
+  @Test
+  public void testLogger()
+  {
+    Level level = Logger.getLevel();
+    String name = LevelMapTest.class.getName();
+    Logger.setLevel(Level.INFO);
+    try
+    {
+      Logger.setLevel(name,Level.DEBUG);
+      assertTrue(Logger.isLogging(Level.DEBUG,name));
+      assertFalse(Logger.isLogging(Level.DEBUG,"org.example.Bar"));
+
+      Logger.setLevel(name,null);
+      assertFalse(Logger.isLogging(Level.DEBUG,name));
+    }
+    finally
+    {
+      Logger.setLevel(name,null);
+      Logger.setLevel(level);
+    }
+  }
+}
@@ -0,0 +1,107 @@
+/**********************************************************************
+ *
+ * Copyright (c) 2004 Olaf Willuhn
+ * All rights reserved.
+ *
+ * This software is copyrighted work licensed under the terms of the
+ * GNU LESSER GENERAL PUBLIC LICENSE 2.1.
+ * Please consult the file "LICENSE" for details.
+ *
+ **********************************************************************/
+
+package de.willuhn.logging;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+
+import org.junit.Test;
+
+/**
+ * Tests fuer {@link LineEncoder}.
+ */
+public class LineEncoderTest
+{
+  /**
+   * Ohne Layout entspricht jede Zeile <code>Message#toString()</code>,
+   * auch wenn sich der Zeitstempel von Meldung zu Meldung aendert.
+   * @throws Exception
+   */
+  @Test
+  public void testDefaultFormat() throws Exception
+  {
+    LineEncoder encoder = new LineEncoder(StandardCharsets.UTF_8,"\n");
+    StringBuilder expected = new StringBuilder();
+    long time = 1104521662123L;
+    for (int i=0;i<100;++i)
+    {
+      time += i * 997L;
+      Message m = new Message(new Date(time),Level.INFO,i % 2 == 0 ? "server" : null,"a.B","run","text \u00e4 " + i,"main");
+      encoder.append(m);
+      expected.append(m.toString()).append("\n");
+    }
+
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    encoder.writeTo(bos);
+    assertEquals(expected.toString(),new String(bos.toByteArray(),StandardCharsets.UTF_8));
+    assertEquals(0,encoder.size());
+  }
+
+  /**
+   * Der Puffer waechst mit, auch bei Direct-Buffern.
+   * @throws Exception
+   */
+  @Test
+  public void testGrow() throws Exception
+  {
+    StringBuilder sb = new StringBuilder();
+    for (int i=0;i<20000;++i)
+      sb.append((char) ('a' + i % 26));
+    Message m = new Message(new Date(),Level.INFO,null,null,null,sb.toString(),"main");
+
+    LineEncoder encoder = new LineEncoder(StandardCharsets.UTF_8,"\n",256,true);
+    encoder.append(m);
+    encoder.append(m);
+    String line = m.toString() + "\n";
+    assertEquals(2 * line.length(),encoder.size());
+
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    encoder.writeTo(Channels.newChannel(bos));
+    assertEquals(line + line,new String(bos.toByteArray(),StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Nicht darstellbare Zeichen werden ersetzt, statt eine Exception auszuloesen.
+   * @throws Exception
+   */
+  @Test
+  public void testUnmappable() throws Exception
+  {
+    Message m = new Message(null,null,null,null,null,"\u00e4\u20ac","main");
+    LineEncoder encoder = new LineEncoder(StandardCharsets.ISO_8859_1,"\r\n");
+    encoder.append(m);
+
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    encoder.writeTo(bos);
+    assertEquals("[main] \u00e4?\r\n",new String(bos.toByteArray(),StandardCharsets.ISO_8859_1));
+  }
+
+  /**
+   * Passt der Inhalt nicht in den ByteBuffer, wird nur der vordere Teil kopiert.
+   */
+  @Test
+  public void testWriteToByteBuffer()
+  {
+    LineEncoder encoder = new LineEncoder(StandardCharsets.UTF_8,"\n");
+    encoder.append(new Message(null,null,null,null,null,"0123456789","main"));
+
+    ByteBuffer target = ByteBuffer.allocate(8);
+    assertEquals(8,encoder.writeTo(target));
+    assertEquals("[main] 0",new String(target.array(),StandardCharsets.UTF_8));
+    assertEquals(0,encoder.size());
+  }
+}
@@ -0,0 +1,79 @@
+/**********************************************************************
+ *
+ * Copyright (c) 2004 Olaf Willuhn
+ * All rights reserved.
+ *
+ * This software is copyrighted work licensed under the terms of the
+ * GNU LESSER GENERAL PUBLIC LICENSE 2.1.
+ * Please consult the file "LICENSE" for details.
+ *
+ **********************************************************************/
+
+package de.willuhn.logging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import de.willuhn.logging.targets.Target;
+
+/**
+ * Tests fuer {@link LoggerStats}.
+ */
+public class LoggerStatsTest
+{
+  /**
+   * Meldungen, Fehler und Aufrufe werden je Target gezaehlt.
+   * Nach dem Entfernen des Targets verschwindet seine Statistik.
+   * @throws Exception
+   */
+  @Test(timeout=10000L)
+  public void testTargetStats() throws Exception
+  {
+    Target target = new Target() {
+      private int count = 0;
+      public void write(Message message) throws Exception
+      {
+        if (++count % 2 == 0)
+          throw new Exception("failed");
+      }
+      public void close() throws Exception
+      {
+      }
+    };
+
+    LoggerStats stats = Logger.getStats();
+    Level level = Logger.getLevel();
+    Logger.setLevel(Level.INFO);
+    Logger.addTarget(target);
+    try
+    {
+      long enqueued = stats.getEnqueued();
+      for (int i=0;i<10;++i)
+        Logger.info("message " + i);
+      Logger.debug("filtered");
+      assertEquals(0,Logger.flush(5000L));
+
+      assertEquals(enqueued + 10,stats.getEnqueued());
+      assertEquals(stats.getEnqueued(),stats.getDequeued());
+
+      LoggerStats.TargetStats ts = stats.getTargetStats(target);
+      assertNotNull(ts);
+      assertEquals(5L,ts.getMessages());
+      assertEquals(5L,ts.getErrors());
+      assertTrue(ts.getWrites() >= 1L && ts.getWrites() <= 5L);
+      assertTrue(ts.getPercentile(50d) > 0L);
+      assertTrue(ts.getPercentile(50d) <= ts.getPercentile(100d));
+      assertTrue(stats.getErrors() >= 5L);
+    }
+    finally
+    {
+      Logger.removeTarget(target);
+      Logger.setLevel(level);
+    }
+    assertNull(stats.getTargetStats(target));
+  }
+}
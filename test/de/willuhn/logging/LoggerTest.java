@@ -0,0 +1,216 @@
+/**********************************************************************
+ *
+ * Copyright (c) 2004 Olaf Willuhn
+ * All rights reserved.
+ *
+ * This software is copyrighted work licensed under the terms of the
+ * GNU LESSER GENERAL PUBLIC LICENSE 2.1.
+ * Please consult the file "LICENSE" for details.
+ *
+ **********************************************************************/
+
+package de.willuhn.logging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import de.willuhn.logging.targets.BatchTarget;
+import de.willuhn.logging.targets.CallerAware;
+import de.willuhn.logging.targets.Target;
+
+/**
+ * Tests fuer {@link Logger}.
+ */
+public class LoggerTest
+{
+  /**
+   * flush() kehrt nach Ablauf der Wartezeit zurueck, auch wenn ein Target haengt.
+   * Nach dessen Freigabe wartet es, bis alles geschrieben wurde.
+   * @throws Exception
+   */
+  @Test(timeout=10000L)
+  public void testFlushTimeout() throws Exception
+  {
+    final CountDownLatch release = new CountDownLatch(1);
+    final AtomicInteger written  = new AtomicInteger(0);
+    Target target = new Target() {
+      public void write(Message message) throws Exception
+      {
+        release.await();
+        written.incrementAndGet();
+      }
+      public void close() throws Exception
+      {
+      }
+    };
+
+    Level level = Logger.getLevel();
+    Logger.setLevel(Level.INFO);
+    Logger.addTarget(target);
+    try
+    {
+      Logger.info("first");
+      Logger.info("second");
+
+      long start = System.currentTimeMillis();
+      assertTrue(Logger.flush(200L) > 0);
+      assertTrue(System.currentTimeMillis() - start >= 200L);
+
+      release.countDown();
+      assertEquals(0,Logger.flush(5000L));
+      assertEquals(2,written.get());
+    }
+    finally
+    {
+      release.countDown();
+      Logger.removeTarget(target);
+      Logger.setLevel(level);
+    }
+  }
+
+  /**
+   * Der Aufrufer wird nur ermittelt, wenn ein Target ihn benoetigt.
+   * @throws Exception
+   */
+  @Test(timeout=10000L)
+  public void testCallerNeeded() throws Exception
+  {
+    CallerTarget without = new CallerTarget(false);
+    CallerTarget with    = new CallerTarget(true);
+
+    Level level = Logger.getLevel();
+    Logger.setLevel(Level.INFO);
+    Logger.addTarget(without);
+    try
+    {
+      Logger.info("without");
+      Logger.flush(5000L);
+      assertEquals(1,without.messages.size());
+      assertNull(without.messages.get(0).getLoggingClass());
+
+      Logger.addTarget(with);
+      Logger.info("with");
+      Logger.flush(5000L);
+      assertEquals(1,with.messages.size());
+      assertEquals(LoggerTest.class.getName(),with.messages.get(0).getLoggingClass());
+      assertEquals("testCallerNeeded",with.messages.get(0).getLoggingMethod());
+    }
+    finally
+    {
+      Logger.removeTarget(without);
+      Logger.removeTarget(with);
+      Logger.setLevel(level);
+    }
+  }
+
+  /**
+   * Waehrend ein Target schreibt, angesammelte Meldungen werden einem BatchTarget
+   * im Block uebergeben, einem normalen Target einzeln. Die Reihenfolge bleibt erhalten.
+   * @throws Exception
+   */
+  @Test(timeout=10000L)
+  public void testBatch() throws Exception
+  {
+    final CountDownLatch release = new CountDownLatch(1);
+    final List<Integer> sizes    = new CopyOnWriteArrayList<Integer>();
+    final List<String> batched   = new CopyOnWriteArrayList<String>();
+    final List<String> single    = new CopyOnWriteArrayList<String>();
+    BatchTarget batch = new BatchTarget() {
+      public void write(Message[] messages, int count) throws Exception
+      {
+        release.await();
+        sizes.add(count);
+        List<String> texts = new ArrayList<String>();
+        for (int i=0;i<count;++i)
+          texts.add(messages[i].getText());
+        batched.addAll(texts);
+      }
+      public void write(Message message) throws Exception
+      {
+        write(new Message[]{message},1);
+      }
+      public void close() throws Exception
+      {
+      }
+    };
+    Target target = new Target() {
+      public void write(Message message) throws Exception
+      {
+        single.add(message.getText());
+      }
+      public void close() throws Exception
+      {
+      }
+    };
+
+    Level level = Logger.getLevel();
+    Logger.setLevel(Level.INFO);
+    Logger.addTarget(batch);
+    Logger.addTarget(target);
+    try
+    {
+      Logger.info("0");
+      while (Logger.getStats().getDequeued() < Logger.getStats().getEnqueued())
+        Thread.sleep(10L);
+
+      List<String> expected = new ArrayList<String>();
+      expected.add("0");
+      for (int i=1;i<=10;++i)
+      {
+        Logger.info(Integer.toString(i));
+        expected.add(Integer.toString(i));
+      }
+      release.countDown();
+      assertEquals(0,Logger.flush(5000L));
+
+      assertEquals(expected,batched);
+      assertEquals(expected,single);
+      assertEquals(Integer.valueOf(1),sizes.get(0));
+      assertEquals(Integer.valueOf(10),sizes.get(1));
+    }
+    finally
+    {
+      release.countDown();
+      Logger.removeTarget(batch);
+      Logger.removeTarget(target);
+      Logger.setLevel(level);
+    }
+  }
+
+  /**
+   * Target, das mitteilt, ob es den Aufrufer benoetigt, und die Meldungen sammelt.
+   */
+  private static class CallerTarget implements Target, CallerAware
+  {
+    private final boolean caller;
+    private final List<Message> messages = new CopyOnWriteArrayList<Message>();
+
+    private CallerTarget(boolean caller)
+    {
+      this.caller = caller;
+    }
+
+    public boolean needsCaller()
+    {
+      return this.caller;
+    }
+
+    public void write(Message message) throws Exception
+    {
+      this.messages.add(message);
+    }
+
+    public void close() throws Exception
+    {
+    }
+  }
+}
@@ -0,0 +1,156 @@
+/**********************************************************************
+ *
+ * Copyright (c) 2004 Olaf Willuhn
+ * All rights reserved.
+ *
+ * This software is copyrighted work licensed under the terms of the
+ * GNU LESSER GENERAL PUBLIC LICENSE 2.1.
+ * Please consult the file "LICENSE" for details.
+ *
+ **********************************************************************/
+
+package de.willuhn.logging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Date;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.willuhn.logging.targets.LogrotateTarget;
+
+/**
+ * Tests fuer die Rotation von {@link LogrotateTarget}.
+ */
+public class LogrotateTargetTest
+{
+  private File dir  = null;
+  private File file = null;
+
+  /**
+   * Legt ein leeres Verzeichnis fuer die Log-Dateien an.
+   * @throws Exception
+   */
+  @Before
+  public void setUp() throws Exception
+  {
+    this.dir  = Files.createTempDirectory("logrotate").toFile();
+    this.file = new File(this.dir,"test.log");
+  }
+
+  /**
+   * Loescht das Verzeichnis wieder.
+   */
+  @After
+  public void tearDown()
+  {
+    File[] files = this.dir.listFiles();
+    if (files != null)
+    {
+      for (File f:files)
+        f.delete();
+    }
+    this.dir.delete();
+  }
+
+  /**
+   * Nach Erreichen der Maximal-Groesse wird die Datei rotiert.
+   * @throws Exception
+   */
+  @Test
+  public void testSize() throws Exception
+  {
+    LogrotateTarget target = new LogrotateTarget(this.file,true);
+    target.setZip(false);
+    target.setMaxLength(100L);
+    try
+    {
+      for (int i=0;i<10;++i)
+        target.write(message("message number " + i));
+    }
+    finally
+    {
+      target.close();
+    }
+
+    assertTrue(count() > 1);
+    assertTrue(this.file.length() < 200L);
+  }
+
+  /**
+   * Nach Ablauf des Intervalls wird die Datei rotiert, auch wenn sie klein ist.
+   * @throws Exception
+   */
+  @Test(timeout=10000L)
+  public void testInterval() throws Exception
+  {
+    LogrotateTarget target = new LogrotateTarget(this.file,true);
+    target.setZip(false);
+    target.setInterval(100L);
+    try
+    {
+      target.write(message("first"));
+      target.write(message("second"));
+      assertEquals(1,count());
+
+      Thread.sleep(150L);
+      target.write(message("third"));
+      assertEquals(2,count());
+    }
+    finally
+    {
+      target.close();
+    }
+  }
+
+  /**
+   * Eine leere Datei wird nicht rotiert. Ohne Intervall darf danach auch
+   * keine Rotation nach Zeit stattfinden.
+   * @throws Exception
+   */
+  @Test
+  public void testEmptyWithoutInterval() throws Exception
+  {
+    LogrotateTarget target = new LogrotateTarget(this.file,true);
+    target.setZip(false);
+    target.setMaxLength(0L);
+    try
+    {
+      target.write(message("first"));
+      assertEquals(1,count());
+
+      target.setMaxLength(1024L * 1024L);
+      target.write(message("second"));
+      target.write(message("third"));
+      assertEquals(1,count());
+    }
+    finally
+    {
+      target.close();
+    }
+  }
+
+  /**
+   * Liefert die Anzahl der Dateien im Verzeichnis.
+   * @return Anzahl der Dateien.
+   */
+  private int count()
+  {
+    return this.dir.listFiles().length;
+  }
+
+  /**
+   * Erzeugt eine Test-Meldung.
+   * @param text der Text.
+   * @return die Meldung.
+   */
+  private static Message message(String text)
+  {
+    return new Message(new Date(),Level.INFO,null,LogrotateTargetTest.class.getName(),"message",text,Thread.currentThread().getName());
+  }
+}
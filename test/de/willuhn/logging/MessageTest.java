@@ -0,0 +1,69 @@
+/**********************************************************************
+ *
+ * Copyright (c) 2004 Olaf Willuhn
+ * All rights reserved.
+ *
+ * This software is copyrighted work licensed under the terms of the
+ * GNU LESSER GENERAL PUBLIC LICENSE 2.1.
+ * Please consult the file "LICENSE" for details.
+ *
+ **********************************************************************/
+
+package de.willuhn.logging;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Date;
+
+import org.junit.Test;
+
+/**
+ * Tests fuer das Erzeugen der Stacktraces in {@link Message}.
+ */
+public class MessageTest
+{
+  /**
+   * Wird der Text vor dem Logger-Thread gelesen, enthaelt er den kompletten Stacktrace.
+   * Der Logger-Thread erzeugt ihn trotzdem noch ueber seinen Renderer.
+   */
+  @Test
+  public void testTextBeforeRender()
+  {
+    Exception e = new Exception("failed");
+    ThrowableRenderer r = new ThrowableRenderer(10);
+
+    Message first = message(e);
+    first.render(r);
+    assertTrue(first.getText(),first.getText().startsWith("text\n#1 "));
+
+    Message second = message(e);
+    String early = second.getText();
+    assertTrue(early,early.contains("\tat "));
+    assertFalse(early,early.contains("same as"));
+
+    second.render(r);
+    assertTrue(second.getText(),second.getText().contains("(stack trace same as #1)"));
+  }
+
+  /**
+   * Ohne Exception bleibt der Text unveraendert.
+   */
+  @Test
+  public void testWithoutThrowable()
+  {
+    Message m = message(null);
+    m.render(new ThrowableRenderer(10));
+    assertTrue("text".equals(m.getText()));
+  }
+
+  /**
+   * Erzeugt eine Test-Meldung.
+   * @param t die Exception oder <code>null</code>.
+   * @return die Meldung.
+   */
+  private static Message message(Throwable t)
+  {
+    return new Message(new Date(),Level.ERROR,null,MessageTest.class.getName(),"message",null,"text",t,Thread.currentThread().getName());
+  }
+}
@@ -0,0 +1,94 @@
+/**********************************************************************
+ *
+ * Copyright (c) 2004 Olaf Willuhn
+ * All rights reserved.
+ *
+ * This software is copyrighted work licensed under the terms of the
+ * GNU LESSER GENERAL PUBLIC LICENSE 2.1.
+ * Please consult the file "LICENSE" for details.
+ *
+ **********************************************************************/
+
+package de.willuhn.logging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.Test;
+
+import de.willuhn.logging.targets.Target;
+
+/**
+ * Tests fuer {@link RateLimiter} und dessen Einbindung in den Logger.
+ */
+public class RateLimiterTest
+{
+  /**
+   * Nach dem Burst werden gleichartige Meldungen verworfen und gezaehlt,
+   * andere Arten haben ihren eigenen Bucket.
+   */
+  @Test
+  public void testBurst()
+  {
+    RateLimiter rl = new RateLimiter(0.001d,2,60 * 1000L);
+    assertTrue(rl.acquire(Level.INFO,"a.B","m","pattern {}"));
+    assertTrue(rl.acquire(Level.INFO,"a.B","m","pattern {}"));
+    assertFalse(rl.acquire(Level.INFO,"a.B","m","pattern {}"));
+    assertEquals(1L,rl.getSuppressed());
+
+    assertTrue(rl.acquire(Level.INFO,"a.B","m","other {}"));
+    assertTrue(rl.acquire(Level.INFO,"a.C","m","pattern {}"));
+    assertEquals(1L,rl.getSuppressed());
+  }
+
+  /**
+   * Meldungen, die das Log-Level der Klasse verwirft, verbrauchen keine Tokens.
+   * Durchgelassene Meldungen werden erst danach formatiert.
+   * @throws Exception
+   */
+  @Test(timeout=10000L)
+  public void testClassLevelBeforeLimit() throws Exception
+  {
+    final List<String> texts = new CopyOnWriteArrayList<String>();
+    Target target = new Target() {
+      public void write(Message message) throws Exception
+      {
+        texts.add(message.getText());
+      }
+      public void close() throws Exception
+      {
+      }
+    };
+
+    Level level = Logger.getLevel();
+    String name = RateLimiterTest.class.getName();
+    Logger.setLevel(Level.INFO);
+    Logger.setLevel(name,Level.ERROR);
+    Logger.setRateLimit(0.001d,1,60 * 1000L);
+    Logger.addTarget(target);
+    try
+    {
+      for (int i=0;i<5;++i)
+        Logger.info("filtered {}",i);
+      assertEquals(0L,Logger.getSuppressedCount());
+
+      Logger.error("passed {}",1);
+      Logger.error("passed {}",2);
+      Logger.flush(5000L);
+      assertEquals(1L,Logger.getSuppressedCount());
+      assertTrue(texts.contains("passed 1"));
+      assertFalse(texts.contains("passed 2"));
+    }
+    finally
+    {
+      Logger.removeTarget(target);
+      Logger.setRateLimit(0d,0);
+      Logger.setLevel(name,null);
+      Logger.setLevel(level);
+    }
+  }
+}
@@ -0,0 +1,207 @@
+/**********************************************************************
+ *
+ * Copyright (c) 2004 Olaf Willuhn
+ * All rights reserved.
+ *
+ * This software is copyrighted work licensed under the terms of the
+ * GNU LESSER GENERAL PUBLIC LICENSE 2.1.
+ * Please consult the file "LICENSE" for details.
+ *
+ **********************************************************************/
+
+package de.willuhn.logging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import de.willuhn.logging.Logger.OverflowPolicy;
+
+/**
+ * Tests fuer {@link RingBuffer}.
+ */
+public class RingBufferTest
+{
+  /**
+   * Die Kapazitaet wird auf die naechste Zweier-Potenz aufgerundet.
+   */
+  @Test
+  public void testCapacity()
+  {
+    assertEquals(2,new RingBuffer(0).capacity());
+    assertEquals(8,new RingBuffer(8).capacity());
+    assertEquals(16,new RingBuffer(9).capacity());
+  }
+
+  /**
+   * Ein leerer Puffer liefert nichts.
+   */
+  @Test
+  public void testEmpty()
+  {
+    RingBuffer rb = new RingBuffer(4);
+    assertTrue(rb.isEmpty());
+    assertEquals(0,rb.size());
+    assertNull(rb.poll());
+    assertEquals(0,rb.drain(new Object[4],4));
+  }
+
+  /**
+   * Ein voller Puffer nimmt nichts mehr an, bis wieder gelesen wurde.
+   */
+  @Test
+  public void testFull()
+  {
+    RingBuffer rb = new RingBuffer(4);
+    for (int i=0;i<4;++i)
+      assertTrue(rb.offer(i));
+    assertEquals(4,rb.size());
+    assertFalse(rb.offer(4));
+
+    assertEquals(0,rb.poll());
+    assertTrue(rb.offer(4));
+    assertFalse(rb.offer(5));
+  }
+
+  /**
+   * Die Reihenfolge bleibt ueber viele Runden erhalten.
+   */
+  @Test
+  public void testWrapAround()
+  {
+    RingBuffer rb = new RingBuffer(4);
+    int next = 0;
+    for (int i=0;i<1000;++i)
+    {
+      // Immer 3 rein, 3 raus - damit verschiebt sich die Position in jeder Runde
+      for (int j=0;j<3;++j)
+        assertTrue(rb.offer(i * 3 + j));
+      for (int j=0;j<3;++j)
+        assertEquals(next++,rb.poll());
+      assertTrue(rb.isEmpty());
+    }
+  }
+
+  /**
+   * drain() entnimmt maximal die angegebene Anzahl.
+   */
+  @Test
+  public void testDrain()
+  {
+    RingBuffer rb = new RingBuffer(8);
+    for (int i=0;i<6;++i)
+      rb.offer(i);
+
+    Object[] batch = new Object[8];
+    assertEquals(4,rb.drain(batch,4));
+    assertEquals(3,batch[3]);
+    assertEquals(2,rb.drain(batch,8));
+    assertEquals(5,batch[1]);
+    assertTrue(rb.isEmpty());
+  }
+
+  /**
+   * Bei DROP_OLDEST wird die aelteste Meldung verworfen und gezaehlt.
+   */
+  @Test
+  public void testDropOldest()
+  {
+    RingBuffer rb = new RingBuffer(2);
+    AtomicLong[] overflows = overflows();
+    rb.offer(0);
+    rb.offer(1);
+
+    assertNull(rb.offer(2,OverflowPolicy.DROP_OLDEST,null,overflows));
+    assertEquals(1L,overflows[OverflowPolicy.DROP_OLDEST.ordinal()].get());
+    assertEquals(1,rb.poll());
+    assertEquals(2,rb.poll());
+  }
+
+  /**
+   * Bei DROP_NEWEST bleibt der Puffer unveraendert.
+   */
+  @Test
+  public void testDropNewest()
+  {
+    RingBuffer rb = new RingBuffer(2);
+    AtomicLong[] overflows = overflows();
+    rb.offer(0);
+    rb.offer(1);
+
+    assertSame(OverflowPolicy.DROP_NEWEST,rb.offer(2,OverflowPolicy.DROP_NEWEST,null,overflows));
+    assertEquals(1L,overflows[OverflowPolicy.DROP_NEWEST.ordinal()].get());
+    assertEquals(0,rb.poll());
+    assertEquals(1,rb.poll());
+    assertNull(rb.poll());
+  }
+
+  /**
+   * Mehrere Produzenten schreiben gleichzeitig ueber viele Runden. Jedes Element
+   * kommt genau einmal an, die Reihenfolge je Produzent bleibt erhalten.
+   * @throws Exception
+   */
+  @Test(timeout=30000L)
+  public void testConcurrentProducers() throws Exception
+  {
+    final int producers = 4;
+    final int count     = 50000;
+    final RingBuffer rb = new RingBuffer(64);
+
+    Thread[] threads = new Thread[producers];
+    for (int p=0;p<producers;++p)
+    {
+      final int id = p;
+      threads[p] = new Thread() {
+        public void run()
+        {
+          for (int i=0;i<count;++i)
+          {
+            while (!rb.offer(new int[]{id,i}))
+              Thread.yield();
+          }
+        }
+      };
+      threads[p].start();
+    }
+
+    int[] last = new int[producers];
+    for (int p=0;p<producers;++p)
+      last[p] = -1;
+
+    int received = 0;
+    while (received < producers * count)
+    {
+      int[] o = (int[]) rb.poll();
+      if (o == null)
+      {
+        Thread.yield();
+        continue;
+      }
+      assertEquals(last[o[0]] + 1,o[1]);
+      last[o[0]] = o[1];
+      received++;
+    }
+
+    for (Thread t:threads)
+      t.join();
+    assertTrue(rb.isEmpty());
+  }
+
+  /**
+   * Erzeugt die Zaehler fuer die Overflow-Policies.
+   * @return die Zaehler.
+   */
+  private static AtomicLong[] overflows()
+  {
+    AtomicLong[] result = new AtomicLong[OverflowPolicy.values().length];
+    for (int i=0;i<result.length;++i)
+      result[i] = new AtomicLong(0L);
+    return result;
+  }
+}
@@ -0,0 +1,174 @@
+/**********************************************************************
+ *
+ * Copyright (c) 2004 Olaf Willuhn
+ * All rights reserved.
+ *
+ * This software is copyrighted work licensed under the terms of the
+ * GNU LESSER GENERAL PUBLIC LICENSE 2.1.
+ * Please consult the file "LICENSE" for details.
+ *
+ **********************************************************************/
+
+package de.willuhn.logging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Test;
+
+import de.willuhn.logging.layout.SyslogLayout;
+import de.willuhn.logging.targets.SyslogTarget;
+
+/**
+ * Tests fuer {@link SyslogTarget} per TCP.
+ */
+public class SyslogTargetTest
+{
+  /**
+   * Jeder Meldung wird ihre Laenge vorangestellt (RFC 6587, "octet counting").
+   * @throws Exception
+   */
+  @Test(timeout=10000L)
+  public void testOctetCounting() throws Exception
+  {
+    ServerSocket server = new ServerSocket(0);
+    SyslogTarget target = new SyslogTarget("localhost",server.getLocalPort(),true);
+    try
+    {
+      target.setFormat(SyslogLayout.Format.RFC5424);
+      target.write(new Message[]{message("first"),message("second \u00e4")},2);
+
+      Socket s = server.accept();
+      DataInputStream in = new DataInputStream(s.getInputStream());
+      String first  = frame(in);
+      String second = frame(in);
+      s.close();
+
+      assertTrue(first,first.startsWith("<"));
+      assertTrue(first,first.endsWith("first"));
+      assertTrue(second,second.endsWith("second \u00e4"));
+    }
+    finally
+    {
+      target.close();
+      server.close();
+    }
+  }
+
+  /**
+   * Ist der Server nicht erreichbar, wird nur fuer die festgelegte Zeit gewartet
+   * und bis zum naechsten Versuch sofort abgebrochen.
+   * @throws Exception
+   */
+  @Test(timeout=10000L)
+  public void testConnectTimeout() throws Exception
+  {
+    // Ein Server, der keine Verbindungen annimmt und dessen Warteschlange schon voll ist.
+    // Weitere Verbindungsversuche laufen dann ins Leere.
+    ServerSocket server = new ServerSocket(0,1);
+    List<Socket> pending = new ArrayList<Socket>();
+    SyslogTarget target = new SyslogTarget("localhost",server.getLocalPort(),true);
+    target.setConnectTimeout(300);
+    try
+    {
+      fill(server,pending);
+
+      long start = System.currentTimeMillis();
+      try
+      {
+        target.write(message("lost"));
+        fail("server should not be reachable");
+      }
+      catch (IOException e)
+      {
+        // erwartet
+      }
+      assertTrue(System.currentTimeMillis() - start < 2000L);
+
+      start = System.currentTimeMillis();
+      try
+      {
+        target.write(message("lost"));
+        fail("server should not be reachable");
+      }
+      catch (IOException e)
+      {
+        // erwartet, ohne erneuten Versuch
+      }
+      assertTrue(System.currentTimeMillis() - start < 100L);
+    }
+    finally
+    {
+      target.close();
+      for (Socket p:pending)
+        p.close();
+      server.close();
+    }
+  }
+
+  /**
+   * Fuellt die Warteschlange des Servers, bis weitere Verbindungsversuche haengen.
+   * @param server der Server.
+   * @param pending Liste, in der die aufgebauten Verbindungen landen.
+   */
+  private static void fill(ServerSocket server, List<Socket> pending)
+  {
+    for (int i=0;i<16;++i)
+    {
+      try
+      {
+        Socket p = new Socket();
+        pending.add(p);
+        p.connect(new InetSocketAddress("localhost",server.getLocalPort()),200);
+      }
+      catch (IOException e)
+      {
+        return; // voll
+      }
+    }
+    fail("unable to fill the backlog of the server");
+  }
+
+  /**
+   * Liest eine Meldung mit vorangestellter Laenge.
+   * @param in der Stream.
+   * @return die Meldung.
+   * @throws IOException
+   */
+  private static String frame(DataInputStream in) throws IOException
+  {
+    int len = 0;
+    int b = 0;
+    while ((b = in.read()) != ' ')
+    {
+      assertTrue(b >= '0' && b <= '9');
+      len = len * 10 + (b - '0');
+    }
+    byte[] data = new byte[len];
+    in.readFully(data);
+    String s = new String(data,StandardCharsets.UTF_8);
+    assertEquals(len,s.getBytes(StandardCharsets.UTF_8).length);
+    return s;
+  }
+
+  /**
+   * Erzeugt eine Test-Meldung.
+   * @param text der Text.
+   * @return die Meldung.
+   */
+  private static Message message(String text)
+  {
+    return new Message(new Date(),Level.INFO,null,SyslogTargetTest.class.getName(),"message",text,Thread.currentThread().getName());
+  }
+}
@@ -0,0 +1,174 @@
+/**********************************************************************
+ *
+ * Copyright (c) 2004 Olaf Willuhn
+ * All rights reserved.
+ *
+ * This software is copyrighted work licensed under the terms of the
+ * GNU LESSER GENERAL PUBLIC LICENSE 2.1.
+ * Please consult the file "LICENSE" for details.
+ *
+ **********************************************************************/
+
+package de.willuhn.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+/**
+ * Tests fuer {@link History}.
+ */
+public class HistoryTest
+{
+  /**
+   * Ist die History voll, wird das aelteste Element ueberschrieben.
+   */
+  @Test
+  public void testOverwrite()
+  {
+    History<Integer> h = new History<Integer>(3);
+    assertFalse(h.full());
+    for (int i=1;i<=5;++i)
+      h.push(i);
+
+    assertTrue(h.full());
+    assertEquals(3,h.size());
+    assertArrayEquals(new Integer[]{3,4,5},h.toArray(new Integer[0]));
+  }
+
+  /**
+   * pop() liefert das aelteste Element, bei leerer History eine Exception.
+   */
+  @Test(expected=ArrayIndexOutOfBoundsException.class)
+  public void testPop()
+  {
+    History<Integer> h = new History<Integer>(3);
+    h.push(1);
+    h.push(2);
+    assertEquals(Integer.valueOf(1),h.pop());
+    assertEquals(Integer.valueOf(2),h.pop());
+    assertNull(h.poll());
+    h.pop();
+  }
+
+  /**
+   * Die Reihenfolge bleibt ueber viele Runden erhalten.
+   */
+  @Test
+  public void testWrapAround()
+  {
+    History<Integer> h = new History<Integer>(4);
+    int next = 0;
+    for (int i=0;i<1000;++i)
+    {
+      for (int j=0;j<3;++j)
+        h.push(i * 3 + j);
+      for (int j=0;j<3;++j)
+        assertEquals(Integer.valueOf(next++),h.pop());
+      assertEquals(0,h.size());
+    }
+  }
+
+  /**
+   * Mehrere Schreiber ueberholen sich und den Leser staendig. Der Leser darf dabei
+   * nie haengen bleiben und muss die Elemente je Schreiber in aufsteigender
+   * Reihenfolge sehen. Was danach noch in der History liegt, ist neuer als alles Gelesene.
+   * @throws Exception
+   */
+  @Test(timeout=30000L)
+  public void testWriterLapsReader() throws Exception
+  {
+    final int writers = 4;
+    final int count   = 100000;
+    final int size    = 4;
+    final History<int[]> h = new History<int[]>(size);
+
+    Thread[] threads = new Thread[writers];
+    for (int w=0;w<writers;++w)
+    {
+      final int id = w;
+      threads[w] = new Thread() {
+        public void run()
+        {
+          for (int i=0;i<count;++i)
+            h.push(new int[]{id,i});
+        }
+      };
+      threads[w].start();
+    }
+
+    final AtomicBoolean done = new AtomicBoolean(false);
+    final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+    Thread snapshots = new Thread() {
+      public void run()
+      {
+        try
+        {
+          while (!done.get())
+          {
+            List<int[]> elements = h.elements();
+            assertTrue(elements.size() <= size);
+            assertAscending(elements.toArray(new int[0][]),writers);
+          }
+        }
+        catch (Throwable t)
+        {
+          error.set(t);
+        }
+      }
+    };
+    snapshots.start();
+
+    int[] last = new int[writers];
+    for (int w=0;w<writers;++w)
+      last[w] = -1;
+
+    boolean running = true;
+    while (running)
+    {
+      running = false;
+      for (Thread t:threads)
+        running |= t.isAlive();
+
+      int[] o = h.poll();
+      if (o == null)
+        continue;
+      assertTrue(o[1] > last[o[0]]);
+      last[o[0]] = o[1];
+    }
+    done.set(true);
+    snapshots.join();
+    assertNull(error.get());
+
+    // Was noch in der History liegt, ist neuer als alles bisher Gelesene
+    int[][] remaining = h.toArray(new int[0][]);
+    assertAscending(remaining,writers);
+    for (int[] o:remaining)
+      assertTrue(o[1] > last[o[0]]);
+  }
+
+  /**
+   * Prueft, ob die Elemente je Schreiber aufsteigend sortiert sind.
+   * @param elements die Elemente.
+   * @param writers Anzahl der Schreiber.
+   */
+  private static void assertAscending(int[][] elements, int writers)
+  {
+    int[] last = new int[writers];
+    for (int w=0;w<writers;++w)
+      last[w] = -1;
+    for (int[] o:elements)
+    {
+      assertTrue(o[1] > last[o[0]]);
+      last[o[0]] = o[1];
+    }
+  }
+}
@@ -0,0 +1,150 @@
+/**********************************************************************
+ *
+ * Copyright (c) 2004 Olaf Willuhn
+ * All rights reserved.
+ *
+ * This software is copyrighted work licensed under the terms of the
+ * GNU LESSER GENERAL PUBLIC LICENSE 2.1.
+ * Please consult the file "LICENSE" for details.
+ *
+ **********************************************************************/
+
+package de.willuhn.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests fuer {@link LongHistory}, {@link IntHistory} und {@link DoubleHistory}.
+ */
+public class PrimitiveHistoryTest
+{
+  /**
+   * Auswertungen einer LongHistory, die bereits aelteste Werte ueberschrieben hat.
+   */
+  @Test
+  public void testLong()
+  {
+    LongHistory h = new LongHistory(3);
+    for (long l=1;l<=5;++l)
+      h.push(l);
+
+    assertTrue(h.full());
+    assertEquals(3,h.size());
+    assertArrayEquals(new long[]{3,4,5},h.toArray());
+    assertEquals(5L,h.last());
+    assertEquals(12L,h.sum());
+    assertEquals(3L,h.min());
+    assertEquals(5L,h.max());
+    assertEquals(4d,h.average(),0d);
+  }
+
+  /**
+   * Die Summe einer IntHistory laeuft nicht ueber.
+   */
+  @Test
+  public void testInt()
+  {
+    IntHistory h = new IntHistory(4);
+    h.push(Integer.MAX_VALUE);
+    h.push(Integer.MAX_VALUE);
+    h.push(-7);
+
+    assertFalse(h.full());
+    assertArrayEquals(new int[]{Integer.MAX_VALUE,Integer.MAX_VALUE,-7},h.toArray());
+    assertEquals(2L * Integer.MAX_VALUE - 7,h.sum());
+    assertEquals(-7,h.min());
+    assertEquals(Integer.MAX_VALUE,h.max());
+    assertEquals((2d * Integer.MAX_VALUE - 7) / 3,h.average(),1e-6);
+  }
+
+  /**
+   * Auswertungen einer DoubleHistory, auch mit negativen Werten.
+   */
+  @Test
+  public void testDouble()
+  {
+    DoubleHistory h = new DoubleHistory(2);
+    h.push(1.5d);
+    h.push(-2.25d);
+    h.push(4d);
+
+    assertEquals(4d,h.last(),0d);
+    assertEquals(1.75d,h.sum(),0d);
+    assertEquals(-2.25d,h.min(),0d);
+    assertEquals(4d,h.max(),0d);
+    assertEquals(0.875d,h.average(),0d);
+  }
+
+  /**
+   * Leere Historys liefern definierte Werte.
+   */
+  @Test
+  public void testEmpty()
+  {
+    assertEquals(0L,new LongHistory(3).sum());
+    assertEquals(0L,new LongHistory(3).min());
+    assertEquals(0,new IntHistory(3).max());
+    assertTrue(Double.isNaN(new IntHistory(3).average()));
+    assertEquals(0d,new DoubleHistory(3).sum(),0d);
+    assertTrue(Double.isNaN(new DoubleHistory(3).min()));
+    assertTrue(Double.isNaN(new DoubleHistory(3).average()));
+    assertEquals(0,new DoubleHistory(3).toArray().length);
+  }
+
+  /**
+   * last() wirft bei leerer History eine Exception.
+   */
+  @Test(expected=ArrayIndexOutOfBoundsException.class)
+  public void testLastEmpty()
+  {
+    new LongHistory(3).last();
+  }
+
+  /**
+   * Die Kapazitaet wird wie bei {@link Queue} begrenzt.
+   */
+  @Test
+  public void testCapacity()
+  {
+    assertEquals(Queue.CAPACITY_MIN,new LongHistory(0).getCapacity());
+    assertEquals(Queue.CAPACITY_MAX,new LongHistory(Integer.MAX_VALUE).getCapacity());
+    assertEquals(10,new LongHistory(10).getCapacity());
+  }
+
+  /**
+   * Mehrere Schreiber ueberholen sich staendig. Am Ende enthaelt die History
+   * genau die zuletzt geschriebenen Werte.
+   * @throws Exception
+   */
+  @Test(timeout=30000L)
+  public void testConcurrent() throws Exception
+  {
+    final LongHistory h = new LongHistory(4);
+    Thread[] threads = new Thread[4];
+    for (int t=0;t<threads.length;++t)
+    {
+      threads[t] = new Thread() {
+        public void run()
+        {
+          for (int i=0;i<100000;++i)
+          {
+            h.push(i);
+            h.last();
+          }
+        }
+      };
+      threads[t].start();
+    }
+    for (Thread t:threads)
+      t.join();
+
+    assertEquals(4,h.size());
+    assertEquals(99999L,h.last());
+    assertEquals(99999L,h.max());
+  }
+}
@@ -0,0 +1,218 @@
+/**********************************************************************
+ *
+ * Copyright (c) 2004 Olaf Willuhn
+ * All rights reserved.
+ *
+ * This software is copyrighted work licensed under the terms of the
+ * GNU LESSER GENERAL PUBLIC LICENSE 2.1.
+ * Please consult the file "LICENSE" for details.
+ *
+ **********************************************************************/
+
+package de.willuhn.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Tests fuer {@link Queue}.
+ */
+public class QueueTest
+{
+  /**
+   * Elemente kommen in der Reihenfolge des Hinzufuegens wieder heraus.
+   * @throws Exception
+   */
+  @Test
+  public void testOrder() throws Exception
+  {
+    Queue<Integer> q = new Queue<Integer>(5);
+    q.push(1);
+    q.push(2);
+    q.push(3);
+    assertEquals(3,q.size());
+    assertArrayEquals(new Integer[]{1,2,3},q.toArray(new Integer[0]));
+    assertEquals(Integer.valueOf(1),q.pop());
+    assertEquals(Integer.valueOf(2),q.pop());
+    assertEquals(Integer.valueOf(3),q.pop());
+    assertEquals(0,q.size());
+  }
+
+  /**
+   * Eine leere Queue liefert null bzw. wirft bei pop() eine Exception.
+   */
+  @Test(expected=ArrayIndexOutOfBoundsException.class)
+  public void testEmpty()
+  {
+    Queue<Integer> q = new Queue<Integer>(5);
+    assertNull(q.poll());
+    assertTrue(q.elements().isEmpty());
+    q.pop();
+  }
+
+  /**
+   * Eine volle Queue nimmt nichts mehr an.
+   * @throws Exception
+   */
+  @Test(expected=Queue.QueueFullException.class)
+  public void testFull() throws Exception
+  {
+    Queue<Integer> q = new Queue<Integer>(2);
+    q.push(1);
+    q.push(2);
+    assertTrue(q.full());
+    assertFalse(q.offer(3));
+    q.push(3);
+  }
+
+  /**
+   * Die Reihenfolge bleibt ueber viele Runden erhalten.
+   * @throws Exception
+   */
+  @Test
+  public void testWrapAround() throws Exception
+  {
+    Queue<Integer> q = new Queue<Integer>(4);
+    int next = 0;
+    for (int i=0;i<1000;++i)
+    {
+      for (int j=0;j<3;++j)
+        q.push(i * 3 + j);
+      assertEquals(Integer.valueOf(next),q.elements().get(0));
+      for (int j=0;j<3;++j)
+        assertEquals(Integer.valueOf(next++),q.pop());
+    }
+  }
+
+  /**
+   * drainTo() entnimmt maximal die angegebene Anzahl.
+   * @throws Exception
+   */
+  @Test
+  public void testDrainTo() throws Exception
+  {
+    Queue<Integer> q = new Queue<Integer>(5);
+    for (int i=0;i<5;++i)
+      q.push(i);
+
+    List<Integer> list = new ArrayList<Integer>();
+    assertEquals(3,q.drainTo(list,3));
+    assertEquals(2,q.drainTo(list,10));
+    assertEquals(5,list.size());
+    assertEquals(Integer.valueOf(4),list.get(4));
+    assertEquals(0,q.size());
+  }
+
+  /**
+   * Wirft die Collection beim Hinzufuegen eine Exception, bleibt die Queue konsistent.
+   * Das betroffene Element bleibt in der Queue.
+   * @throws Exception
+   */
+  @Test
+  public void testDrainToFailing() throws Exception
+  {
+    Queue<Integer> q = new Queue<Integer>(4);
+    for (int i=0;i<4;++i)
+      q.push(i);
+
+    final List<Integer> list = new ArrayList<Integer>();
+    Collection<Integer> bounded = new AbstractCollection<Integer>() {
+      public boolean add(Integer o)
+      {
+        if (list.size() >= 2)
+          throw new IllegalStateException("full");
+        return list.add(o);
+      }
+      public Iterator<Integer> iterator()
+      {
+        return list.iterator();
+      }
+      public int size()
+      {
+        return list.size();
+      }
+    };
+
+    try
+    {
+      q.drainTo(bounded,4);
+      fail("collection did not throw");
+    }
+    catch (IllegalStateException e)
+    {
+      // erwartet
+    }
+
+    assertEquals(2,list.size());
+    assertEquals(2,q.size());
+    q.push(4);
+    q.push(5);
+    assertTrue(q.full());
+    for (int i=2;i<6;++i)
+      assertEquals(Integer.valueOf(i),q.pop());
+    assertEquals(0,q.size());
+  }
+
+  /**
+   * Die Methoden mit Wartezeit kehren nach deren Ablauf zurueck.
+   * @throws Exception
+   */
+  @Test(timeout=10000L)
+  public void testTimeout() throws Exception
+  {
+    Queue<Integer> q = new Queue<Integer>(2);
+    long start = System.currentTimeMillis();
+    assertNull(q.poll(100L,TimeUnit.MILLISECONDS));
+    assertTrue(System.currentTimeMillis() - start >= 100L);
+
+    q.push(1);
+    q.push(2);
+    start = System.currentTimeMillis();
+    assertFalse(q.offer(3,100L,TimeUnit.MILLISECONDS));
+    assertTrue(System.currentTimeMillis() - start >= 100L);
+  }
+
+  /**
+   * take() und put() warten, bis der andere Thread Platz geschaffen bzw. etwas eingestellt hat.
+   * @throws Exception
+   */
+  @Test(timeout=30000L)
+  public void testProducerConsumer() throws Exception
+  {
+    final int count = 100000;
+    final Queue<Integer> q = new Queue<Integer>(4);
+    Thread producer = new Thread() {
+      public void run()
+      {
+        try
+        {
+          for (int i=0;i<count;++i)
+            q.put(i);
+        }
+        catch (InterruptedException e)
+        {
+          // Test endet ueber den Timeout
+        }
+      }
+    };
+    producer.start();
+
+    for (int i=0;i<count;++i)
+      assertEquals(Integer.valueOf(i),q.take());
+    producer.join();
+    assertEquals(0,q.size());
+  }
+}
@@ -0,0 +1,301 @@
+/**********************************************************************
+ *
+ * Copyright (c) 2004 Olaf Willuhn
+ * All rights reserved.
+ *
+ * This software is copyrighted work licensed under the terms of the
+ * GNU LESSER GENERAL PUBLIC LICENSE 2.1.
+ * Please consult the file "LICENSE" for details.
+ *
+ **********************************************************************/
+
+package de.willuhn.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Observable;
+import java.util.Observer;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+/**
+ * Tests fuer {@link Session}.
+ */
+public class SessionTest
+{
+  private final static long TIMEOUT = 60 * 1000L;
+
+  /**
+   * Gewicht eines Elements ist die Laenge seines Wertes.
+   */
+  private final static Session.Weigher LENGTH = new Session.Weigher() {
+    public long getWeight(Object key, Object value)
+    {
+      return value.toString().length();
+    }
+  };
+
+  /**
+   * Bei Ueberschreiten der maximalen Anzahl wird das aelteste Element entfernt.
+   */
+  @Test
+  public void testMaxSize()
+  {
+    Session s = new Session(TIMEOUT,3);
+    s.put("a","1");
+    s.put("b","2");
+    s.put("c","3");
+    s.put("d","4");
+
+    assertEquals(3,s.size());
+    assertEquals(3L,s.getWeight());
+    assertEquals(1L,s.getEvictionCount());
+    assertNull(s.get("a"));
+    assertNotNull(s.get("d"));
+  }
+
+  /**
+   * Ein benutztes Element bekommt eine zweite Chance, stattdessen faellt das naechste heraus.
+   */
+  @Test
+  public void testSecondChance()
+  {
+    Session s = new Session(TIMEOUT,3);
+    s.put("a","1");
+    s.put("b","2");
+    s.put("c","3");
+    s.get("a");
+    s.put("d","4");
+
+    assertEquals(3,s.size());
+    assertNotNull(s.get("a"));
+    assertNull(s.get("b"));
+  }
+
+  /**
+   * Es werden solange Elemente entfernt, bis das maximale Gewicht wieder eingehalten wird.
+   */
+  @Test
+  public void testWeight()
+  {
+    Session s = new Session(TIMEOUT,10L,LENGTH);
+    s.put("a","xxxx");
+    s.put("b","xxxx");
+    assertEquals(8L,s.getWeight());
+
+    s.put("c","xxxx");
+    assertEquals(8L,s.getWeight());
+    assertEquals(2,s.size());
+    assertNull(s.get("a"));
+
+    // Ein schweres Element verdraengt alle anderen
+    s.put("d","xxxxxxxxxx");
+    assertEquals(10L,s.getWeight());
+    assertEquals(1,s.size());
+    assertEquals(3L,s.getEvictionCount());
+    assertNotNull(s.get("d"));
+  }
+
+  /**
+   * Ein Element, das allein schon zu schwer ist, wird nicht behalten.
+   */
+  @Test
+  public void testOverweight()
+  {
+    Session s = new Session(TIMEOUT,10L,LENGTH);
+    s.put("a","xxxx");
+    s.put("b","xxxxxxxxxxx");
+    assertEquals(0,s.size());
+    assertEquals(0L,s.getWeight());
+  }
+
+  /**
+   * Beim Ersetzen und Entfernen wird das Gewicht angepasst.
+   */
+  @Test
+  public void testReplaceAndRemove()
+  {
+    Session s = new Session(TIMEOUT,10L,LENGTH);
+    s.put("a","xxxx");
+    s.put("a","xx");
+    assertEquals(2L,s.getWeight());
+    assertEquals(1,s.size());
+
+    s.put("b","xxx");
+    s.remove("a");
+    assertEquals(3L,s.getWeight());
+    s.clear();
+    assertEquals(0L,s.getWeight());
+    assertEquals(0L,s.getEvictionCount());
+  }
+
+  /**
+   * Schreiben mehrere Threads gleichzeitig dieselben Schluessel, bleibt je Schluessel
+   * genau ein Element mit seinem Gewicht uebrig. Es darf dabei nichts verdraengt werden.
+   * @throws Exception
+   */
+  @Test(timeout=30000L)
+  public void testConcurrentSameKey() throws Exception
+  {
+    final int keys = 10;
+    final Session s = new Session(TIMEOUT,keys);
+
+    Thread[] threads = new Thread[8];
+    for (int t=0;t<threads.length;++t)
+    {
+      threads[t] = new Thread() {
+        public void run()
+        {
+          for (int i=0;i<20000;++i)
+            s.put("key" + (i % keys),"value" + i);
+        }
+      };
+      threads[t].start();
+    }
+    for (Thread t:threads)
+      t.join();
+
+    assertEquals(keys,s.size());
+    assertEquals(keys,s.getWeight());
+    assertEquals(0L,s.getEvictionCount());
+  }
+
+  /**
+   * Ueber entfernte Elemente werden die Observer benachrichtigt.
+   */
+  @Test
+  public void testObserver()
+  {
+    final List<Object> evicted = new ArrayList<Object>();
+    Session s = new Session(TIMEOUT,2);
+    s.addObserver(new Observer() {
+      public void update(Observable o, Object arg)
+      {
+        evicted.add(arg);
+      }
+    });
+
+    s.put("a","1");
+    s.put("b","2");
+    s.put("c","3");
+    s.put("d","4");
+    assertEquals(2,evicted.size());
+    assertEquals("1",evicted.get(0));
+    assertEquals("2",evicted.get(1));
+  }
+
+  /**
+   * Treffer und Fehlgriffe werden gezaehlt.
+   */
+  @Test
+  public void testStats()
+  {
+    Session s = new Session(TIMEOUT,2);
+    s.put("a","1");
+    s.get("a");
+    s.get("a");
+    s.get("x");
+    assertEquals(2L,s.getHitCount());
+    assertEquals(1L,s.getMissCount());
+  }
+
+  /**
+   * Ein benutztes Element laeuft bei gleitendem Timeout nicht ab,
+   * ein unbenutztes wird entfernt und die Observer benachrichtigt.
+   * @throws Exception
+   */
+  @Test(timeout=20000L)
+  public void testSlidingTimeout() throws Exception
+  {
+    final List<Object> expired = new ArrayList<Object>();
+    Session s = new Session(600L);
+    s.addObserver(new Observer() {
+      public synchronized void update(Observable o, Object arg)
+      {
+        expired.add(arg);
+      }
+    });
+    s.put("used","1");
+    s.put("unused","2");
+
+    long end = System.currentTimeMillis() + 1500L;
+    while (System.currentTimeMillis() < end)
+    {
+      assertNotNull(s.get("used"));
+      Thread.sleep(50L);
+    }
+    assertNull(s.get("unused"));
+    assertEquals(1,s.size());
+
+    while (s.size() > 0)
+      Thread.sleep(50L);
+    assertNull(s.get("used"));
+    assertEquals(2,expired.size());
+  }
+
+  /**
+   * Bei festem Ablauf-Datum verlaengert die Benutzung das Element nicht.
+   * @throws Exception
+   */
+  @Test(timeout=20000L)
+  public void testHardTimeout() throws Exception
+  {
+    Session s = new Session(TIMEOUT);
+    long start = System.currentTimeMillis();
+    s.put("a","1",new Date(start + 300L));
+
+    while (s.get("a") != null)
+      Thread.sleep(20L);
+    assertTrue(System.currentTimeMillis() - start >= 300L);
+  }
+
+  /**
+   * Ohne Groessen-Begrenzung lesen und schreiben mehrere Threads gleichzeitig.
+   * Jeder Leser sieht nur vollstaendig gespeicherte Werte zum passenden Schluessel.
+   * @throws Exception
+   */
+  @Test(timeout=30000L)
+  public void testConcurrentReadWrite() throws Exception
+  {
+    final int keys = 100;
+    final Session s = new Session(TIMEOUT);
+    final AtomicReference<String> error = new AtomicReference<String>();
+
+    Thread[] threads = new Thread[6];
+    for (int t=0;t<threads.length;++t)
+    {
+      final boolean writer = t < 2;
+      threads[t] = new Thread() {
+        public void run()
+        {
+          for (int i=0;i<50000;++i)
+          {
+            String key = "key" + (i % keys);
+            if (writer)
+            {
+              s.put(key,key + ":" + i);
+              continue;
+            }
+            Object value = s.get(key);
+            if (value != null && !value.toString().startsWith(key + ":"))
+              error.set(key + " -> " + value);
+          }
+        }
+      };
+      threads[t].start();
+    }
+    for (Thread t:threads)
+      t.join();
+
+    assertNull(error.get());
+    assertEquals(keys,s.size());
+    assertTrue(s.getHitCount() > 0L);
+  }
+}
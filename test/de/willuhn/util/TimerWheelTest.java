@@ -0,0 +1,181 @@
+/**********************************************************************
+ *
+ * Copyright (c) 2004 Olaf Willuhn
+ * All rights reserved.
+ *
+ * This software is copyrighted work licensed under the terms of the
+ * GNU LESSER GENERAL PUBLIC LICENSE 2.1.
+ * Please consult the file "LICENSE" for details.
+ *
+ **********************************************************************/
+
+package de.willuhn.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests fuer {@link TimerWheel}.
+ */
+public class TimerWheelTest
+{
+  private final static long NOW  = 1700000000000L;
+  private final static long DAY  = 24 * 60 * 60 * 1000L;
+  private final static long YEAR = 365 * DAY;
+
+  /**
+   * Ein Element laeuft genau dann ab, wenn sein Zeitpunkt erreicht ist.
+   */
+  @Test
+  public void testExpire()
+  {
+    TimerWheel wheel = new TimerWheel(NOW);
+    TestNode node = new TestNode(NOW + 1000L);
+    wheel.schedule(node);
+    assertEquals(1,wheel.size());
+
+    assertTrue(wheel.advance(NOW + 999L).isEmpty());
+    List<TimerWheel.Node> expired = wheel.advance(NOW + 1000L);
+    assertEquals(1,expired.size());
+    assertSame(node,expired.get(0));
+    assertEquals(0,wheel.size());
+  }
+
+  /**
+   * Ein bereits abgelaufenes Element wird beim naechsten Weiterdrehen geliefert.
+   */
+  @Test
+  public void testPastDeadline()
+  {
+    TimerWheel wheel = new TimerWheel(NOW);
+    wheel.schedule(new TestNode(NOW - 5000L));
+    assertEquals(1,wheel.advance(NOW).size());
+  }
+
+  /**
+   * Wird der Zeitpunkt nach hinten verschoben, wird das Element neu einsortiert.
+   */
+  @Test
+  public void testReschedule()
+  {
+    TimerWheel wheel = new TimerWheel(NOW);
+    TestNode node = new TestNode(NOW + 1000L);
+    wheel.schedule(node);
+
+    node.deadline = NOW + 60000L;
+    assertTrue(wheel.advance(NOW + 1000L).isEmpty());
+    assertEquals(1,wheel.size());
+    assertTrue(wheel.advance(NOW + 59999L).isEmpty());
+    assertEquals(1,wheel.advance(NOW + 60000L).size());
+  }
+
+  /**
+   * Ein entferntes Element laeuft nicht mehr ab.
+   */
+  @Test
+  public void testRemove()
+  {
+    TimerWheel wheel = new TimerWheel(NOW);
+    TestNode node = new TestNode(NOW + 1000L);
+    wheel.schedule(node);
+    wheel.remove(node);
+    wheel.remove(node);
+    assertEquals(0,wheel.size());
+    assertTrue(wheel.advance(NOW + 2000L).isEmpty());
+  }
+
+  /**
+   * Wird die Uhr zurueckgestellt, laeuft nichts ab.
+   */
+  @Test
+  public void testClockBackwards()
+  {
+    TimerWheel wheel = new TimerWheel(NOW);
+    wheel.schedule(new TestNode(NOW - 1000L));
+    assertTrue(wheel.advance(NOW - 2000L).isEmpty());
+    assertEquals(1,wheel.advance(NOW).size());
+  }
+
+  /**
+   * Elemente auf jeder Ebene laufen zum richtigen Zeitpunkt ab.
+   */
+  @Test
+  public void testLevels()
+  {
+    long[] offsets = {100L, 10 * 1000L, 30 * 60 * 1000L, 2 * DAY, 100 * DAY};
+    for (long offset:offsets)
+    {
+      TimerWheel wheel = new TimerWheel(NOW);
+      wheel.schedule(new TestNode(NOW + offset));
+      assertTrue(wheel.advance(NOW + offset - 1L).isEmpty());
+      assertEquals(1,wheel.advance(NOW + offset).size());
+    }
+  }
+
+  /**
+   * Liegt der Zeitpunkt hinter dem Bereich der obersten Ebene, landet das Element
+   * in deren letztem Fach und wird beim Erreichen neu einsortiert, bis es ablaeuft.
+   */
+  @Test
+  public void testTopLevelClamping()
+  {
+    TimerWheel wheel = new TimerWheel(NOW);
+    TestNode node = new TestNode(NOW + 100 * YEAR);
+    wheel.schedule(node);
+
+    // In Schritten von 30 Tagen ueber mehrere Runden der obersten Ebene
+    long time = NOW;
+    while (time + 30 * DAY < node.deadline)
+    {
+      time += 30 * DAY;
+      assertTrue(wheel.advance(time).isEmpty());
+      assertEquals(1,wheel.size());
+    }
+    assertTrue(wheel.advance(node.deadline - 1L).isEmpty());
+    assertEquals(1,wheel.advance(node.deadline).size());
+    assertEquals(0,wheel.size());
+  }
+
+  /**
+   * Ein Element ohne Ablauf-Zeitpunkt laeuft nie ab, auch nicht bei grossen Spruengen.
+   */
+  @Test
+  public void testNoDeadline()
+  {
+    TimerWheel wheel = new TimerWheel(NOW);
+    wheel.schedule(new TestNode(Long.MAX_VALUE));
+    assertTrue(wheel.advance(NOW + 1000 * YEAR).isEmpty());
+    assertTrue(wheel.advance(NOW + 2000 * YEAR).isEmpty());
+    assertEquals(1,wheel.size());
+  }
+
+  /**
+   * Element mit aenderbarem Ablauf-Zeitpunkt.
+   */
+  private static class TestNode extends TimerWheel.Node
+  {
+    private long deadline = 0L;
+
+    /**
+     * ct.
+     * @param deadline Ablauf-Zeitpunkt.
+     */
+    private TestNode(long deadline)
+    {
+      this.deadline = deadline;
+    }
+
+    /**
+     * @see de.willuhn.util.TimerWheel.Node#getDeadline()
+     */
+    long getDeadline()
+    {
+      return this.deadline;
+    }
+  }
+}